@@ -0,0 +1,143 @@
+/* ****************************************************************************************************************** *
+ * Name:        BlanketBenchmark.java
+ * Description: Benchmarks of the per-row cost of scoring a query against the size of its markov blanket.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks scoring the query "spam" of a network of a fixed number of nodes, in which spam has "children" children,
+ * with the {@link LogTable LogTable} and the {@link CompiledScorer CompiledScorer}, with and without exact ties. The
+ * network is trained on few random events, so under the default smoothing almost every node has an unseen parent
+ * configuration and is certain for it. Without exact ties the cost of a row follows the blanket; with them, every row
+ * also checks the factor of each certain node outside it, so the cost follows the network. Each invocation uses the
+ * next row of the events file, except blockLogOdds which scores a whole {@link RowBlock RowBlock} of rows and reports
+ * the time per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlanketBenchmark {
+        /* Package Private members */
+        static final int ROWS = 200;            // Rows of events, too few to observe every parent configuration
+
+        /** Number of nodes in network */
+        @Param({ "1000" })
+        public int nodes;
+
+        /** Number of children of the query */
+        @Param({ "2", "8", "32" })
+        public int children;
+
+        /** Whether a factor outside the blanket which is 0 makes the query a tie */
+        @Param({ "false", "true" })
+        public boolean exactTies;
+
+        /* Private members */
+        private LogTable logTable;              // Log-space CPTs of trained network
+        private CompiledScorer scorer;          // Compiled scoring kernels of trained network
+        private boolean[][] models;             // Rows of events file, in network order
+        private byte[][] cells;                 // Rows of events file, as decoded by CsvTokenizer
+        private RowBlock block;                 // First rows of events file, packed by column
+        private boolean[] values;               // Copy of current row, which scoring may modify
+        private double[] out;                   // Log odds of each row of a block
+        private int row;                        // Row of events used by next invocation
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+                File dir = File.createTempFile("bayesnet", "");
+                if (!dir.delete() || !dir.mkdir()) throw new IOException("Cannot create directory " + dir);
+                File netFile = new File(dir, "net.txt"), eventsFile = new File(dir, "events.csv");
+                dir.deleteOnExit();     // Registered first so it is deleted last
+                netFile.deleteOnExit();
+                eventsFile.deleteOnExit();
+
+                /* spam is the first node and its children the next; each node has up to six other earlier parents */
+                Random rand = new Random(42);
+                String[] names = new String[nodes];
+                PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(netFile)));
+                try {
+                        for (int i = 0; i < nodes; i++) {
+                                names[i] = (i == 0) ? "spam" : "n" + i;
+                                StringBuilder sb = new StringBuilder(names[i]).append(":");
+                                if (i > 0 && i <= children) sb.append(" spam");
+                                TreeSet<Integer> parents = new TreeSet<Integer>();
+                                while (parents.size() < Math.min(6, i - 1)) parents.add(1 + rand.nextInt(i - 1));
+                                for (int p : parents) sb.append(" ").append(names[p]);
+                                w.println(sb);
+                        }
+                } finally {
+                        w.close();
+                }
+                w = new PrintWriter(new BufferedWriter(new FileWriter(eventsFile)));
+                try {
+                        w.println(String.join(",", names));
+                        for (int r = 0; r < ROWS; r++) {
+                                StringBuilder sb = new StringBuilder();
+                                for (int i = 0; i < nodes; i++) sb.append((i > 0) ? "," : "").append(rand.nextInt(2));
+                                w.println(sb);
+                        }
+                } finally {
+                        w.close();
+                }
+
+                /* Train network */
+                BayesNetEstimate bNetEst = new BayesNetEstimate(netFile.getPath(), eventsFile.getPath());
+                bNetEst.getBayesianNetwork();
+                CPTable cpt = bNetEst.getCPTable();
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                logTable = new LogTable(cpt, blanket, exactTies);
+                int[] netToFile = new int[nodes];
+                for (int i = 0; i < nodes; i++) netToFile[i] = i;
+                scorer = new CompiledScorer(cpt, logTable, blanket, netToFile);
+
+                /* Decode events */
+                models = new boolean[ROWS][nodes];
+                cells = new byte[ROWS][nodes];
+                CsvTokenizer tok = new CsvTokenizer(eventsFile);
+                try {
+                        tok.readHeader();
+                        for (int r = 0; r < ROWS && tok.next(cells[r]); r++) {
+                                for (int i = 0; i < nodes; i++) models[r][i] = (cells[r][i] == CsvTokenizer.TRUE);
+                        }
+                } finally {
+                        tok.close();
+                }
+                block = new RowBlock(nodes);
+                for (int r = 0; r < ROWS; r++) block.add(cells[r]);
+                values = new boolean[nodes];
+                out = new double[RowBlock.ROWS];
+        }
+
+        @Benchmark
+        public double logOdds() {
+                System.arraycopy(models[row], 0, values, 0, values.length);
+                if (++row == models.length) row = 0;
+                return logTable.logOdds(0, values);
+        }
+
+        @Benchmark
+        public double compiledLogOdds() {
+                byte[] r = cells[row];
+                if (++row == cells.length) row = 0;
+                return scorer.logOdds(0, r);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(ROWS)
+        public double[] blockLogOdds() {
+                scorer.logOdds(0, block, out);
+                return out;
+        }
+}
@@ -0,0 +1,62 @@
+/* ****************************************************************************************************************** *
+ * Name:        EliminationBenchmark.java
+ * Description: Benchmarks of scoring rows with several unknown variables by variable elimination.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link VariableElimination#logOdds VariableElimination.logOdds} for the last node of a trained synthetic
+ * network with "unknowns" other randomly chosen unknown variables. A fixed set of 16 patterns of unknown variables is
+ * cycled through, so the cached plans are reused as they would be for real traffic. Each invocation uses the next row
+ * of the events file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EliminationBenchmark {
+        /** Number of unknown variables other than the query */
+        @Param({ "1", "4", "8" })
+        public int unknowns;
+
+        /* Private members */
+        private VariableElimination elim;       // Engine being benchmarked
+        private int[][] patterns;               // Patterns of unknown variables
+        private boolean[] values;               // Copy of current row
+        private int row;                        // Row of events used by next invocation
+
+        @Setup(Level.Trial)
+        public void setup(NetworkState net) {
+                elim = new VariableElimination(net.cpt);
+                values = new boolean[net.nodes];
+                Random rand = new Random(42);
+                patterns = new int[16][];
+                for (int p = 0; p < patterns.length; p++) {
+                        TreeSet<Integer> unknown = new TreeSet<Integer>();
+                        while (unknown.size() < Math.min(unknowns, net.nodes - 1)) {
+                                unknown.add(rand.nextInt(net.nodes - 1));
+                        }
+                        patterns[p] = new int[unknown.size()];
+                        int i = 0;
+                        for (int u : unknown) patterns[p][i++] = u;
+                }
+        }
+
+        @Benchmark
+        public double logOdds(NetworkState net) {
+                System.arraycopy(net.models[row], 0, values, 0, values.length);
+                int[] unknown = patterns[row % patterns.length];
+                if (++row == net.models.length) row = 0;
+                return elim.logOdds(net.nodes - 1, unknown, unknown.length, values);
+        }
+}
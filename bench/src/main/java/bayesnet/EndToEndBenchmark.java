@@ -0,0 +1,46 @@
+/* ****************************************************************************************************************** *
+ * Name:        EndToEndBenchmark.java
+ * Description: Benchmarks of training a network and classifying a test data file.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks end-to-end training with {@link BayesNetEstimate#getBayesianNetwork() getBayesianNetwork} and
+ * classification with {@link BayesNetPredict#predict() predict} from a model file, for a given number of threads. Each
+ * invocation processes the whole events or test data file of "rows" lines.
+ * <p>
+ * N.B. predict writes "completedTest.csv" to the working directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EndToEndBenchmark {
+        /** Number of training threads, and number of classification workers (0 classifies sequentially) */
+        @Param({ "0", "4" })
+        public int threads;
+
+        @Benchmark
+        public Node[] train(NetworkState net) throws IOException {
+                BayesNetEstimate bNetEst = new BayesNetEstimate(net.netFile.getPath(), net.eventsFile.getPath(), 
+                                                                Math.max(1, threads));
+                return bNetEst.getBayesianNetwork();
+        }
+
+        @Benchmark
+        public void predict(NetworkState net) throws IOException {
+                BayesNetPredict bNetPred = new BayesNetPredict(net.modelFile.getPath(), net.testFile.getPath());
+                bNetPred.setPipeline(threads, 1024, 16);
+                bNetPred.predict();
+        }
+}
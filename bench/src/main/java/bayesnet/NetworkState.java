@@ -0,0 +1,85 @@
+/* ****************************************************************************************************************** *
+ * Name:        NetworkState.java
+ * Description: Shared benchmark state holding a trained synthetic bayesian network and its data files.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH state holding a {@link SyntheticData synthetic} bayesian network trained from generated events, the generated
+ * files, and the rows of the events file decoded into models ready for scoring.
+ * <p>
+ * The size of the network and data are set with the JMH parameters "nodes", "fanIn" and "rows", e.g.
+ * <pre>
+ *      java -jar bench/target/benchmarks.jar -p nodes=1000 -p fanIn=8 -p rows=100000
+ * </pre>
+ */
+@State(Scope.Benchmark)
+public class NetworkState {
+        /** Number of nodes in network */
+        @Param({ "50", "500" })
+        public int nodes;
+
+        /** Maximum number of parents of each node */
+        @Param({ "2", "6" })
+        public int fanIn;
+
+        /** Number of rows in events and test data files */
+        @Param({ "10000" })
+        public int rows;
+
+        /* Package Private members */
+        File dir;                       // Directory of generated files
+        File netFile;                   // Network structure file
+        File eventsFile;                // Events file
+        File testFile;                  // Test data file, with the last node unknown
+        File modelFile;                 // Model file of trained network
+        Node[] bayesNet;                // Trained network
+        CPTable cpt;                    // CPTs of trained network
+        LogTable logTable;              // Log-space CPTs of trained network
+        CompiledScorer scorer;          // Compiled scoring kernels of trained network
+        boolean[][] models;             // Rows of events file, in network order
+        byte[][] cells;                 // Rows of events file, as decoded by CsvTokenizer
+        RowBlock block;                 // First rows of events file, packed by column
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+                dir = SyntheticData.createFiles(nodes, fanIn, rows);
+                netFile = new File(dir, "net.txt");
+                eventsFile = new File(dir, "events.csv");
+                testFile = new File(dir, "test.csv");
+                modelFile = new File(dir, "model.bin");
+
+                /* Train network */
+                BayesNetEstimate bNetEst = new BayesNetEstimate(netFile.getPath(), eventsFile.getPath());
+                bayesNet = bNetEst.getBayesianNetwork();
+                cpt = bNetEst.getCPTable();
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                logTable = new LogTable(cpt, blanket);
+                int[] netToFile = new int[nodes];
+                for (int i = 0; i < nodes; i++) netToFile[i] = i;
+                scorer = new CompiledScorer(cpt, logTable, blanket, netToFile);
+                ModelFile.write(cpt, modelFile);
+
+                /* Decode events */
+                models = new boolean[rows][nodes];
+                cells = new byte[rows][nodes];
+                CsvTokenizer tok = new CsvTokenizer(eventsFile);
+                try {
+                        tok.readHeader();
+                        for (int r = 0; r < rows && tok.next(cells[r]); r++) {
+                                for (int i = 0; i < nodes; i++) models[r][i] = (cells[r][i] == CsvTokenizer.TRUE);
+                        }
+                } finally {
+                        tok.close();
+                }
+                block = new RowBlock(nodes);
+                for (int r = 0; r < Math.min(rows, RowBlock.ROWS); r++) block.add(cells[r]);
+        }
+}
@@ -0,0 +1,56 @@
+/* ****************************************************************************************************************** *
+ * Name:        NodeBenchmark.java
+ * Description: Benchmarks of updating and querying the CPT of a single node.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks {@link Node#update(boolean[], boolean) Node.update} and {@link Node#getProb(boolean[], boolean)
+ * Node.getProb} on the last node of a trained synthetic network, which has the full fan-in of parents. Each
+ * invocation uses the next row of the events file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NodeBenchmark {
+        /* Private members */
+        private Node node;              // Node being benchmarked
+        private boolean[] pValues;      // Buffer for values of node's parents
+        private int row;                // Row of events used by next invocation
+
+        @Setup(Level.Trial)
+        public void setup(NetworkState net) {
+                node = net.bayesNet[net.nodes - 1];
+                pValues = new boolean[node.parents.length];
+        }
+
+        /** Fills pValues from the next row of events, returning that row. */
+        private boolean[] nextRow(NetworkState net) {
+                boolean[] values = net.models[row];
+                if (++row == net.models.length) row = 0;
+                for (int j = 0; j < pValues.length; j++) pValues[j] = values[node.parents[j]];
+                return values;
+        }
+
+        @Benchmark
+        public void update(NetworkState net) {
+                boolean[] values = nextRow(net);
+                node.update(pValues, values[net.nodes - 1]);
+        }
+
+        @Benchmark
+        public double getProb(NetworkState net) {
+                boolean[] values = nextRow(net);
+                return node.getProb(pValues, values[net.nodes - 1]);
+        }
+}
@@ -0,0 +1,63 @@
+/* ****************************************************************************************************************** *
+ * Name:        ParseBenchmark.java
+ * Description: Benchmarks of decoding the events file into models of the variables.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks decoding every line of the events file into a model of the variables, as done by BayesNetEstimate's
+ * readDataFile, with {@link CsvTokenizer CsvTokenizer} and with the BufferedReader and String.split parsing it
+ * replaced. Each invocation reads the whole file, so the score is the time per file of "rows" lines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+        @Benchmark
+        public int tokenizer(NetworkState net) throws IOException {
+                byte[] row = new byte[net.nodes];
+                boolean[] values = new boolean[net.nodes];
+                int trues = 0;
+                CsvTokenizer tok = new CsvTokenizer(net.eventsFile);
+                try {
+                        tok.readHeader();
+                        while (tok.next(row)) {
+                                for (int i = 0; i < values.length; i++) values[i] = (row[i] == CsvTokenizer.TRUE);
+                                if (values[0]) trues++;
+                        }
+                } finally {
+                        tok.close();
+                }
+                return trues;
+        }
+
+        @Benchmark
+        public int split(NetworkState net) throws IOException {
+                boolean[] values = new boolean[net.nodes];
+                int trues = 0;
+                String line;
+                BufferedReader br = new BufferedReader(new FileReader(net.eventsFile));
+                try {
+                        br.readLine();
+                        while ((line = br.readLine()) != null) {
+                                String[] vars = line.split(",");
+                                for (int i = 0; i < values.length; i++) values[i] = vars[i].equals("1");
+                                if (values[0]) trues++;
+                        }
+                } finally {
+                        br.close();
+                }
+                return trues;
+        }
+}
@@ -0,0 +1,77 @@
+/* ****************************************************************************************************************** *
+ * Name:        ScoringBenchmark.java
+ * Description: Benchmarks of scoring a model of every variable against a trained network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the ways of scoring one row of data against a trained synthetic network: the exact event probability
+ * over the {@link Node Node} array and over the flat {@link CPTable CPTable}, and the log odds of the unknown variable
+ * from its {@link MarkovBlanket markov blanket} in the {@link LogTable LogTable} and in the {@link CompiledScorer
+ * CompiledScorer}. Each invocation uses the next row of the events file, except blockLogOdds which scores a whole
+ * {@link RowBlock RowBlock} of rows and reports the time per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoringBenchmark {
+        /* Private members */
+        private BayesNetPredict bNetPred;       // Owner of calcExactEventProb
+        private boolean[] values;               // Copy of current row, which scoring may modify
+        private double[] out;                   // Log odds of each row of a block
+        private int row;                        // Row of events used by next invocation
+
+        @Setup(Level.Trial)
+        public void setup(NetworkState net) throws IOException {
+                bNetPred = new BayesNetPredict(net.modelFile.getPath(), net.testFile.getPath());
+                values = new boolean[net.nodes];
+                out = new double[RowBlock.ROWS];
+        }
+
+        /** Copies the next row of events into values. */
+        private boolean[] nextRow(NetworkState net) {
+                System.arraycopy(net.models[row], 0, values, 0, values.length);
+                if (++row == net.models.length) row = 0;
+                return values;
+        }
+
+        @Benchmark
+        public double calcExactEventProb(NetworkState net) {
+                return bNetPred.calcExactEventProb(net.bayesNet, nextRow(net));
+        }
+
+        @Benchmark
+        public double cpTableExactEventProb(NetworkState net) {
+                return net.cpt.calcExactEventProb(nextRow(net));
+        }
+
+        @Benchmark
+        public double logOdds(NetworkState net) {
+                return net.logTable.logOdds(net.nodes - 1, nextRow(net));
+        }
+
+        @Benchmark
+        public double compiledLogOdds(NetworkState net) {
+                byte[] cells = net.cells[row];
+                if (++row == net.cells.length) row = 0;
+                return net.scorer.logOdds(net.nodes - 1, cells);
+        }
+
+        @Benchmark
+        @OperationsPerInvocation(RowBlock.ROWS)
+        public double[] blockLogOdds(NetworkState net) {
+                net.scorer.logOdds(net.nodes - 1, net.block, out);
+                return out;
+        }
+}
@@ -0,0 +1,139 @@
+/* ****************************************************************************************************************** *
+ * Name:        SyntheticData.java
+ * Description: Generates random bayesian networks and data sampled from them, for benchmarks.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+
+/**
+ * Generates a random bayesian network with a given number of nodes and parent fan-in, and writes its network structure
+ * file and events or test data files sampled from it in the formats read by {@link BayesNetEstimate BayesNetEstimate}
+ * and {@link BayesNetPredict BayesNetPredict}.
+ * <p>
+ * Nodes are named "n0", "n1", ... except for the last node, which is named "spam" and is the unknown variable in test
+ * data. Each node takes min(index, fanIn) distinct parents from the nodes before it, and each CPT entry is a uniformly
+ * random probability. Columns of data files are in network order.
+ */
+public class SyntheticData {
+        /* Private members */
+        private String[] names;         // Name of each node
+        private int[][] parents;        // Indices of parents of each node
+        private double[][] probs;       // P(node = true | parent configuration), indexed as in Node
+        private Random rand;            // Source of randomness for structure and samples
+
+        /**
+         * Constructor. Generates a random network.
+         *
+         * @param nodes Number of nodes in network.
+         * @param fanIn Maximum number of parents of each node.
+         * @param seed Seed for random number generator.
+         */
+        public SyntheticData(int nodes, int fanIn, long seed) {
+                rand = new Random(seed);
+                names = new String[nodes];
+                parents = new int[nodes][];
+                probs = new double[nodes][];
+                for (int i = 0; i < nodes; i++) {
+                        names[i] = (i == nodes - 1) ? "spam" : "n" + i;
+
+                        /* Choose distinct parents from the nodes before this one */
+                        List<Integer> candidates = new ArrayList<Integer>();
+                        for (int j = 0; j < i; j++) candidates.add(j);
+                        Collections.shuffle(candidates, rand);
+                        parents[i] = new int[Math.min(i, fanIn)];
+                        for (int j = 0; j < parents[i].length; j++) parents[i][j] = candidates.get(j);
+                        Arrays.sort(parents[i]);
+
+                        probs[i] = new double[1 << parents[i].length];
+                        for (int j = 0; j < probs[i].length; j++) probs[i][j] = rand.nextDouble();
+                }
+        }
+
+        /**
+         * Writes the network structure file, in the format read by BayesNetEstimate.
+         *
+         * @param file File to write.
+         */
+        public void writeNetwork(File file) throws IOException {
+                PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+                try {
+                        for (int i = 0; i < names.length; i++) {
+                                StringBuilder sb = new StringBuilder(names[i]).append(":");
+                                for (int p : parents[i]) sb.append(" ").append(names[p]);
+                                w.println(sb);
+                        }
+                } finally {
+                        w.close();
+                }
+        }
+
+        /**
+         * Writes a data file of rows sampled from the network, with a header line of node names.
+         *
+         * @param file File to write.
+         * @param rows Number of rows to write.
+         * @param test If true, write the value of the last node as "?", making a test data file.
+         */
+        public void writeData(File file, int rows, boolean test) throws IOException {
+                PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 16));
+                boolean[] values = new boolean[names.length];
+                try {
+                        w.println(String.join(",", names));
+                        StringBuilder sb = new StringBuilder();
+                        for (int r = 0; r < rows; r++) {
+                                sample(values);
+                                sb.setLength(0);
+                                for (int i = 0; i < values.length; i++) {
+                                        if (i > 0) sb.append(',');
+                                        if (test && i == values.length - 1) sb.append('?');
+                                        else sb.append(values[i] ? '1' : '0');
+                                }
+                                w.println(sb);
+                        }
+                } finally {
+                        w.close();
+                }
+        }
+
+        /**
+         * Samples a model of every variable from the network, in network order.
+         *
+         * @param values Buffer for the sampled model.
+         */
+        public void sample(boolean[] values) {
+                for (int i = 0; i < values.length; i++) {
+                        int index = 0;
+                        for (int p : parents[i]) index = (index << 1) | (values[p] ? 0 : 1);
+                        values[i] = rand.nextDouble() < probs[i][index];
+                }
+        }
+
+        /**
+         * Creates a temporary directory holding a network file "net.txt", events file "events.csv" and test data file
+         * "test.csv" for a random network. The directory is deleted when the JVM exits.
+         *
+         * @param nodes Number of nodes in network.
+         * @param fanIn Maximum number of parents of each node.
+         * @param rows Number of rows in each of the events and test data files.
+         * @return Temporary directory.
+         */
+        public static File createFiles(int nodes, int fanIn, int rows) throws IOException {
+                File dir = File.createTempFile("bayesnet", "");
+                if (!dir.delete() || !dir.mkdir()) throw new IOException("Cannot create directory " + dir);
+                SyntheticData data = new SyntheticData(nodes, fanIn, 42);
+                data.writeNetwork(new File(dir, "net.txt"));
+                data.writeData(new File(dir, "events.csv"), rows, false);
+                data.writeData(new File(dir, "test.csv"), rows, true);
+                dir.deleteOnExit();     // Registered first so it is deleted last
+                for (String name : new String[] { "net.txt", "events.csv", "test.csv", "model.bin" }) {
+                        new File(dir, name).deleteOnExit();
+                }
+                return dir;
+        }
+}
@@ -0,0 +1,419 @@
+/* ****************************************************************************************************************** *
+ * Name:        BayesNetEstimate.java
+ * Description: Builds a bayesian network using a predefined netwrok structure and some sample date.
+ * Author:      Campbell Lockley        studentID: 1178618
+ * Date:        19/05/15
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Constructs a {@link Node Node} array representation of a bayesian network.
+ * <p>
+ * BayesNetEstimate reads in a predefined structure for the bayesian network from a file and parses model data to 
+ * calculate the conditional probabilities for the nodes in the network.
+ * <p>
+ * Running {@link main(String[]) main} with the name of a file containing the network structure and the name of a file 
+ * with sample data will build the network and output each state with its parents and associated conditional 
+ * probabilities to a file called "output.txt".
+ * <p>
+ * Nodes in the network structure file must be declared in the order of parents first. A node's line may end with the
+ * label of a {@link CPTKind CPTKind} in brackets to choose how its CPT is represented, e.g. "[noisy-or]".
+ * <p>
+ * The header of the events file is bound to the network by a {@link Schema Schema}, so its columns may be in any
+ * order and it may have columns which are not nodes of the network, which are skipped; every node must have a column.
+ * <p>
+ * If constructed with more than one thread, the events file is split into byte ranges on line boundaries which are 
+ * counted into separate {@link CPTable CPTables} in parallel and then merged. The resulting network is identical to 
+ * the one built by a single thread.
+ * <p>
+ * Once trained, the network and its CPTable are {@link CPTable#freeze(Smoothing) frozen} under the {@link Smoothing
+ * smoothing} set by {@link #setSmoothing(Smoothing) setSmoothing}, the 1/1 initialisation unless another is chosen.
+ *
+ * @see Node
+ */
+public class BayesNetEstimate {
+        /* Private Members */
+        private Node[] bayesNet;                // Representation of bayesian network
+        private CPTable cpt;                    // Flat CPTs of bayesian network, updated during training
+        private FileReader netFile;             // File specifying the network structure
+        private File eventsFile;                // File with model data for calulating the CPTs
+        private int threads;                    // Number of threads used to count the events file
+        private Metrics metrics;                // Timings of phases and count of lines trained
+        private Smoothing smoothing;            // Smoothing the trained network is frozen under
+
+        /**
+         * Constructor
+         *
+         * @param netFileName Name of file containing structure of bayesian network.
+         * @param eventsFileName Name of file containing training data for bayesian network.
+         */
+        public BayesNetEstimate(String netFileName, String eventsFileName) throws FileNotFoundException {
+                this(netFileName, eventsFileName, 1);
+        }
+
+        /**
+         * Constructor
+         *
+         * @param netFileName Name of file containing structure of bayesian network.
+         * @param eventsFileName Name of file containing training data for bayesian network.
+         * @param threads Number of threads to use to count the training data.
+         */
+        public BayesNetEstimate(String netFileName, String eventsFileName, int threads) throws FileNotFoundException {
+                if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+
+                /* Try and open input files */
+                netFile = new FileReader(netFileName);
+                eventsFile = new File(eventsFileName);
+                if (!eventsFile.isFile()) throw new FileNotFoundException(eventsFileName + " (No such file)");
+                this.threads = threads;
+                this.metrics = new Metrics();
+                this.smoothing = Smoothing.DEFAULT;
+        }
+
+        /**
+         * Constructs the bayesian network from the network structure file and the model data file.
+         *
+         * @return Representation of bayesian network.
+         */
+        public Node[] getBayesianNetwork() throws IOException {
+                /* Parse net file and construct the bayesian network */
+                long start = System.nanoTime();
+                readNetFile();
+                metrics.phase(Metrics.PARSE_NETWORK, start);
+
+                /* Parse events file to calculate estimate probabilities */
+                start = System.nanoTime();
+                readDataFile();
+                cpt.store(bayesNet);
+                for (Node n : bayesNet) n.freeze(smoothing);
+                cpt.freeze(smoothing);
+                metrics.phase(Metrics.TRAIN, start);
+                
+                return bayesNet;
+        }
+
+        /**
+         * Gets the metrics recorded while constructing the bayesian network.
+         *
+         * @return Metrics.
+         */
+        public Metrics getMetrics() {
+                return metrics;
+        }
+
+        /**
+         * Records metrics into the given Metrics instead of this object's own, so they can be shared with a predictor.
+         *
+         * @param metrics Metrics to record into.
+         */
+        public void setMetrics(Metrics metrics) {
+                this.metrics = metrics;
+        }
+
+        /**
+         * Sets the smoothing the network is frozen under once it is trained.
+         *
+         * @param s Smoothing.
+         */
+        public void setSmoothing(Smoothing s) {
+                this.smoothing = s;
+        }
+
+        /**
+         * Gets the flat CPTs of the bayesian network constructed by {@link #getBayesianNetwork() getBayesianNetwork}.
+         *
+         * @return Flat CPTs of bayesian network, or null if the network has not been constructed yet.
+         */
+        public CPTable getCPTable() {
+                return cpt;
+        }
+
+        /**
+         * Reads the structure of the bayesian network from the network structure file without training it, for
+         * callers which count the events file themselves.
+         *
+         * @return Empty CPTs with the structure of the network.
+         */
+        CPTable readStructure() throws IOException {
+                long start = System.nanoTime();
+                readNetFile();
+                metrics.phase(Metrics.PARSE_NETWORK, start);
+                return cpt;
+        }
+
+        /**
+         * Reads in the structure of the bayesian network from file and constructs the nodes in the network.
+         */
+        private void readNetFile() throws IOException {
+                BufferedReader br = new BufferedReader(netFile);
+                HashMap<String, Integer> indices = new HashMap<String, Integer>();
+                ArrayList<Node> net = new ArrayList<Node>();
+                ArrayList<Integer> pNodes;
+                int[] parents;
+                Scanner sc;
+                String line, name, token;
+                CPTKind kind;
+                int index = 0;
+
+                /* Parse net file and construct the bayesian network */
+                while ((line = br.readLine()) != null) {
+                        /* Parses line from network input file. Input file format should be:
+                           [node name]: [[parent 1] [parent 2] ... ]
+                           optionally followed by the kind of the node's CPT in brackets, e.g. "[sparse]" */
+                        sc = new Scanner(line);
+                        sc.useDelimiter(" ");
+
+                        /* Extract node name */
+                        name = sc.next();
+                        name = name.substring(0, name.length() - 1);    // Remove tailing ':'
+
+                        /* Extract node's parents */
+                        /* Parents must be declared above children in the network file */
+                        pNodes = new ArrayList<Integer>();
+                        kind = null;
+                        while (sc.hasNext()) {
+                                token = sc.next();
+                                if (token.startsWith("[") && token.endsWith("]")) {
+                                        kind = CPTKind.forLabel(token.substring(1, token.length() - 1));
+                                } else {
+                                        pNodes.add(indices.get(token));
+                                }
+                        }
+                        parents = new int[pNodes.size()];
+                        for (int i = 0; i < pNodes.size(); i++) parents[i] = pNodes.get(i).intValue();
+
+                        /* Add node to bayesian network */
+                        indices.put(name, new Integer(index++));
+                        if (kind == null) kind = CPTKind.forParents(parents.length);
+                        net.add(new Node(name, parents, kind));
+                }
+                bayesNet = new Node[net.size()];
+                net.toArray(bayesNet);
+                cpt = new CPTable(bayesNet);
+
+                br.close();
+                netFile.close();
+        }
+
+        /**
+         * Reads in model data for nodes in network and calculates CPTs for each node.
+         */
+        private void readDataFile() throws IOException {
+                CsvTokenizer tok = new CsvTokenizer(eventsFile);
+
+                try {
+                        /* Uses the first line from the input data file to bind the columns of the rest of the file to
+                           the Nodes of this Bayesian network.                                                        */
+                        String[] vars = tok.readHeader();
+                        if (vars == null) throw new IOException(eventsFile + " is empty");
+                        Schema schema = new Schema(cpt, vars, eventsFile.toString());
+                        schema.project(tok);
+
+                        /* Parse events file to calculate estimate probabilities */
+                        if (threads == 1) metrics.trained(countLines(tok, cpt));
+                        else countParallel(tok.position(), schema);
+                } finally {
+                        tok.close();
+                }
+        }
+
+        /**
+         * Updates a CPTable with every remaining line of model data read by a tokenizer.
+         *
+         * @param tok Tokenizer positioned at the start of a line of model data, projected by the events file's schema.
+         * @param t CPTable to update.
+         * @return Number of lines counted.
+         */
+        private static long countLines(CsvTokenizer tok, CPTable t) throws IOException {
+                byte[] row = new byte[t.size()];
+                boolean[] values = new boolean[t.size()];
+                long n = 0;
+
+                while (tok.next(row)) {
+                        /* Extract values from line of input */
+                        for (int i = 0; i < values.length; i++) values[i] = (row[i] == CsvTokenizer.TRUE);
+
+                        /* Update CPT for each node */
+                        t.update(values);
+                        n++;
+                }
+                return n;
+        }
+
+        /**
+         * Splits the model data in the events file into one byte range per thread, counts each range into its own 
+         * CPTable in parallel and sums the results into the CPTs of the network.
+         *
+         * @param start Offset of first line of model data.
+         * @param schema Binding of the events file's header to the network.
+         */
+        private void countParallel(long start, final Schema schema) throws IOException {
+                long[] bounds = lineBounds(eventsFile, start, threads);
+
+                /* Count each chunk into a private table */
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                List<Future<CPTable>> results = new ArrayList<Future<CPTable>>();
+                try {
+                        for (int i = 0; i < threads; i++) {
+                                final long from = bounds[i], to = bounds[i + 1];
+                                results.add(pool.submit(new Callable<CPTable>() {
+                                        public CPTable call() throws IOException {
+                                                return countChunk(from, to, schema);
+                                        }
+                                }));
+                        }
+
+                        /* Merge tables */
+                        for (Future<CPTable> f : results) cpt.add(f.get());
+                } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while counting events file");
+                } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                        throw new IOException("Error counting events file", e.getCause());
+                } finally {
+                        pool.shutdownNow();
+                }
+        }
+
+        /**
+         * Counts the lines of model data in a byte range of the events file into a new CPTable.
+         *
+         * @param from Offset of the first byte of the range, which must be the start of a line.
+         * @param to Offset one past the last byte of the range, which must be the end of a line or the file.
+         * @param schema Binding of the events file's header to the network.
+         * @return CPTable with the counts of the byte range.
+         */
+        private CPTable countChunk(long from, long to, Schema schema) throws IOException {
+                CPTable t = new CPTable(cpt);
+                CsvTokenizer tok = new CsvTokenizer(eventsFile, from, to);
+                try {
+                        schema.project(tok);
+                        metrics.trained(countLines(tok, t));
+                } finally {
+                        tok.close();
+                }
+                return t;
+        }
+
+        /**
+         * Splits the lines of a file after a start offset into byte ranges of roughly equal size, on line boundaries.
+         *
+         * @param file File to split.
+         * @param start Offset of first line to include, e.g. the line after the header.
+         * @param chunks Number of ranges.
+         * @return Offsets of the start of each range, followed by the length of the file. Ranges may be empty.
+         */
+        static long[] lineBounds(File file, long start, int chunks) throws IOException {
+                long[] bounds = new long[chunks + 1];
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                        long length = raf.length() - start;
+                        bounds[0] = start;
+                        for (int i = 1; i < chunks; i++) {
+                                bounds[i] = Math.max(bounds[i - 1], nextLine(raf, start + (length * i) / chunks));
+                        }
+                        bounds[chunks] = raf.length();
+                } finally {
+                        raf.close();
+                }
+                return bounds;
+        }
+
+        /**
+         * Finds the start of the first line beginning after the given offset, i.e. the position after the next newline
+         * at or after offset - 1.
+         *
+         * @param raf Events file.
+         * @param offset Offset to search from, which must be after the start of the header line.
+         * @return Offset of start of line, or the length of the file if there are no more lines.
+         */
+        private static long nextLine(RandomAccessFile raf, long offset) throws IOException {
+                byte[] buf = new byte[8192];
+                long pos = offset - 1;
+                int n;
+                raf.seek(pos);
+                while ((n = raf.read(buf)) > 0) {
+                        for (int i = 0; i < n; i++) if (buf[i] == '\n') return pos + i + 1;
+                        pos += n;
+                }
+                return raf.length();
+        }
+
+        /**
+         * Gets input files from command line args and builds the bayesian network.
+         * Prints resulting network with calculated conditional probabilities to "output.txt", and optionally saves 
+         * it to a binary model file and writes a JSON summary of its metrics.
+         */
+        public static void main(String[] args) throws FileNotFoundException, IOException {
+                /* Parse options */
+                int threads = 1, arg = 0;
+                String model = null, json = null;
+                Smoothing smoothing = Smoothing.DEFAULT;
+                try {
+                        while (arg < args.length && args[arg].startsWith("-")) {
+                                if (arg + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + 
+                                                                                               args[arg]);
+                                if (args[arg].equals("-t")) threads = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-m")) model = args[arg + 1];
+                                else if (args[arg].equals("-j")) json = args[arg + 1];
+                                else if (args[arg].equals("-s")) smoothing = Smoothing.parse(args[arg + 1]);
+                                else throw new IllegalArgumentException("Unknown option " + args[arg]);
+                                arg += 2;
+                        }
+                        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* If wrong arg num print usage and exit */
+                if (args.length - arg != 2) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* Construct bayesian network and output with calculated conditional probabilities */
+                PrintWriter w = new PrintWriter(new File("output.txt"));
+                BayesNetEstimate bNetEst = new BayesNetEstimate(args[arg], args[arg + 1], threads);
+                bNetEst.getMetrics().register("BayesNetEstimate");
+                bNetEst.setSmoothing(smoothing);
+                Node[] bayesNet = bNetEst.getBayesianNetwork();
+                for (Node n : bayesNet) {
+                        w.println(Node.printNode(n, bayesNet));
+                }
+                w.flush();
+                w.close();
+
+                /* Save trained network for prediction */
+                if (model != null) {
+                        long start = System.nanoTime();
+                        ModelFile.write(bNetEst.getCPTable(), new File(model));
+                        bNetEst.getMetrics().phase(Metrics.WRITE_MODEL, start);
+                }
+                if (json != null) bNetEst.getMetrics().writeJson(new File(json));
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.out). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: BayesNetEstimate [-t threads] [-s smoothing] [-m model file] [-j metrics file] " +
+                                                                                "[network file] [events file]\n" +
+                          "             threads      - Number of threads used to count the events file (default 1)\n"+
+                          "             smoothing    - fraction, laplace, lidstone:alpha or dirichlet:ess, applied " +
+                                                      "to the printed probabilities (default fraction)\n" +
+                          "             model file   - The binary model file to save the trained network to, for " +
+                                                      "BayesNetPredict\n" +
+                          "             metrics file - The file to write a JSON summary of timings and counts to\n" +
+                          "             network file - The file which contains the structure of the bayesian network\n"+
+                          "             events file  - The file which contains the data from which the probabilities " +
+                                                      "of the bayesian network is estimated");
+        }
+}
+
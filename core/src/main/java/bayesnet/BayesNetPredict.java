@@ -0,0 +1,595 @@
+/* ****************************************************************************************************************** *
+ * Name:        BayesNetPredict.java
+ * Description: Makes predictions about some test data based of a bayesian network.
+ * Author:      Campbell Lockley        studentID: 1178618
+ * Date:        21/05/15
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+
+/**
+ * Constructs a bayesian network from a predefined structure and trains it with some training data. BayesNetPredict 
+ * then makes predictions about the most probable state of an unknown variable (denoted by a "?") in some test data, 
+ * writting the corrected data out to the file "completedTest.csv".
+ * <p>
+ * The bayesian network is represented as a {@link Node Node} array.
+ * <p>
+ * Running {@link main(String[]) main} with the name of a file containing the network structure, the name of a file 
+ * containing the training data and the name of a file containing the test data will get BayesianNetPredict to write 
+ * every line of the test data to the file "completedtTest.csv" with the unknown variable corrected to its most 
+ * probable value.
+ * <p>
+ * Alternatively a network trained and saved by BayesNetEstimate can be loaded from a binary {@link ModelFile model 
+ * file}, so the training data is not read again.
+ * <p>
+ * The output file and what is written for each line can be changed with {@link #setOutput(String,
+ * PredictionWriter.Format) setOutput}, e.g. to write only the predictions to standard output.
+ * <p>
+ * The network is {@link CPTable#freeze(Smoothing) frozen} under the {@link Smoothing smoothing} set by {@link
+ * #setSmoothing(Smoothing) setSmoothing} before classifying, so a model file can be scored under any smoothing.
+ * <p>
+ * The header of the test data is bound to the network by a {@link Schema Schema}: every node must have a column, in any
+ * order, and columns which are not nodes are skipped without being decoded.
+ * <p>
+ * N.B. The unkown variable(s) in the test data must be a node specified in the network structure file.
+ *
+ * @see BayesNetEstimate
+ * @see Node
+ */
+public class BayesNetPredict {
+        /* Private members */
+        private BayesNetEstimate bNetEst;       // Builds bayesian network and calculates CPTs of nodes
+        private File modelFile;                 // Binary model file of trained network, used instead of bNetEst
+        private File testFile;                  // File with training data to classify with bayesian network
+        private int workers;                    // Number of classification workers, or 0 to classify sequentially
+        private int batchSize;                  // Number of lines per batch when classifying in parallel
+        private int queueDepth;                 // Number of batches each pipeline queue can hold
+        private Metrics metrics;                // Timings of phases, counts and latencies of lines classified
+        private String outputPath;              // File to write classified test data to, or "-" for standard output
+        private PredictionWriter.Format format; // What to write for each line of test data
+        private Smoothing smoothing;            // Smoothing the network is frozen under
+        private int cacheSize;                  // Entries in the scorer's result cache, or 0 for no cache
+        private boolean exactTies;              // Whether a factor outside the query's blanket which is 0 is a tie
+
+        /* Set once the network is constructed and the test file header is read, and not modified after */
+        private CPTable cpt;                    // CPTs of network
+        private LogTable logTable;              // Log-space CPTs of network, for scoring without underflow
+        private MarkovBlanket blanket;          // Markov blankets of nodes in network
+        private CompiledScorer scorer;          // Scores lines whose only unknown variable is the query
+        private VariableElimination elim;       // Scores lines with more than one unknown variable
+        private Schema schema;                  // Binding of test data header to network; rows are in network order
+
+        /**
+         * Constructor.
+         * @param netFileName Name of file containing structure of bayesian network.
+         * @param trainFileName Name of file containing training data for bayesian network.
+         * @param testFileName Name of file containing test data for bayesian network.
+         */
+        public BayesNetPredict(String netFileName, String trainFileName, String testFileName) 
+                        throws FileNotFoundException {
+                this(netFileName, trainFileName, testFileName, 1);
+        }
+
+        /**
+         * Constructor.
+         * @param netFileName Name of file containing structure of bayesian network.
+         * @param trainFileName Name of file containing training data for bayesian network.
+         * @param testFileName Name of file containing test data for bayesian network.
+         * @param threads Number of threads to use to count the training data.
+         */
+        public BayesNetPredict(String netFileName, String trainFileName, String testFileName, int threads) 
+                        throws FileNotFoundException {
+                /* Try and open input files */
+                testFile = new File(testFileName);
+                if (!testFile.isFile()) throw new FileNotFoundException(testFileName + " (No such file)");
+                bNetEst = new BayesNetEstimate(netFileName, trainFileName, threads);
+                setMetrics(new Metrics());
+                setOutput("completedTest.csv", PredictionWriter.Format.ROW);
+                setSmoothing(Smoothing.DEFAULT);
+        }
+
+        /**
+         * Constructor. Loads a trained bayesian network from a model file written by BayesNetEstimate instead of 
+         * training one.
+         * @param modelFileName Name of binary model file containing trained bayesian network.
+         * @param testFileName Name of file containing test data for bayesian network.
+         * @see ModelFile
+         */
+        public BayesNetPredict(String modelFileName, String testFileName) throws FileNotFoundException {
+                /* Try and open input files */
+                testFile = new File(testFileName);
+                if (!testFile.isFile()) throw new FileNotFoundException(testFileName + " (No such file)");
+                modelFile = new File(modelFileName);
+                if (!modelFile.isFile()) throw new FileNotFoundException(modelFileName + " (No such file)");
+                setMetrics(new Metrics());
+                setOutput("completedTest.csv", PredictionWriter.Format.ROW);
+                setSmoothing(Smoothing.DEFAULT);
+        }
+
+        /**
+         * Constructor. Uses a trained bayesian network which is already loaded, to classify lines of test data 
+         * supplied by the caller after {@link #bind(String[], String) bind} has been called with their header, rather
+         * than a test data file. The table is not modified if it is already frozen, so it can be shared between
+         * predictors; otherwise it is frozen under its own smoothing.
+         * @param cpt CPTs of trained bayesian network.
+         * @see BayesNetServer
+         */
+        BayesNetPredict(CPTable cpt) {
+                setMetrics(new Metrics());
+                setSmoothing(cpt.getSmoothing());
+                load(cpt);
+        }
+
+        /**
+         * Gets the metrics recorded while training or loading the network and classifying test data.
+         *
+         * @return Metrics.
+         */
+        public Metrics getMetrics() {
+                return metrics;
+        }
+
+        /**
+         * Records metrics, including those of training the network, into the given Metrics instead of this object's
+         * own, so they can be shared.
+         *
+         * @param metrics Metrics to record into.
+         */
+        public void setMetrics(Metrics metrics) {
+                this.metrics = metrics;
+                if (bNetEst != null) bNetEst.setMetrics(metrics);
+        }
+
+        /**
+         * Writes the classified test data to a file other than "completedTest.csv", or in another format.
+         *
+         * @param path File to write, or {@link PredictionWriter#STDOUT PredictionWriter.STDOUT} for standard output.
+         * @param format What to write for each line of test data.
+         */
+        public void setOutput(String path, PredictionWriter.Format format) {
+                this.outputPath = path;
+                this.format = format;
+        }
+
+        /**
+         * Scores the test data under other smoothing than the 1/1 initialisation.
+         *
+         * @param s Smoothing.
+         */
+        public void setSmoothing(Smoothing s) {
+                this.smoothing = s;
+                if (bNetEst != null) bNetEst.setSmoothing(s);
+        }
+
+        /**
+         * Caches the log odds of queries, keyed by the values of their markov blanket, or by the evidence read by
+         * variable elimination for lines with several unknown variables, so lines which repeat a pattern of evidence
+         * are not scored again. Hits and misses are recorded in the metrics. Must be called before the test file
+         * header is read.
+         *
+         * @param entries Most log odds held, or 0 for no cache.
+         * @see ResultCache
+         */
+        public void setResultCache(int entries) {
+                if (entries < 0) throw new IllegalArgumentException("Result cache size must not be negative");
+                this.cacheSize = entries;
+        }
+
+        /**
+         * Makes a line in which a factor outside the markov blanket of its unknown variable is 0 a tie, which predicts
+         * true, as comparing its exact event probabilities would. By default such factors are ignored, as checking
+         * them costs a lookup for every node which is certain for some configuration of its parents, and under the
+         * default smoothing that is every node with an unseen configuration. Must be called before the test file
+         * header is read.
+         *
+         * @param exactTies If true, check the factors outside the blanket for 0.
+         * @see LogTable
+         */
+        public void setExactTies(boolean exactTies) {
+                this.exactTies = exactTies;
+                if (cpt != null) logTable = new LogTable(cpt, blanket, exactTies);
+        }
+
+        /**
+         * Classifies the test data with a pipeline of a reader, a pool of workers and an ordered writer, instead of 
+         * one line at a time. The output is identical.
+         *
+         * @param workers Number of workers classifying batches of lines, or 0 to classify sequentially.
+         * @param batchSize Number of lines in each batch.
+         * @param queueDepth Number of batches each queue between the pipeline stages can hold.
+         * @see PredictPipeline
+         */
+        public void setPipeline(int workers, int batchSize, int queueDepth) {
+                if (workers < 0 || batchSize < 1 || queueDepth < 1) {
+                        throw new IllegalArgumentException("Invalid pipeline configuration");
+                }
+                this.workers = workers;
+                this.batchSize = batchSize;
+                this.queueDepth = queueDepth;
+        }
+
+        /**
+         * Constructs a bayesian netowork using a predefined network structure and some training data and attempts to
+         * classify some test data which has an unknown variable by predicting the most probable state of this unknown
+         * variable based on the bayesian network trained with the training data.
+         * <p>
+         * The test data is corrected with the predictions and is written out to "completedTest.csv", or as set by
+         * {@link #setOutput(String, PredictionWriter.Format) setOutput}.
+         */
+        public void predict() throws IOException {
+                /* Construct and train bayesian network, or load trained network */
+                CPTable cpt;
+                long start = System.nanoTime();
+                if (modelFile != null) {
+                        cpt = ModelFile.read(modelFile);
+                } else {
+                        bNetEst.getBayesianNetwork();
+                        cpt = bNetEst.getCPTable();
+                        start = System.nanoTime();
+                }
+                load(cpt);
+                metrics.phase(Metrics.LOAD_MODEL, start);
+
+                /* Open I/O */
+                CsvTokenizer tok = new CsvTokenizer(testFile);
+                PredictionWriter w = null;
+
+                try {
+                        /* Bind header to network before writing anything */
+                        String[] vars = tok.readHeader();
+                        if (vars == null) throw new IOException(testFile + " is empty");
+                        start = System.nanoTime();
+                        bind(vars, testFile.toString());
+                        schema.project(tok);
+                        metrics.phase(Metrics.BIND, start);
+
+                        /* Echo header from input to output */
+                        w = PredictionWriter.open(outputPath, format);
+                        w.writeHeader(tok);
+
+                        /* Parse test file, making predictions, and write to output */
+                        start = System.nanoTime();
+                        if (workers == 0) {
+                                byte[] row = new byte[cpt.size()];
+                                boolean[] values = new boolean[cpt.size()];
+                                RowBlock block = new RowBlock(cpt.size());
+                                int[] lineOf = new int[RowBlock.ROWS];
+                                double[] blockOdds = new double[RowBlock.ROWS];
+                                LineBatch lines = new LineBatch();
+                                while (classify(tok, block, lineOf, blockOdds, lines, RowBlock.ROWS, row, values) > 0) {
+                                        w.write(lines);
+                                        lines.clear();
+                                }
+                        } else {
+                                new PredictPipeline(this, workers, batchSize, queueDepth).run(tok, w);
+                        }
+                        w.flush();
+                        metrics.phase(Metrics.CLASSIFY, start);
+                } finally {
+                        tok.close();
+                        if (w != null) w.close();
+                }
+        }
+
+        /**
+         * Prepares a trained network for scoring, freezing it if it is not already frozen under the smoothing.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         */
+        private void load(CPTable cpt) {
+                if (!cpt.isFrozen() || !cpt.getSmoothing().equals(smoothing)) cpt.freeze(smoothing);
+                this.cpt = cpt;
+                blanket = new MarkovBlanket(cpt);
+                logTable = new LogTable(cpt, blanket, exactTies);
+        }
+
+        /**
+         * Binds the header of the test data to the network, and compiles the scorer for rows projected by the
+         * resulting {@link Schema Schema}, which have one cell per node in network order.
+         *
+         * @param vars Cells of header line of test data.
+         * @param source Name of the file or request the header is from, for error messages.
+         * @throws IOException If a node of the network has no column, or more than one.
+         */
+        void bind(String[] vars, String source) throws IOException {
+                schema = new Schema(cpt, vars, source);
+                int[] identity = new int[cpt.size()];
+                for (int i = 0; i < identity.length; i++) identity[i] = i;
+                ResultCache cache = (cacheSize > 0) ? new ResultCache(cacheSize, metrics) : null;
+                scorer = new CompiledScorer(cpt, logTable, blanket, identity, cache);
+                elim = new VariableElimination(cpt, cache, exactTies);
+        }
+
+        /**
+         * Gets the binding of the test data header to the network, once {@link #predict() predict} has read the test
+         * file header. Tokenizers of the test data must be projected by it.
+         *
+         * @return Schema of test data.
+         */
+        Schema getSchema() {
+                return schema;
+        }
+
+        /**
+         * Gets the test data file.
+         *
+         * @return Test data file.
+         */
+        File getTestFile() {
+                return testFile;
+        }
+
+        /**
+         * Gets the number of nodes in the network, i.e. the length of a projected row of test data.
+         *
+         * @return Number of nodes in network.
+         */
+        int getNetworkSize() {
+                return cpt.size();
+        }
+
+        /**
+         * Classifies a line of test data by predicting the most probable state of its unknown variable from the log 
+         * probabilities of the factors in the variable's markov blanket (the factors of every other node are the same
+         * for both values of the variable).
+         * <p>
+         * The unknown variable is the last "?" in the line. When it is the only "?", the line is scored straight from
+         * its cells by a {@link CompiledScorer CompiledScorer}. Any other unknown variables in the network are
+         * marginalized out with {@link VariableElimination VariableElimination}.
+         * <p>
+         * Safe to call from multiple threads once {@link #predict() predict} has read the test file header, as long as 
+         * each thread uses its own values array.
+         *
+         * @param tok Tokenizer which has just read the line of test data.
+         * @param row Cells of the line of test data, as projected by the tokenizer.
+         * @param values Buffer for the model of the variables, with length equal to the number of nodes in network.
+         * @return Log odds of the unknown variable being true; it is predicted to be true if they are at least 0.
+         */
+        double classify(CsvTokenizer tok, byte[] row, boolean[] values) {
+                long start = System.nanoTime();
+                double logOdds = logOdds(tok, row, values);
+                metrics.classified((logOdds >= 0) ? 1 : 0, (logOdds >= 0) ? 0 : 1);
+                metrics.latency(System.nanoTime() - start, 1);
+                return logOdds;
+        }
+
+        /**
+         * Calculates log(P(unknown = true, rest) / P(unknown = false, rest)) for the unknown variable of a line of test
+         * data.
+         *
+         * @param tok Tokenizer which has just read the line of test data.
+         * @param row Cells of the line of test data, as projected by the tokenizer.
+         * @param values Buffer for the model of the variables, with length equal to the number of nodes in network.
+         * @return Log odds of the unknown variable being true.
+         */
+        private double logOdds(CsvTokenizer tok, byte[] row, boolean[] values) {
+                int pos, unknowns = 0;
+                double logOdds;
+
+                /* Find node of missing variable (starting from back) */
+                pos = tok.lastUnknown();
+                assert (pos >=0);       // Must find query variable
+
+                /* Score straight from the row when the query is its only unknown cell */
+                if (tok.unknownCount() == 1) return scorer.logOdds(pos, row);
+
+                /* Get values of nodes from input, counting other unknown variables */
+                for (int i = 0; i < values.length; i++) {
+                        values[i] = (row[i] == CsvTokenizer.TRUE);
+                        if (row[i] == CsvTokenizer.UNKNOWN && i != pos) unknowns++;
+                }
+
+                /* Calculate log(P(spam = true) / P(spam = false)) */
+                if (unknowns == 0) {
+                        logOdds = logTable.logOdds(pos, values);
+                } else {
+                        int[] unknown = new int[unknowns];
+                        for (int i = 0, n = 0; i < values.length; i++) {
+                                if (row[i] == CsvTokenizer.UNKNOWN && i != pos) unknown[n++] = i;
+                        }
+                        logOdds = elim.logOdds(pos, unknown, unknowns, values);
+                }
+
+                return logOdds;
+        }
+
+        /**
+         * Reads and classifies up to max lines of test data. Lines whose only unknown cell is the same node as the
+         * first such line are collected into a {@link RowBlock RowBlock} and scored together by the
+         * {@link CompiledScorer CompiledScorer}; other lines are classified one at a time as by
+         * {@link #classify(CsvTokenizer, byte[], boolean[]) classify}. Either way, the log odds are the same.
+         * <p>
+         * Safe to call from multiple threads once {@link #predict() predict} has read the test file header, as long as 
+         * each thread uses its own block and buffers.
+         *
+         * @param tok Tokenizer positioned before the lines of test data, projected by the {@link #getSchema() schema}.
+         * @param block Buffer for rows scored together, with one column per node in network.
+         * @param lineOf Buffer for the index in lines of each row of the block, with length RowBlock.ROWS.
+         * @param blockOdds Buffer for the log odds of each row of the block, with length RowBlock.ROWS.
+         * @param lines Batch to append the classified lines to.
+         * @param max Maximum number of lines to read.
+         * @param row Buffer for the projected cells of a line of test data.
+         * @param values Buffer for the model of the variables, with length equal to the number of nodes in network.
+         * @return Number of lines read, which is less than max if the block is full or there are no more lines.
+         */
+        int classify(CsvTokenizer tok, RowBlock block, int[] lineOf, double[] blockOdds, LineBatch lines, int max,
+                     byte[] row, boolean[] values) throws IOException {
+                int n = 0, query = -1, pos, positives = 0;
+                long start = System.nanoTime(), single = 0;
+
+                block.clear();
+                while (n < max && block.size() < RowBlock.ROWS && tok.next(row)) {
+                        pos = tok.lastUnknown();
+                        if (pos < 0) throw new IOException("Line of test data has no unknown variable");
+                        int line = lines.add(tok);
+                        if (tok.unknownCount() == 1 && (query < 0 || pos == query)) {
+                                query = pos;
+                                lineOf[block.add(row)] = line;
+                        } else {
+                                long t = System.nanoTime();
+                                lines.setLogOdds(line, classify(tok, row, values));
+                                single += System.nanoTime() - t;
+                        }
+                        n++;
+                }
+
+                /* Score block */
+                if (block.size() > 0) {
+                        scorer.logOdds(query, block, blockOdds);
+                        for (int r = 0; r < block.size(); r++) {
+                                lines.setLogOdds(lineOf[r], blockOdds[r]);
+                                if (blockOdds[r] >= 0) positives++;
+                        }
+                        metrics.classified(positives, block.size() - positives);
+                        metrics.block(System.nanoTime() - start - single, block.size());
+                }
+                return n;
+        }
+
+        /**
+         * Caclucates the exact event probabilities for the bayesian network given the specified model of the 
+         * variables.
+         * <p>
+         * i.e. ExactEventP(x1, ..., xn) = PRODUCT(P(xi | PARENTS(Xi)));
+         * 
+         * @param bayesNet The bayesian network.
+         * @param values The model for the variables.
+         * @return The exact event probability for the given model.
+         */
+        public double calcExactEventProb(Node[] bayesNet, boolean[] values) {
+                assert (values.length == bayesNet.length);
+
+                double prob = 1;
+
+                /* Calculate exact event probability */
+                Node n;
+                double p;
+                for (int i = 0; i < bayesNet.length; i++) {
+                        n = bayesNet[i];
+
+                        /* Exact event probability is product of individual conditional probabilities */
+                        p = n.getTrueProb(values);
+                        prob *= (values[i]) ? p : (1 - p);
+                }
+
+                return prob;
+        }
+
+        /** 
+         * Gets input files from command line, builds bayesian network and uses it to make predictions about test 
+         * data. Prints test data with predictions to "completedTest.csv".
+         */
+        public static void main(String[] args) throws IOException, FileNotFoundException {
+                /* Parse options */
+                int threads = 1, workers = 0, batchSize = 1024, queueDepth = 16, cacheSize = 0, arg = 0;
+                boolean exactTies = false;
+                String model = null, json = null, output = "completedTest.csv";
+                PredictionWriter.Format format = PredictionWriter.Format.ROW;
+                Smoothing smoothing = Smoothing.DEFAULT;
+                try {
+                        while (arg < args.length && args[arg].startsWith("-")) {
+                                if (arg + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + 
+                                                                                               args[arg]);
+                                if (args[arg].equals("-t")) threads = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-w")) workers = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-b")) batchSize = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-q")) queueDepth = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-m")) model = args[arg + 1];
+                                else if (args[arg].equals("-j")) json = args[arg + 1];
+                                else if (args[arg].equals("-o")) output = args[arg + 1];
+                                else if (args[arg].equals("-s")) smoothing = Smoothing.parse(args[arg + 1]);
+                                else if (args[arg].equals("-r")) cacheSize = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-f")) {
+                                        format = PredictionWriter.Format.forLabel(args[arg + 1]);
+                                }
+                                else if (args[arg].equals("-z")) {
+                                        if (!args[arg + 1].equals("tie") && !args[arg + 1].equals("blanket")) {
+                                                throw new IllegalArgumentException("Unknown zero factor rule " +
+                                                                                   args[arg + 1]);
+                                        }
+                                        exactTies = args[arg + 1].equals("tie");
+                                }
+                                else throw new IllegalArgumentException("Unknown option " + args[arg]);
+                                arg += 2;
+                        }
+                        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                        if (workers < 0 || batchSize < 1 || queueDepth < 1) {
+                                throw new IllegalArgumentException("Invalid pipeline configuration");
+                        }
+                        if (cacheSize < 0) throw new IllegalArgumentException("Result cache size must not be negative");
+                } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        printUsage(System.err);
+                        return;
+                }
+
+                if (args.length - arg != ((model != null) ? 1 : 3)) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* Construct bayesian network and classify test data */
+                Metrics metrics = new Metrics();
+                metrics.register("BayesNetPredict");
+                boolean failed = false;
+                try {
+                        BayesNetPredict bNetPred;
+                        if (model != null) bNetPred = new BayesNetPredict(model, args[arg]);
+                        else bNetPred = new BayesNetPredict(args[arg], args[arg + 1], args[arg + 2], threads);
+                        bNetPred.setMetrics(metrics);
+                        bNetPred.setPipeline(workers, batchSize, queueDepth);
+                        bNetPred.setOutput(output, format);
+                        bNetPred.setSmoothing(smoothing);
+                        bNetPred.setResultCache(cacheSize);
+                        bNetPred.setExactTies(exactTies);
+                        bNetPred.predict();
+                } catch (Exception e) {
+                        metrics.error();
+                        System.err.println("Error: BayesNetPredict failed: " + e);
+                        for (Throwable c = e.getCause(); c != null; c = c.getCause()) {
+                                System.err.println("        caused by: " + c);
+                        }
+                        failed = true;
+                } finally {
+                        if (json != null) metrics.writeJson(new File(json));
+                }
+                if (failed) System.exit(1);
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.err). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: BayesNetPredict [options] [network file] [training data file] [test data file]\n" +
+                          "       BayesNetPredict [options] -m [model file] [test data file]\n" +
+                          "             -m model file      - The binary model file of a network trained by " +
+                                                            "BayesNetEstimate, used instead of training a network\n" +
+                          "             -t threads         - Number of threads used to count the training data " +
+                                                            "(default 1)\n" +
+                          "             -w workers         - Number of threads classifying the test data in a " +
+                                                            "pipeline, 0 to classify sequentially (default 0)\n" +
+                          "             -b batch size      - Number of lines per pipeline batch (default 1024)\n" +
+                          "             -q queue depth     - Number of batches each pipeline queue holds " +
+                                                            "(default 16)\n" +
+                          "             -j metrics file    - The file to write a JSON summary of timings, counts " +
+                                                            "and latencies to\n" +
+                          "             -o output file     - The file to write the classified test data to, or - " +
+                                                            "for standard output (default completedTest.csv)\n" +
+                          "             -f format          - What to write for each line: row, prediction or " +
+                                                            "posterior (default row)\n" +
+                          "             -s smoothing       - fraction, laplace, lidstone:alpha or dirichlet:ess " +
+                                                            "(default fraction)\n" +
+                          "             -r cache entries   - Number of log odds to cache by markov blanket evidence, " +
+                                                            "0 for no cache (default 0)\n" +
+                          "             -z rule            - A line in which a factor outside the markov blanket is " +
+                                                            "0: tie, predicting 1, or blanket (default blanket)\n" +
+                          "             network file       - The file which contains the structure of the bayesian " +
+                                                            "network\n" +
+                          "             training data file - The file which contains the data from which the " +
+                                                            "probabilities of the bayesian network is estimated\n" +
+                          "             test data file     - The file which contains the data to classify");
+        }
+}
+
@@ -0,0 +1,465 @@
+/* ****************************************************************************************************************** *
+ * Name:        BayesNetServer.java
+ * Description: Resident HTTP server which classifies test data with a trained bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import com.sun.net.httpserver.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a trained bayesian network from a {@link ModelFile model file} once and classifies test data sent to a local
+ * HTTP endpoint, so each request costs only tokenizing and scoring its lines rather than starting a JVM and training.
+ * <p>
+ * A request is a POST to "/classify" whose body is test data as read by {@link BayesNetPredict BayesNetPredict}: a
+ * header line naming the columns, then one or more lines each with an unknown variable "?". The response body is the
+ * lines with their unknown variables replaced by predictions, one per line and in order, without the header. A single
+ * message is a request with one line; a batch is a request with many. The binding of each distinct header to the
+ * network is built once and cached, keeping the {@link #MAX_BINDINGS most recently used} headers of each model. A
+ * header without a column for every node of the network is rejected.
+ * <p>
+ * The model file is polled for changes, and a changed file is loaded in the background and swapped in atomically:
+ * each request is classified entirely with the model current when it started. If the new file cannot be read the old
+ * model is kept. Model files should be replaced by renaming a complete file over the old one, rather than written in
+ * place.
+ * <p>
+ * A JSON summary of the server's {@link Metrics metrics} is served at "/metrics".
+ * <p>
+ * Each model is {@link CPTable#freeze(Smoothing) frozen} under the server's {@link Smoothing smoothing} as it is
+ * loaded, before any request can see it.
+ * <p>
+ * Each binding can cache the log odds of queries by the evidence of their markov blanket in a {@link ResultCache
+ * ResultCache} of a given size, whose hits and misses are part of the metrics.
+ * <p>
+ * The server listens on the loopback address only, and handles requests on a fixed pool of threads. A request whose
+ * body is longer than the {@link #setMaxRequest(int) maximum request size} is refused with status 413 before it is
+ * read into memory.
+ * <p>
+ * Small responses are only sent promptly if Nagle's algorithm is off, which the JDK's HTTP server does for every
+ * server in the JVM when the system property "sun.net.httpserver.nodelay" is "true" as the first server is created.
+ * {@link #main(String[]) main} sets it; a program embedding the server should set it itself if it wants it.
+ *
+ * @see BayesNetPredict
+ * @see ModelFile
+ */
+public class BayesNetServer {
+        /* Public constants */
+        public static final int MAX_BINDINGS = 64;      // Bindings of distinct headers cached for each model
+        public static final int DEFAULT_MAX_REQUEST = 64 << 20; // Bytes of request body accepted by default
+
+        /* Private members */
+        private File modelFile;                 // Model file of trained network
+        private HttpServer http;                // HTTP server
+        private ExecutorService pool;           // Threads handling requests
+        private ScheduledExecutorService watcher;       // Thread polling model file for changes
+        private volatile Model model;           // Current model
+        private long rejected;                  // Modification time of model file which last failed to load
+        private ThreadLocal<Buffers> buffers;   // Buffers of each request thread
+        private Metrics metrics;                // Metrics of every model and request
+        private Smoothing smoothing;            // Smoothing every model is frozen under
+        private int cacheSize;                  // Entries in the result cache of each binding, or 0 for no cache
+        private volatile int maxRequest = DEFAULT_MAX_REQUEST;  // Bytes of request body accepted
+
+        /**
+         * Constructor. Loads the model, but does not start serving.
+         *
+         * @param modelFile Model file of trained network.
+         * @param port Port to listen on, or 0 for any free port.
+         * @param threads Number of threads handling requests.
+         */
+        public BayesNetServer(File modelFile, int port, int threads) throws IOException {
+                this(modelFile, port, threads, Smoothing.DEFAULT);
+        }
+
+        /**
+         * Constructor. Loads the model, but does not start serving.
+         *
+         * @param modelFile Model file of trained network.
+         * @param port Port to listen on, or 0 for any free port.
+         * @param threads Number of threads handling requests.
+         * @param smoothing Smoothing every model is frozen under.
+         */
+        public BayesNetServer(File modelFile, int port, int threads, Smoothing smoothing) throws IOException {
+                this(modelFile, port, threads, smoothing, 0);
+        }
+
+        /**
+         * Constructor. Loads the model, but does not start serving.
+         *
+         * @param modelFile Model file of trained network.
+         * @param port Port to listen on, or 0 for any free port.
+         * @param threads Number of threads handling requests.
+         * @param smoothing Smoothing every model is frozen under.
+         * @param cacheSize Entries in the result cache of each binding, or 0 for no cache.
+         */
+        public BayesNetServer(File modelFile, int port, int threads, Smoothing smoothing, int cacheSize)
+                        throws IOException {
+                if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                if (cacheSize < 0) throw new IllegalArgumentException("Result cache size must not be negative");
+                this.modelFile = modelFile;
+                this.metrics = new Metrics();
+                this.smoothing = smoothing;
+                this.cacheSize = cacheSize;
+                this.model = new Model(modelFile, metrics, smoothing, cacheSize);
+                this.buffers = new ThreadLocal<Buffers>();
+                this.pool = Executors.newFixedThreadPool(threads);
+                this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+                http.createContext("/classify", new HttpHandler() {
+                        public void handle(HttpExchange ex) throws IOException {
+                                handleClassify(ex);
+                        }
+                });
+                http.createContext("/metrics", new HttpHandler() {
+                        public void handle(HttpExchange ex) throws IOException {
+                                try {
+                                        send(ex, 200, metrics.toJson());
+                                } finally {
+                                        ex.close();
+                                }
+                        }
+                });
+                http.setExecutor(pool);
+        }
+
+        /**
+         * Starts serving requests, and polling the model file for changes.
+         *
+         * @param pollMillis Milliseconds between checks of the model file, or 0 to never reload it.
+         */
+        public void start(long pollMillis) {
+                if (pollMillis > 0) {
+                        watcher = Executors.newSingleThreadScheduledExecutor();
+                        watcher.scheduleWithFixedDelay(new Runnable() {
+                                public void run() {
+                                        if (reloadIfChanged()) System.out.println("Loaded new model from " + modelFile);
+                                }
+                        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+                }
+                http.start();
+        }
+
+        /** Stops serving requests, waiting up to a second for requests in progress to complete. */
+        public void stop() {
+                if (watcher != null) watcher.shutdownNow();
+                http.stop(1);
+                pool.shutdown();
+        }
+
+        /**
+         * Sets the longest request body accepted. Longer requests are refused with status 413.
+         *
+         * @param bytes Bytes of request body accepted, at least 1.
+         */
+        public void setMaxRequest(int bytes) {
+                if (bytes < 1 || bytes == Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Maximum request size must be between 1 and " +
+                                                           (Integer.MAX_VALUE - 1) + " bytes");
+                }
+                maxRequest = bytes;
+        }
+
+        /**
+         * Gets the port the server is listening on.
+         *
+         * @return Port.
+         */
+        public int getPort() {
+                return http.getAddress().getPort();
+        }
+
+        /**
+         * Gets the number of header bindings cached for the current model.
+         *
+         * @return Number of bindings, at most {@link #MAX_BINDINGS MAX_BINDINGS}.
+         */
+        int getBindingCount() {
+                Model m = model;
+                synchronized (m.bindings) {
+                        return m.bindings.size();
+                }
+        }
+
+        /**
+         * Gets the metrics of the server, which are shared by every model it loads.
+         *
+         * @return Metrics.
+         */
+        public Metrics getMetrics() {
+                return metrics;
+        }
+
+        /**
+         * Loads the model file if it has changed since the current model was loaded, and swaps it in. A changed file
+         * which fails to load is not retried until it changes again.
+         *
+         * @return True if a new model was swapped in.
+         */
+        public synchronized boolean reloadIfChanged() {
+                Model current = model;
+                long modified = modelFile.lastModified();
+                if (modified == current.modified && modelFile.length() == current.length) return false;
+                if (modified == rejected) return false;
+                try {
+                        model = new Model(modelFile, metrics, smoothing, cacheSize);
+                        return true;
+                } catch (IOException e) {
+                        rejected = modified;
+                        metrics.error();
+                        System.err.println("Error: Keeping current model, cannot load " + modelFile + ": " +
+                                           e.getMessage());
+                        return false;
+                }
+        }
+
+        /** Handles a request to classify lines of test data. */
+        private void handleClassify(HttpExchange ex) throws IOException {
+                try {
+                        if (!ex.getRequestMethod().equals("POST")) {
+                                send(ex, 405, "Method not allowed, use POST\n");
+                                return;
+                        }
+                        int max = maxRequest;
+                        byte[] body = readBody(ex, max);
+                        if (body == null) {
+                                metrics.error();
+                                send(ex, 413, "Request body longer than " + max + " bytes\n");
+                                return;
+                        }
+                        byte[] response;
+                        try {
+                                response = classify(body);
+                        } catch (IOException e) {
+                                metrics.error();
+                                send(ex, 400, "Error: " + e.getMessage() + "\n");
+                                return;
+                        }
+                        send(ex, 200, response);
+                } catch (RuntimeException e) {
+                        metrics.error();
+                        send(ex, 500, "Error: " + e + "\n");
+                } finally {
+                        ex.close();
+                }
+        }
+
+        /**
+         * Reads a request body, unless it is longer than a limit. A declared length over the limit is refused without
+         * reading anything; otherwise at most one byte more than the limit is read.
+         *
+         * @param ex Exchange of request.
+         * @param max Bytes of request body accepted.
+         * @return Request body, or null if it is longer than max.
+         */
+        private static byte[] readBody(HttpExchange ex, int max) throws IOException {
+                String length = ex.getRequestHeaders().getFirst("Content-Length");     // Already checked by server
+                if (length != null && Long.parseLong(length.trim()) > max) return null;
+                byte[] body = ex.getRequestBody().readNBytes(max + 1);
+                return (body.length > max) ? null : body;
+        }
+
+        /**
+         * Classifies the lines of test data in a request body with the current model.
+         *
+         * @param body Request body: a header line, then lines of test data.
+         * @return Classified lines, each followed by a newline.
+         * @throws IOException If the body is not valid test data.
+         */
+        private byte[] classify(byte[] body) throws IOException {
+                long start = System.nanoTime();
+                CsvTokenizer tok = new CsvTokenizer(ByteBuffer.wrap(body));
+                String[] vars = tok.readHeader();
+                if (vars == null) throw new IOException("Missing header line");
+                byte[] header = new byte[tok.lineLength()];
+                tok.getLine(header);
+                BayesNetPredict bNetPred = model.bind(new String(header, StandardCharsets.ISO_8859_1), vars);
+                bNetPred.getSchema().project(tok);
+
+                /* Reuse this thread's buffers while the binding is the same */
+                Buffers b = buffers.get();
+                if (b == null || b.bNetPred != bNetPred) {
+                        b = new Buffers(bNetPred);
+                        buffers.set(b);
+                }
+
+                /* Drop anything left by a request which failed part way through on this thread */
+                b.lines.clear();
+                b.writer.discard();
+                b.out.reset();
+                while (bNetPred.classify(tok, b.block, b.lineOf, b.blockOdds, b.lines, RowBlock.ROWS, b.row,
+                                         b.values) > 0) {
+                        b.writer.write(b.lines);
+                        b.lines.clear();
+                }
+                b.writer.flush();
+                metrics.phase(Metrics.CLASSIFY, start);
+                return b.out.toByteArray();
+        }
+
+        /** Sends a plain text response. */
+        private static void send(HttpExchange ex, int status, String text) throws IOException {
+                send(ex, status, text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        /** Sends a plain text response. */
+        private static void send(HttpExchange ex, int status, byte[] bytes) throws IOException {
+                ex.getResponseHeaders().set("Content-Type", "text/plain; charset=ISO-8859-1");
+                ex.sendResponseHeaders(status, bytes.length);
+                OutputStream out = ex.getResponseBody();
+                out.write(bytes);
+                out.close();
+        }
+
+        /** A trained network loaded from the model file, with the binding of each header used recently. */
+        private static class Model {
+                final CPTable cpt;              // CPTs of network
+                final Metrics metrics;          // Metrics recorded by classifiers
+                final long modified;            // Modification time of model file when loaded
+                final long length;              // Length of model file when loaded
+                final int cacheSize;            // Entries in the result cache of each binding, or 0 for no cache
+                final LinkedHashMap<String, BayesNetPredict> bindings;  // Classifier of each header, least recent first
+
+                Model(File file, Metrics metrics, Smoothing smoothing, int cacheSize) throws IOException {
+                        long start = System.nanoTime();
+                        this.metrics = metrics;
+                        this.cacheSize = cacheSize;
+                        modified = file.lastModified();
+                        length = file.length();
+                        cpt = ModelFile.read(file);
+                        cpt.freeze(smoothing);  // Before any binding shares it
+                        bindings = new LinkedHashMap<String, BayesNetPredict>(16, 0.75f, true) {
+                                @Override
+                                protected boolean removeEldestEntry(Map.Entry<String, BayesNetPredict> eldest) {
+                                        return size() > MAX_BINDINGS;
+                                }
+                        };
+                        metrics.phase(Metrics.LOAD_MODEL, start);
+                }
+
+                /**
+                 * Gets the classifier for lines with a header, creating it if necessary. Creating it may evict the
+                 * least recently used binding, which requests already holding it keep using.
+                 */
+                BayesNetPredict bind(String header, String[] vars) throws IOException {
+                        BayesNetPredict bNetPred;
+                        synchronized (bindings) {
+                                bNetPred = bindings.get(header);
+                        }
+                        if (bNetPred != null) return bNetPred;
+
+                        /* Bind outside the lock, so requests with cached headers don't wait */
+                        long start = System.nanoTime();
+                        bNetPred = new BayesNetPredict(cpt);
+                        bNetPred.setMetrics(metrics);
+                        bNetPred.setResultCache(cacheSize);
+                        bNetPred.bind(vars, "request header");
+                        metrics.phase(Metrics.BIND, start);
+                        synchronized (bindings) {
+                                BayesNetPredict prev = bindings.putIfAbsent(header, bNetPred);
+                                return (prev != null) ? prev : bNetPred;
+                        }
+                }
+        }
+
+        /** Buffers used by one thread to classify lines with one binding. */
+        private static class Buffers {
+                final BayesNetPredict bNetPred; // Binding the buffers are sized for
+                final byte[] row;               // Cells of a line
+                final boolean[] values;         // Model of the variables
+                final RowBlock block;           // Lines scored together
+                final int[] lineOf;             // Index in lines of each row of block
+                final double[] blockOdds;       // Log odds of each row of block
+                final LineBatch lines;          // Classified lines
+                final ByteArrayOutputStream out; // Response body
+                final PredictionWriter writer;  // Writes classified lines to the response body
+
+                Buffers(BayesNetPredict bNetPred) {
+                        this.bNetPred = bNetPred;
+                        row = new byte[bNetPred.getNetworkSize()];
+                        values = new boolean[bNetPred.getNetworkSize()];
+                        block = new RowBlock(bNetPred.getNetworkSize());
+                        lineOf = new int[RowBlock.ROWS];
+                        blockOdds = new double[RowBlock.ROWS];
+                        lines = new LineBatch();
+                        out = new ByteArrayOutputStream();
+                        writer = new PredictionWriter(Channels.newChannel(out), PredictionWriter.Format.ROW);
+                }
+        }
+
+        /**
+         * Gets options and a model file from command line args, and serves classification requests until killed.
+         */
+        public static void main(String[] args) throws IOException {
+                /* Parse options */
+                int port = 8642, threads = Runtime.getRuntime().availableProcessors(), cacheSize = 0, arg = 0;
+                int maxRequest = DEFAULT_MAX_REQUEST;
+                long poll = 1000;
+                Smoothing smoothing = Smoothing.DEFAULT;
+                try {
+                        while (arg < args.length && args[arg].startsWith("-")) {
+                                if (arg + 1 >= args.length) throw new IllegalArgumentException("Missing value for " +
+                                                                                               args[arg]);
+                                if (args[arg].equals("-p")) port = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-t")) threads = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-i")) poll = Long.parseLong(args[arg + 1]);
+                                else if (args[arg].equals("-s")) smoothing = Smoothing.parse(args[arg + 1]);
+                                else if (args[arg].equals("-r")) cacheSize = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-m")) maxRequest = Integer.parseInt(args[arg + 1]);
+                                else throw new IllegalArgumentException("Unknown option " + args[arg]);
+                                arg += 2;
+                        }
+                        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                        if (poll < 0) throw new IllegalArgumentException("Poll interval must not be negative");
+                        if (cacheSize < 0) throw new IllegalArgumentException("Result cache size must not be negative");
+                        if (maxRequest < 1 || maxRequest == Integer.MAX_VALUE) {
+                                throw new IllegalArgumentException("Maximum request size must be between 1 and " +
+                                                                   (Integer.MAX_VALUE - 1) + " bytes");
+                        }
+                } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        printUsage(System.err);
+                        return;
+                }
+
+                if (args.length - arg != 1) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                System.setProperty("sun.net.httpserver.nodelay", "true");       // Don't delay small responses
+                BayesNetServer server = new BayesNetServer(new File(args[arg]), port, threads, smoothing, cacheSize);
+                server.setMaxRequest(maxRequest);
+                server.getMetrics().register("BayesNetServer");
+                server.start(poll);
+                System.out.println("Serving on http://127.0.0.1:" + server.getPort() + "/classify");
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.err). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: BayesNetServer [options] [model file]\n" +
+                          "             -p port      - Port to listen on at 127.0.0.1 (default 8642)\n" +
+                          "             -t threads   - Number of threads handling requests (default number of " +
+                                                      "processors)\n" +
+                          "             -i millis    - Milliseconds between checks for a changed model file, 0 to " +
+                                                      "never reload (default 1000)\n" +
+                          "             -s smoothing - fraction, laplace, lidstone:alpha or dirichlet:ess " +
+                                                      "(default fraction)\n" +
+                          "             -r entries   - Number of log odds each binding caches by markov blanket " +
+                                                      "evidence, 0 for no cache (default 0)\n" +
+                          "             -m bytes     - Longest request body accepted, longer requests are refused " +
+                                                      "with 413 (default 67108864)\n" +
+                          "             model file   - The binary model file of a network trained by " +
+                                                      "BayesNetEstimate");
+        }
+}
@@ -0,0 +1,99 @@
+/* ****************************************************************************************************************** *
+ * Name:        CPTKind.java
+ * Description: The ways the conditional probability table of a node can be represented.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * The representation of the conditional probability table (CPT) of a {@link Node Node}, chosen per node.
+ * <ul>
+ *      <li>{@link #DENSE DENSE} - counts for every one of the 2^k configurations of k parents, in a flat table.</li>
+ *      <li>{@link #SPARSE SPARSE} - counts for only the configurations which have been observed, in a
+ *          {@link SparseCPT SparseCPT}.</li>
+ *      <li>{@link #NOISY_OR NOISY_OR} - one parameter per parent and a leak, in a {@link NoisyOrCPT NoisyOrCPT}.</li>
+ * </ul>
+ * <p>
+ * A dense table is fastest but its size doubles with every parent, so nodes with more than
+ * {@link #MAX_DENSE_PARENTS MAX_DENSE_PARENTS} parents are sparse unless a kind is given for them. The kind of a node
+ * can be given in the network structure file by ending its line with the kind's label in brackets, e.g.
+ * <pre>
+ *      spam: f1 f2 f3 [noisy-or]
+ * </pre>
+ * Sparse and noisy-OR tables identify parent configurations by a long, so no node may have more than
+ * {@link #MAX_PARENTS MAX_PARENTS} parents.
+ *
+ * @see NodeCPT
+ */
+public enum CPTKind {
+        /** Table of every parent configuration */
+        DENSE("dense"),
+        /** Hash table of observed parent configurations */
+        SPARSE("sparse"),
+        /** Noisy-OR of parents */
+        NOISY_OR("noisy-or");
+
+        /** Most parents a node is given a dense table for by default */
+        public static final int MAX_DENSE_PARENTS = 20;
+
+        /** Most parents of any node */
+        public static final int MAX_PARENTS = 63;
+
+        /* Private members */
+        private String label;           // Label of kind in network structure file
+
+        /** Constructor */
+        CPTKind(String label) {
+                this.label = label;
+        }
+
+        /**
+         * Gets the label of this kind in the network structure file.
+         *
+         * @return Label, without brackets.
+         */
+        public String getLabel() {
+                return label;
+        }
+
+        /**
+         * Creates an empty sparse or noisy-OR table of this kind.
+         *
+         * @param parents Number of parents of node.
+         * @return Empty table, or null if this kind is dense.
+         */
+        public NodeCPT create(int parents) {
+                switch (this) {
+                case SPARSE:
+                        return new SparseCPT(parents);
+                case NOISY_OR:
+                        return new NoisyOrCPT(parents);
+                default:
+                        return null;
+                }
+        }
+
+        /**
+         * Gets the default kind for a node.
+         *
+         * @param parents Number of parents of node.
+         * @return Dense if the node has at most MAX_DENSE_PARENTS parents, otherwise sparse.
+         */
+        public static CPTKind forParents(int parents) {
+                return (parents <= MAX_DENSE_PARENTS) ? DENSE : SPARSE;
+        }
+
+        /**
+         * Gets the kind with a label.
+         *
+         * @param label Label of kind, without brackets.
+         * @return Kind with label.
+         * @throws IllegalArgumentException If no kind has the label.
+         */
+        public static CPTKind forLabel(String label) {
+                for (CPTKind kind : values()) if (kind.label.equals(label)) return kind;
+                throw new IllegalArgumentException("Unknown CPT kind " + label);
+        }
+}
@@ -0,0 +1,472 @@
+/* ****************************************************************************************************************** *
+ * Name:        CPTable.java
+ * Description: Flat, primitive array storage for the conditional probability tables of a whole bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * Flat representation of the conditional probability tables (CPTs) of every {@link Node Node} in a bayesian network.
+ * <p>
+ * Where each Node keeps its own table of {@link Frac Frac} objects, CPTable packs the counts of all nodes into a
+ * single pair of primitive arrays, with each node's table stored contiguously at {@link #cptOff cptOff[node]}. The
+ * parent indices of all nodes are likewise packed into one array. Updating or querying the network for a row of data
+ * therefore allocates nothing and touches only a few adjacent array regions.
+ * <p>
+ * The CPT index for a node is computed with bit arithmetic from the values of its parents, using the same ordering as
+ * {@link Node Node}: the first parent is the most significant bit and a parent which is false sets its bit. All parents
+ * true is therefore index 0.
+ * <p>
+ * CPTable stores the raw observed counts. The {@link Smoothing smoothing} which avoids the zero-frequency problem,
+ * by default the 1/1 initialisation Node uses, is applied when a probability is calculated, so tables can be merged
+ * by simply summing their counts. Once trained, a table can be {@link #freeze(Smoothing) frozen}, which precomputes
+ * P(true) and P(false) for every entry under a given smoothing so inference never divides. Freezing again under
+ * another smoothing reuses the same counts; changing the counts discards the precomputed probabilities.
+ * <p>
+ * Nodes whose {@link CPTKind kind} is not dense take no space in the packed arrays; their CPT is a
+ * {@link NodeCPT NodeCPT} in {@link #tables tables}, keyed by the CPT index computed in a long with {@link
+ * #key(int, boolean[]) key}.
+ *
+ * @see Node
+ * @see CPTKind
+ */
+public class CPTable {
+        /* Package Private members */
+        protected int[] parentOff;      // Start of each node's parents in parentIdx[]; parentOff[n] is its end
+        protected int[] parentIdx;      // Packed parent indices of every node, in the order of Node.parents[]
+        protected int[] cptOff;         // Start of each node's CPT in num[]/denom[]; cptOff[n] is the total size
+        protected long[] num;           // Number of observations of each node being true for a parent configuration
+        protected long[] denom;         // Number of observations of each parent configuration
+        protected NodeCPT[] tables;     // CPT of each node which is not dense, or null if every node is dense
+        protected double[] pTrue;       // Frozen P(node = true | parent configuration), laid out as num[], or null
+        protected double[] pFalse;      // Frozen P(node = false | parent configuration), laid out as num[], or null
+
+        /* Private members */
+        private int size;               // Number of nodes in network
+        private String[] names;         // Name of each node in network
+        private Smoothing smoothing;    // Smoothing of probabilities
+
+        /**
+         * Constructor. Creates an empty table with the structure of the given bayesian network.
+         *
+         * @param bayesNet The bayesian network.
+         */
+        public CPTable(Node[] bayesNet) {
+                this(namesOf(bayesNet), parentsOf(bayesNet), kindsOf(bayesNet));
+        }
+
+        /**
+         * Constructor. Creates an empty table for a bayesian network with the given structure, where each node's CPT
+         * is of the default kind for its number of parents.
+         *
+         * @param names Name of each node in network.
+         * @param parents Indices of the parents of each node in network.
+         */
+        public CPTable(String[] names, int[][] parents) {
+                this(names, parents, null);
+        }
+
+        /**
+         * Constructor. Creates an empty table for a bayesian network with the given structure.
+         *
+         * @param names Name of each node in network.
+         * @param parents Indices of the parents of each node in network.
+         * @param kinds Kind of each node's CPT, or null for the default kind for its number of parents.
+         */
+        public CPTable(String[] names, int[][] parents, CPTKind[] kinds) {
+                size = names.length;
+                this.names = names;
+                smoothing = Smoothing.DEFAULT;
+                parentOff = new int[size + 1];
+                cptOff = new int[size + 1];
+                for (int i = 0; i < size; i++) {
+                        int pNum = parents[i].length;
+                        CPTKind kind = (kinds != null) ? kinds[i] : CPTKind.forParents(pNum);
+                        if (pNum > CPTKind.MAX_PARENTS || (kind == CPTKind.DENSE && (pNum > 30 ||
+                                        (long)cptOff[i] + (1 << pNum) > Integer.MAX_VALUE))) {
+                                throw new IllegalArgumentException("Node " + names[i] + 
+                                                                   " has too many parents for a CPTable");
+                        }
+                        parentOff[i + 1] = parentOff[i] + pNum;
+                        cptOff[i + 1] = cptOff[i] + ((kind == CPTKind.DENSE) ? (1 << pNum) : 0);
+                        if (kind != CPTKind.DENSE) {
+                                if (tables == null) tables = new NodeCPT[size];
+                                tables[i] = kind.create(pNum);
+                        }
+                }
+                parentIdx = new int[parentOff[size]];
+                for (int i = 0; i < size; i++) {
+                        System.arraycopy(parents[i], 0, parentIdx, parentOff[i], parents[i].length);
+                }
+                num = new long[cptOff[size]];
+                denom = new long[cptOff[size]];
+        }
+
+        /**
+         * Constructor. Creates an empty table with the same structure and smoothing as another table. The structure
+         * arrays are shared between the two tables, the counts are not.
+         *
+         * @param t Table to copy structure from.
+         */
+        public CPTable(CPTable t) {
+                size = t.size;
+                names = t.names;
+                smoothing = t.smoothing;
+                parentOff = t.parentOff;
+                parentIdx = t.parentIdx;
+                cptOff = t.cptOff;
+                num = new long[t.num.length];
+                denom = new long[t.denom.length];
+                if (t.tables != null) {
+                        tables = new NodeCPT[size];
+                        for (int i = 0; i < size; i++) if (t.tables[i] != null) tables[i] = t.tables[i].emptyCopy();
+                }
+        }
+
+        /**
+         * Creates a copy of this table, frozen if this table is. The structure arrays are shared between the two
+         * tables, the counts are not.
+         *
+         * @return Copy of this table.
+         */
+        public CPTable copy() {
+                CPTable t = new CPTable(this);
+                System.arraycopy(num, 0, t.num, 0, num.length);
+                System.arraycopy(denom, 0, t.denom, 0, denom.length);
+                if (pTrue != null) {
+                        t.pTrue = pTrue.clone();
+                        t.pFalse = pFalse.clone();
+                }
+                if (tables != null) {
+                        for (int i = 0; i < size; i++) if (tables[i] != null) t.tables[i] = tables[i].copy();
+                }
+                return t;
+        }
+
+        /**
+         * Creates a table with the structure and counts of an already trained bayesian network.
+         *
+         * @param bayesNet The trained bayesian network.
+         * @return Flat table of the network's CPTs.
+         */
+        public static CPTable fromNetwork(Node[] bayesNet) {
+                CPTable t = new CPTable(bayesNet);
+                for (int i = 0; i < t.size; i++) {
+                        if (bayesNet[i].table != null) {
+                                t.tables[i] = bayesNet[i].table.copy();
+                                continue;
+                        }
+                        Frac[] probs = bayesNet[i].probs;
+                        for (int j = 0; j < probs.length; j++) {
+                                /* Remove the 1/1 initialisation */
+                                t.num[t.cptOff[i] + j] = probs[j].num - 1;
+                                t.denom[t.cptOff[i] + j] = probs[j].denom - 1;
+                        }
+                }
+                return t;
+        }
+
+        /**
+         * Copies the counts in this table into the CPTs of the given bayesian network, discarding any probabilities
+         * frozen in the network. The {@link Frac Frac} of each entry holds its counts plus one as ints.
+         *
+         * @param bayesNet The bayesian network this table was created from.
+         * @throws IllegalStateException If a parent configuration has been observed too many times for an int, in
+         *                               which case the network is left unchanged.
+         */
+        public void store(Node[] bayesNet) {
+                assert (bayesNet.length == size);
+                for (int i = 0; i < size; i++) {
+                        if (bayesNet[i].table != null) continue;
+                        for (int j = cptOff[i]; j < cptOff[i + 1]; j++) {
+                                if (denom[j] < Integer.MAX_VALUE) continue;     // Count + 1 fits in an int
+                                throw new IllegalStateException("Node " + names[i] + " has " + denom[j] +
+                                                                " observations of a parent configuration, too many" +
+                                                                " for its Frac");
+                        }
+                }
+                for (int i = 0; i < size; i++) {
+                        if (bayesNet[i].table != null) {
+                                bayesNet[i].table = tables[i].copy();
+                                continue;
+                        }
+                        Frac[] probs = bayesNet[i].probs;
+                        bayesNet[i].pTrue = bayesNet[i].pFalse = null;
+                        for (int j = 0; j < probs.length; j++) {
+                                probs[j].num = (int)(num[cptOff[i] + j] + 1);
+                                probs[j].denom = (int)(denom[cptOff[i] + j] + 1);
+                        }
+                }
+        }
+
+        /**
+         * Adds the counts of another table with the same structure to the counts of this table.
+         *
+         * @param t Table to merge into this table.
+         */
+        public void add(CPTable t) {
+                if (t.cptOff[t.size] != cptOff[size] || (t.tables == null) != (tables == null)) {
+                        throw new IllegalArgumentException("CPTables differ in structure");
+                }
+                pTrue = pFalse = null;
+                for (int i = 0; i < num.length; i++) {
+                        num[i] += t.num[i];
+                        denom[i] += t.denom[i];
+                }
+                if (tables != null) {
+                        for (int i = 0; i < size; i++) if (tables[i] != null) tables[i].add(t.tables[i]);
+                }
+        }
+
+        /**
+         * Subtracts the counts of another table with the same structure, which were counted from a subset of the
+         * observations counted into this table, e.g. to leave out one fold of the training data.
+         *
+         * @param t Table to remove from this table.
+         */
+        public void subtract(CPTable t) {
+                if (t.cptOff[t.size] != cptOff[size] || (t.tables == null) != (tables == null)) {
+                        throw new IllegalArgumentException("CPTables differ in structure");
+                }
+                pTrue = pFalse = null;
+                for (int i = 0; i < num.length; i++) {
+                        num[i] -= t.num[i];
+                        denom[i] -= t.denom[i];
+                }
+                if (tables != null) {
+                        for (int i = 0; i < size; i++) if (tables[i] != null) tables[i].subtract(t.tables[i]);
+                }
+        }
+
+        /**
+         * Sets the smoothing of this table and precomputes the probability of every node being true and false for
+         * every parent configuration, so probabilities are looked up rather than calculated. May be called again with
+         * another smoothing. Updating, adding or subtracting counts discards the precomputed probabilities; until the
+         * table is frozen again they are calculated from the counts with the same smoothing.
+         *
+         * @param s Smoothing.
+         */
+        public void freeze(Smoothing s) {
+                smoothing = s;
+                pTrue = pFalse = null;
+                double[] t = new double[num.length], f = new double[num.length];
+                for (int i = 0; i < size; i++) {
+                        int parents = parentOff[i + 1] - parentOff[i];
+                        for (int j = cptOff[i], end = cptOff[i + 1]; j < end; j++) {
+                                t[j] = s.prob(num[j], denom[j], parents);
+                                f[j] = 1 - t[j];
+                        }
+                        if (tables != null && tables[i] != null) tables[i].freeze(s);
+                }
+                pTrue = t;
+                pFalse = f;
+        }
+
+        /**
+         * Gets the smoothing of this table.
+         *
+         * @return Smoothing.
+         */
+        public Smoothing getSmoothing() {
+                return smoothing;
+        }
+
+        /**
+         * Gets whether the probabilities of this table are precomputed, i.e. it has been {@link #freeze(Smoothing)
+         * frozen} and its counts have not changed since.
+         *
+         * @return True if frozen.
+         */
+        public boolean isFrozen() {
+                return pTrue != null;
+        }
+
+        /**
+         * Gets the number of nodes in the network.
+         *
+         * @return Number of nodes.
+         */
+        public int size() {
+                return size;
+        }
+
+        /**
+         * Gets the name of a node.
+         *
+         * @param node Index of node in network.
+         * @return Name of node.
+         */
+        public String getName(int node) {
+                return names[node];
+        }
+
+        /**
+         * Gets the indices of the parents of a node.
+         *
+         * @param node Index of node in network.
+         * @return Indices of parents of node, in the order of Node.parents[].
+         */
+        public int[] getParents(int node) {
+                int[] parents = new int[parentOff[node + 1] - parentOff[node]];
+                System.arraycopy(parentIdx, parentOff[node], parents, 0, parents.length);
+                return parents;
+        }
+
+        /**
+         * Gets the kind of a node's CPT.
+         *
+         * @param node Index of node in network.
+         * @return Kind of node's CPT.
+         */
+        public CPTKind getKind(int node) {
+                return (tables == null || tables[node] == null) ? CPTKind.DENSE : tables[node].kind();
+        }
+
+        /**
+         * Gets whether every node's CPT is dense, so every CPT is in the packed arrays.
+         *
+         * @return True if every node's CPT is dense.
+         */
+        public boolean isDense() {
+                return tables == null;
+        }
+
+        /**
+         * Calculates the index into the CPT of a node given a model of every variable in the network.
+         *
+         * @param node Index of node in network.
+         * @param values The model for the variables.
+         * @return Index of the parent configuration, relative to the start of the node's CPT.
+         */
+        public int index(int node, boolean[] values) {
+                int index = 0;
+                for (int j = parentOff[node], end = parentOff[node + 1]; j < end; j++) {
+                        index = (index << 1) | (values[parentIdx[j]] ? 0 : 1);
+                }
+                return index;
+        }
+
+        /**
+         * Calculates the key of the parent configuration of a node given a model of every variable in the network.
+         * The key is the {@link #index(int, boolean[]) index} computed in a long, for nodes which are not dense.
+         *
+         * @param node Index of node in network.
+         * @param values The model for the variables.
+         * @return Key of the parent configuration.
+         */
+        public long key(int node, boolean[] values) {
+                long key = 0;
+                for (int j = parentOff[node], end = parentOff[node + 1]; j < end; j++) {
+                        key = (key << 1) | (values[parentIdx[j]] ? 0 : 1);
+                }
+                return key;
+        }
+
+        /**
+         * Gets the probability of a node being true given the key of a configuration of its parents.
+         *
+         * @param node Index of node in network.
+         * @param key Key of parent configuration.
+         * @return P(node = true | parent configuration).
+         */
+        public double getTrueProb(int node, long key) {
+                if (tables != null && tables[node] != null) return tables[node].getProb(key);
+                int entry = cptOff[node] + (int)key;
+                if (pTrue != null) return pTrue[entry];
+                return smoothing.prob(num[entry], denom[entry], parentOff[node + 1] - parentOff[node]);
+        }
+
+        /**
+         * Gets whether a node is certain for some configuration of its parents, i.e. whether P(node = true | parent
+         * configuration) is exactly 0 or 1 for some key, so the node's factor is 0 in some models.
+         *
+         * @param node Index of node in network.
+         * @return True if the node is certain for some parent configuration.
+         */
+        public boolean hasCertainConfiguration(int node) {
+                if (tables != null && tables[node] != null) return tables[node].hasCertainConfiguration();
+                for (long key = 0, end = cptOff[node + 1] - cptOff[node]; key < end; key++) {
+                        double prob = getTrueProb(node, key);
+                        if (prob == 0 || prob == 1) return true;
+                }
+                return false;
+        }
+
+        /**
+         * Updates the CPT of every node given an observation of the variables in the network.
+         *
+         * @param values The observed model for the variables.
+         */
+        public void update(boolean[] values) {
+                assert (values.length == size);
+                if (pTrue != null) pTrue = pFalse = null;
+                int entry;
+                for (int i = 0; i < size; i++) {
+                        if (tables != null && tables[i] != null) {
+                                tables[i].update(key(i, values), values[i]);
+                                continue;
+                        }
+                        entry = cptOff[i] + index(i, values);
+                        denom[entry]++;
+                        if (values[i]) num[entry]++;
+                }
+        }
+
+        /**
+         * Returns the probability of a node being the value it has in the given model, given the state of its parents
+         * in that model.
+         *
+         * @param node Index of node in network.
+         * @param values The model for the variables.
+         * @return P(node = values[node] | PARENTS(node)).
+         */
+        public double getProb(int node, boolean[] values) {
+                double prob;
+                if (tables != null && tables[node] != null) {
+                        prob = tables[node].getProb(key(node, values));
+                } else {
+                        int entry = cptOff[node] + index(node, values);
+                        if (pTrue != null) return (values[node]) ? pTrue[entry] : pFalse[entry];
+                        prob = smoothing.prob(num[entry], denom[entry], parentOff[node + 1] - parentOff[node]);
+                }
+                return (values[node]) ? prob : (1 - prob);
+        }
+
+        /**
+         * Caclucates the exact event probability for the bayesian network given the specified model of the variables.
+         * <p>
+         * i.e. ExactEventP(x1, ..., xn) = PRODUCT(P(xi | PARENTS(Xi)));
+         *
+         * @param values The model for the variables.
+         * @return The exact event probability for the given model.
+         */
+        public double calcExactEventProb(boolean[] values) {
+                assert (values.length == size);
+                double prob = 1;
+                for (int i = 0; i < size; i++) prob *= getProb(i, values);
+                return prob;
+        }
+
+        /** Gets the name of each node in a bayesian network. */
+        private static String[] namesOf(Node[] bayesNet) {
+                String[] names = new String[bayesNet.length];
+                for (int i = 0; i < bayesNet.length; i++) names[i] = bayesNet[i].getName();
+                return names;
+        }
+
+        /** Gets the kind of each node's CPT in a bayesian network. */
+        private static CPTKind[] kindsOf(Node[] bayesNet) {
+                CPTKind[] kinds = new CPTKind[bayesNet.length];
+                for (int i = 0; i < bayesNet.length; i++) kinds[i] = bayesNet[i].getKind();
+                return kinds;
+        }
+
+        /** Gets the parents of each node in a bayesian network. */
+        private static int[][] parentsOf(Node[] bayesNet) {
+                int[][] parents = new int[bayesNet.length][];
+                for (int i = 0; i < bayesNet.length; i++) parents[i] = bayesNet[i].parents;
+                return parents;
+        }
+}
@@ -0,0 +1,493 @@
+/* ****************************************************************************************************************** *
+ * Name:        CompiledScorer.java
+ * Description: Table-driven scoring kernels compiled from a trained bayesian network for a fixed data layout.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Scores the log odds of a query variable directly from a row of data decoded by {@link CsvTokenizer CsvTokenizer},
+ * using kernels compiled from a trained network once its structure and the column layout of the data are fixed.
+ * <p>
+ * The log odds of a query Q is a sum over the factors in its {@link MarkovBlanket markov blanket}. For Q's own factor
+ * the term is log P(Q = true | PARENTS(Q)) - log P(Q = false | PARENTS(Q)), and for each child C the term is
+ * log P(C = c | .., Q = true, ..) - log P(C = c | .., Q = false, ..). Every term therefore depends only on the values
+ * of the other variables in the factor, so the kernel for Q precomputes each term into a table indexed by those values.
+ * Scoring a row is then one table lookup per factor, where the index is built from row cells whose columns have been
+ * resolved at compile time:
+ * <pre>
+ *      for each factor f:  logOdds += delta[base[f] + index(row[cols[colOff[f]]], ..., row[cols[colOff[f + 1] - 1]])]
+ * </pre>
+ * No model of the variables is built, no parent indices are followed and no probabilities are calculated per row.
+ * <p>
+ * Factors whose node's CPT is not dense, or which are indexed by more than {@link CPTKind#MAX_DENSE_PARENTS
+ * MAX_DENSE_PARENTS} variables, are too large to tabulate. Their index is built the same way, as a long, and their
+ * term is calculated from the node's probabilities for each row.
+ * <p>
+ * A term is +/-Infinity when the factor is 0 for one value of the query, and NaN when it is 0 for both, so NaN log
+ * odds mean both exact event probabilities are 0. Like {@link LogTable#logOdds(int, boolean[]) LogTable}, the scorer
+ * {@link LogTable#resolveTie(double) resolves} them to a tie before returning them. When the LogTable is built with
+ * exact ties, each kernel also checks the factors of the query's {@link LogTable#guards(int) guards}, the nodes outside
+ * the blanket which are certain for some configuration of their parents, and a row in which one of them is 0 is a tie
+ * too. Otherwise a kernel reads only the blanket.
+ * <p>
+ * Scoring can be skipped for rows which repeat evidence by giving the scorer a {@link ResultCache ResultCache}. The
+ * log odds of a query depends only on which of the columns read by its kernel are true, so a kernel keys its results
+ * by the query followed by those columns packed one bit each, and rows which repeat a pattern are answered from the
+ * cache. This saves the per-row calculations of factors which are not tabulated, and the lookups of kernels with
+ * several factors or guards. A kernel with a single tabulated factor and no guard costs one lookup, so it does not
+ * use the cache.
+ * <p>
+ * Kernels are compiled lazily, the first time each query node is scored, and are immutable, so a CompiledScorer is safe
+ * to use from multiple threads.
+ *
+ * @see LogTable
+ */
+public class CompiledScorer {
+        /* Package Private members */
+        static final int SLICED_BITS = 4;       // Widest factor scored a word at a time over every index value
+
+        /* Private members */
+        private CPTable cpt;                    // CPTs of bayesian network
+        private LogTable logTable;              // Log-space CPTs of bayesian network
+        private MarkovBlanket blanket;          // Markov blankets of nodes in network
+        private int[] netToFile;                // Row column of each node in network
+        private AtomicReferenceArray<Kernel> kernels;   // Compiled kernel of each query node, or null
+        private ResultCache cache;              // Log odds of kernels with untabulated factors by signature, or null
+        private ThreadLocal<Scratch> scratch;   // Buffers of each thread scoring rows with the cache
+
+        /**
+         * Constructor.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param logTable Log-space CPTs of the network.
+         * @param blanket Markov blankets of nodes in the network.
+         * @param netToFile Row column of each node in network.
+         */
+        public CompiledScorer(CPTable cpt, LogTable logTable, MarkovBlanket blanket, int[] netToFile) {
+                this(cpt, logTable, blanket, netToFile, null);
+        }
+
+        /**
+         * Constructor for a scorer which caches log odds by the evidence read by the kernel of each query.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param logTable Log-space CPTs of the network.
+         * @param blanket Markov blankets of nodes in the network.
+         * @param netToFile Row column of each node in network.
+         * @param cache Cache of log odds, which may be shared by scorers of the same network and layout, or null.
+         */
+        public CompiledScorer(CPTable cpt, LogTable logTable, MarkovBlanket blanket, int[] netToFile,
+                              ResultCache cache) {
+                this.cpt = cpt;
+                this.logTable = logTable;
+                this.blanket = blanket;
+                this.netToFile = netToFile;
+                this.kernels = new AtomicReferenceArray<Kernel>(cpt.size());
+                this.cache = cache;
+                this.scratch = ThreadLocal.withInitial(Scratch::new);
+        }
+
+        /**
+         * Calculates log(P(query = true, rest) / P(query = false, rest)) for a row in which every variable in the
+         * query's markov blanket is known. The value of the query in the row is ignored.
+         *
+         * @param query Index of query node in network.
+         * @param row Cells of a row of data, as decoded by CsvTokenizer.
+         * @return Log odds of the query being true, or 0 if both of its exact event probabilities are 0.
+         */
+        public double logOdds(int query, byte[] row) {
+                Kernel k = getKernel(query);
+                if (k.sigCols == null) return score(k, row);
+
+                Scratch s = scratch.get();
+                if (s.key.length < k.sigLen) s.key = new long[k.sigLen];
+                k.signature(row, s.key);
+                if (cache.get(s.key, 0, k.sigLen, s.logOdds, 0)) return s.logOdds[0];
+                double logOdds = score(k, row);
+                cache.put(s.key, 0, k.sigLen, logOdds);
+                return logOdds;
+        }
+
+        /** Scores a row with a kernel. */
+        private double score(Kernel k, byte[] row) {
+                double logOdds = 0;
+                int[] cols = k.cols;
+                int[] colOff = k.colOff;
+                for (int f = 0, n = k.base.length; f < n; f++) {
+                        if (k.node[f] >= 0) {
+                                long index = 0;
+                                for (int c = colOff[f], end = colOff[f + 1]; c < end; c++) {
+                                        index = (index << 1) | ((row[cols[c]] == CsvTokenizer.TRUE) ? 0 : 1);
+                                }
+                                logOdds += k.term(f, index);
+                                continue;
+                        }
+                        int index = 0;
+                        for (int c = colOff[f], end = colOff[f + 1]; c < end; c++) {
+                                index = (index << 1) | ((row[cols[c]] == CsvTokenizer.TRUE) ? 0 : 1);
+                        }
+                        logOdds += k.delta[k.base[f] + index];
+                }
+                for (int f = k.base.length, n = k.node.length; f < n; f++) {
+                        long index = 0;
+                        for (int c = colOff[f], end = colOff[f + 1]; c < end; c++) {
+                                index = (index << 1) | ((row[cols[c]] == CsvTokenizer.TRUE) ? 0 : 1);
+                        }
+                        if (k.zero(f, index)) return 0;
+                }
+                return LogTable.resolveTie(logOdds);
+        }
+
+        /**
+         * Calculates log(P(query = true, rest) / P(query = false, rest)) for every row of a block, where the block's
+         * columns are laid out as the rows this scorer was compiled for. Results are identical to scoring each row
+         * with {@link #logOdds(int, byte[]) logOdds}.
+         * <p>
+         * Factors indexed by at most {@link #SLICED_BITS SLICED_BITS} variables are scored 64 rows at a time: for each
+         * index value, the rows which take it are found by combining the columns of the factor's variables a word at
+         * a time, and its term is added to just those rows. Wider factors have the index of every row built up a
+         * column at a time, visiting only the true cells of each column, which is cheap for sparse data, then their
+         * terms are looked up row by row. Factors which are not tabulated have their index built the same way and
+         * their terms calculated row by row, except for rows whose log odds are found in the cache or which repeat
+         * the evidence of an earlier row of the block.
+         *
+         * @param query Index of query node in network.
+         * @param block Block of rows in which every variable in the query's markov blanket is known.
+         * @param out Buffer for the log odds of each row of the block, with length at least the size of the block.
+         */
+        public void logOdds(int query, RowBlock block, double[] out) {
+                Kernel k = getKernel(query);
+                if (k.sigCols == null) {
+                        score(k, block, out, null);
+                        return;
+                }
+
+                /* Look up the first row of each distinct key, then score only the misses */
+                int size = block.size(), len = k.sigLen, misses = 0, repeats = 0;
+                long[] keys = new long[size * len];
+                double[] cached = new double[size];
+                boolean[] hit = new boolean[size];
+                int[] first = new int[size];                    // First row of the block with each row's key
+                int[] slots = new int[Integer.highestOneBit(Math.max(1, size)) << 2];
+                Arrays.fill(slots, -1);
+                k.signatures(block, keys);
+                for (int r = 0; r < size; r++) {
+                        int s = ResultCache.hash(keys, r * len, len) & (slots.length - 1);
+                        while (slots[s] >= 0 && !sameKey(keys, slots[s] * len, r * len, len)) {
+                                s = (s + 1) & (slots.length - 1);
+                        }
+                        if (slots[s] >= 0) {
+                                first[r] = slots[s];
+                                hit[r] = true;
+                                repeats++;
+                                continue;
+                        }
+                        slots[s] = first[r] = r;
+                        hit[r] = cache.get(keys, r * len, len, cached, r);
+                        if (!hit[r]) misses++;
+                }
+                if (repeats > 0) cache.hits(repeats);
+                if (misses > 0) score(k, block, out, hit);
+                for (int r = 0; r < size; r++) {
+                        if (first[r] != r) out[r] = out[first[r]];
+                        else if (hit[r]) out[r] = cached[r];
+                        else cache.put(keys, r * len, len, out[r]);
+                }
+        }
+
+        /** Compares two keys of the same length in an array. */
+        private static boolean sameKey(long[] keys, int a, int b, int len) {
+                for (int i = 0; i < len; i++) if (keys[a + i] != keys[b + i]) return false;
+                return true;
+        }
+
+        /** Scores a block of rows with a kernel, calculating untabulated terms only for rows which were not hit. */
+        private void score(Kernel k, RowBlock block, double[] out, boolean[] hit) {
+                int size = block.size(), words = (size + 63) >>> 6;
+                long[] bits = block.bits;
+                int[] index = null;
+                long[] longIndex = null;
+                Arrays.fill(out, 0, size, 0);
+
+                for (int f = 0, n = k.base.length; f < n; f++) {
+                        int from = k.colOff[f], width = k.colOff[f + 1] - from, base = k.base[f];
+                        if (k.node[f] >= 0) {
+                                if (longIndex == null) longIndex = new long[size];
+                                index(k, f, block, longIndex);
+                                for (int r = 0; r < size; r++) {
+                                        if (hit == null || !hit[r]) out[r] += k.term(f, longIndex[r]);
+                                }
+                        } else if (width <= SLICED_BITS) {
+                                for (int w = 0; w < words; w++) {
+                                        long valid = (w < (size >>> 6)) ? -1L : (1L << size) - 1;
+                                        for (int i = 0; i < (1 << width); i++) {
+                                                /* Rows of this word whose index is i; a set index bit is false */
+                                                long rows = valid;
+                                                for (int j = 0; j < width; j++) {
+                                                        long col = bits[k.cols[from + j] * RowBlock.WORDS + w];
+                                                        rows &= ((i >>> (width - 1 - j)) & 1) != 0 ? ~col : col;
+                                                }
+                                                double d = k.delta[base + i];
+                                                for (; rows != 0; rows &= rows - 1) {
+                                                        out[(w << 6) + Long.numberOfTrailingZeros(rows)] += d;
+                                                }
+                                        }
+                                }
+                        } else {
+                                /* Start from every variable false, then clear the bits of true cells */
+                                if (index == null) index = new int[size];
+                                Arrays.fill(index, (1 << width) - 1);
+                                for (int j = 0; j < width; j++) {
+                                        int col = k.cols[from + j] * RowBlock.WORDS, bit = 1 << (width - 1 - j);
+                                        for (int w = 0; w < words; w++) {
+                                                for (long x = bits[col + w]; x != 0; x &= x - 1) {
+                                                        index[(w << 6) + Long.numberOfTrailingZeros(x)] ^= bit;
+                                                }
+                                        }
+                                }
+                                for (int r = 0; r < size; r++) out[r] += k.delta[base + index[r]];
+                        }
+                }
+
+                /* Both exact event probabilities of a row in which a guard is 0 are 0, which resolves to a tie */
+                for (int f = k.base.length, n = k.node.length; f < n; f++) {
+                        if (longIndex == null) longIndex = new long[size];
+                        index(k, f, block, longIndex);
+                        for (int r = 0; r < size; r++) {
+                                if ((hit == null || !hit[r]) && k.zero(f, longIndex[r])) out[r] = Double.NaN;
+                        }
+                }
+                for (int r = 0; r < size; r++) out[r] = LogTable.resolveTie(out[r]);
+        }
+
+        /**
+         * Builds the index of a factor or guard for every row of a block, as a long. Starts from every variable false,
+         * then clears the bits of true cells, visiting only the true cells of each column.
+         */
+        private static void index(Kernel k, int f, RowBlock block, long[] index) {
+                int size = block.size(), words = (size + 63) >>> 6;
+                int from = k.colOff[f], width = k.colOff[f + 1] - from;
+                Arrays.fill(index, 0, size, (width == 0) ? 0 : -1L >>> (64 - width));     // Shift by 64 is no shift
+                for (int j = 0; j < width; j++) {
+                        int col = k.cols[from + j] * RowBlock.WORDS;
+                        long bit = 1L << (width - 1 - j);
+                        for (int w = 0; w < words; w++) {
+                                for (long x = block.bits[col + w]; x != 0; x &= x - 1) {
+                                        index[(w << 6) + Long.numberOfTrailingZeros(x)] ^= bit;
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Gets the kernel of a query node, compiling it if necessary.
+         *
+         * @param query Index of query node in network.
+         * @return Kernel of query node.
+         */
+        private Kernel getKernel(int query) {
+                Kernel k = kernels.get(query);
+                if (k == null) {
+                        k = new Kernel(query);
+                        if (!kernels.compareAndSet(query, null, k)) k = kernels.get(query);
+                }
+                return k;
+        }
+
+        /** Buffers of a thread, grown to fit the longest key it has built. */
+        private static class Scratch {
+                long[] key = new long[0];               // Result key of the row being scored
+                double[] logOdds = new double[1];       // Log odds found in the result cache
+        }
+
+        /**
+         * Compiled kernel for one query node. Index bits use the same convention as CPTable: a variable which is false
+         * sets its bit, and the first variable is the most significant bit. The factors of the blanket are followed by
+         * the guards, which are indexed by their node's parents followed by its own value.
+         */
+        private class Kernel {
+                final int[] base;               // Start of each factor's terms in delta[]; its length is the factors
+                final int[] colOff;             // Start of each factor's or guard's columns in cols[], then the end
+                final int[] cols;               // Row column of each index bit of each factor and guard
+                final double[] delta;           // Log odds term of each factor for each index
+                final int[] node;               // Node of each guard and factor which is not tabulated, otherwise -1
+                final int[] qBit;               // Bit of query in key of each child factor which is not tabulated
+                final int[] sigCols;            // Distinct row columns of factors and guards if cached, or null
+                final int sigLen;               // Length of a result key: the query, then sigCols packed in longs
+                final int query;                // Index of query node in network
+
+                Kernel(int query) {
+                        int fStart = blanket.factorOff[query], fEnd = blanket.factorOff[query + 1];
+                        int[] guards = logTable.guards(query);
+                        int n = fEnd - fStart, m = guards.length;
+                        base = new int[n];
+                        colOff = new int[n + m + 1];
+                        node = new int[n + m];
+                        qBit = new int[n];
+                        this.query = query;
+
+                        /* Lay out columns and terms. Query's own factor is indexed by its parents; each child's factor
+                           by its parents other than the query followed by its own value.                          */
+                        int deltaSize = 0;
+                        for (int f = 0; f < n; f++) {
+                                int node = blanket.factorIdx[fStart + f];
+                                int pNum = cpt.parentOff[node + 1] - cpt.parentOff[node];
+                                colOff[f + 1] = colOff[f] + pNum;       // Child: less query, plus own value
+                                base[f] = deltaSize;
+                                if (cpt.getKind(node) != CPTKind.DENSE || pNum > CPTKind.MAX_DENSE_PARENTS) {
+                                        this.node[f] = node;
+                                } else {
+                                        this.node[f] = -1;
+                                        deltaSize += 1 << pNum;
+                                }
+                        }
+                        int g = n;
+                        for (int node : guards) {
+                                colOff[g + 1] = colOff[g] + cpt.parentOff[node + 1] - cpt.parentOff[node] + 1;
+                                this.node[g++] = node;
+                        }
+                        cols = new int[colOff[n + m]];
+                        delta = new double[deltaSize];
+
+                        /* Guards are indexed by the columns of their parents, then their own */
+                        for (g = n; g < n + m; g++) {
+                                int c = colOff[g];
+                                for (int j = cpt.parentOff[node[g]]; j < cpt.parentOff[node[g] + 1]; j++) {
+                                        cols[c++] = netToFile[cpt.parentIdx[j]];
+                                }
+                                cols[c] = netToFile[node[g]];
+                        }
+
+                        for (int f = 0; f < n; f++) {
+                                int node = blanket.factorIdx[fStart + f];
+                                int pFrom = cpt.parentOff[node], pTo = cpt.parentOff[node + 1];
+                                int c = colOff[f];
+                                if (f == 0) {
+                                        /* Query's own factor */
+                                        for (int j = pFrom; j < pTo; j++) cols[c++] = netToFile[cpt.parentIdx[j]];
+                                        if (this.node[f] >= 0) continue;
+                                        for (int i = 0; i < (1 << (pTo - pFrom)); i++) {
+                                                int entry = cpt.cptOff[node] + i;
+                                                delta[base[f] + i] = logTable.logTrue[entry] - logTable.logFalse[entry];
+                                        }
+                                        continue;
+                                }
+
+                                /* Child factor: find bit of query among parents */
+                                int pNum = pTo - pFrom, qBit = -1;
+                                for (int j = pFrom; j < pTo; j++) {
+                                        if (cpt.parentIdx[j] == query) qBit = pNum - 1 - (j - pFrom);
+                                        else cols[c++] = netToFile[cpt.parentIdx[j]];
+                                }
+                                cols[c] = netToFile[node];
+                                if (this.node[f] >= 0) {
+                                        this.qBit[f] = qBit;
+                                        continue;
+                                }
+                                for (int i = 0; i < (1 << (pNum - 1)); i++) {
+                                        /* Insert query bit into other parents' configuration */
+                                        int low = i & ((1 << qBit) - 1), high = (i >> qBit) << (qBit + 1);
+                                        int entryTrue = cpt.cptOff[node] + (high | low);
+                                        int entryFalse = entryTrue + (1 << qBit);
+                                        delta[base[f] + (i << 1)] = logTable.logTrue[entryTrue] -
+                                                                    logTable.logTrue[entryFalse];
+                                        delta[base[f] + (i << 1) + 1] = logTable.logFalse[entryTrue] -
+                                                                        logTable.logFalse[entryFalse];
+                                }
+                        }
+
+                        /* Results are cached unless scoring is a single lookup */
+                        if (cache == null || (n + m == 1 && this.node[0] < 0)) {
+                                sigCols = null;
+                                sigLen = 0;
+                                return;
+                        }
+                        int[] distinct = new int[cols.length];
+                        int d = 0;
+                        for (int c : cols) {
+                                boolean seen = false;
+                                for (int i = 0; i < d && !seen; i++) seen = (distinct[i] == c);
+                                if (!seen) distinct[d++] = c;
+                        }
+                        sigCols = Arrays.copyOf(distinct, d);
+                        sigLen = 1 + ((d + 63) >>> 6);
+                }
+
+                /**
+                 * Builds the result key of a row: the query, then whether each column of sigCols is true, packed into
+                 * longs.
+                 *
+                 * @param row Cells of a row of data, as decoded by CsvTokenizer.
+                 * @param key Buffer of length at least sigLen for the key.
+                 */
+                void signature(byte[] row, long[] key) {
+                        Arrays.fill(key, 0, sigLen, 0);
+                        key[0] = query;
+                        for (int j = 0; j < sigCols.length; j++) {
+                                if (row[sigCols[j]] == CsvTokenizer.TRUE) key[1 + (j >>> 6)] |= 1L << j;
+                        }
+                }
+
+                /**
+                 * Builds the result keys of every row of a block, one after another, visiting only the true cells of
+                 * each column.
+                 *
+                 * @param block Block of rows.
+                 * @param keys Buffer of length sigLen times the size of the block, filled with zeros, for the keys.
+                 */
+                void signatures(RowBlock block, long[] keys) {
+                        int size = block.size(), words = (size + 63) >>> 6;
+                        for (int r = 0; r < size; r++) keys[r * sigLen] = query;
+                        for (int j = 0; j < sigCols.length; j++) {
+                                int col = sigCols[j] * RowBlock.WORDS, word = 1 + (j >>> 6);
+                                long bit = 1L << j;
+                                for (int w = 0; w < words; w++) {
+                                        for (long x = block.bits[col + w]; x != 0; x &= x - 1) {
+                                                keys[((w << 6) + Long.numberOfTrailingZeros(x)) * sigLen + word] |= bit;
+                                        }
+                                }
+                        }
+                }
+
+                /**
+                 * Checks whether the factor of a guard is 0.
+                 *
+                 * @param f Index of guard in kernel.
+                 * @param index Index of guard's parents followed by its own value.
+                 * @return True if P(node = value | PARENTS(node)) is 0.
+                 */
+                boolean zero(int f, long index) {
+                        double prob = cpt.getTrueProb(node[f], index >>> 1);
+                        return prob == (((index & 1) == 0) ? 0 : 1);
+                }
+
+                /**
+                 * Calculates the log odds term of a factor which is not tabulated.
+                 *
+                 * @param f Index of factor in kernel.
+                 * @param index Index of factor's variables, laid out as in a tabulated factor.
+                 * @return Log odds term.
+                 */
+                double term(int f, long index) {
+                        if (f == 0) {
+                                double prob = cpt.getTrueProb(node[f], index);
+                                return Math.log(prob) - Math.log1p(-prob);
+                        }
+
+                        /* Insert query bit into other parents' configuration */
+                        long other = index >>> 1, low = other & ((1L << qBit[f]) - 1);
+                        long keyTrue = ((other >>> qBit[f]) << (qBit[f] + 1)) | low;
+                        double probTrue = cpt.getTrueProb(node[f], keyTrue);
+                        double probFalse = cpt.getTrueProb(node[f], keyTrue | (1L << qBit[f]));
+                        if ((index & 1) == 0) return Math.log(probTrue) - Math.log(probFalse);
+                        return Math.log1p(-probTrue) - Math.log1p(-probFalse);
+                }
+        }
+}
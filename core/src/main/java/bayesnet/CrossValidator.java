@@ -0,0 +1,351 @@
+/* ****************************************************************************************************************** *
+ * Name:        CrossValidator.java
+ * Description: Measures the quality of a bayesian network's predictions by k-fold cross-validation.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Evaluates how well a network structure predicts a class variable by k-fold cross-validation on a labelled events
+ * file, without training the network once per fold.
+ * <p>
+ * Each line of the events file is assigned to a fold by a hash of its offset in the file, so folds are spread through
+ * the file whatever order it is in, and do not depend on the number of threads. The events file is read once, in
+ * parallel byte ranges as by {@link BayesNetEstimate BayesNetEstimate}, counting each fold into its own
+ * {@link CPTable CPTable} and keeping its lines as {@link RowBlock RowBlocks} of the network's variables, at one bit
+ * per cell. The table trained on every fold but one is then the sum of all the fold tables less that fold's, and each
+ * held out fold is scored against its table with the block path of a {@link CompiledScorer CompiledScorer}. Folds
+ * are scored in parallel.
+ * <p>
+ * Since the fold tables keep raw counts, each held out fold can be scored under several kinds of {@link Smoothing
+ * smoothing} by {@link CPTable#freeze(Smoothing) freezing} its table under each in turn, from the same single read.
+ * <p>
+ * Each thread counting the events file holds one table per fold, and the lines of every fold are held in memory
+ * until they are scored.
+ *
+ * @see Evaluation
+ */
+public class CrossValidator {
+        /* Private members */
+        private BayesNetEstimate bNetEst;       // Reads structure of network
+        private File eventsFile;                // Labelled data to cross-validate on
+        private String className;               // Name of class variable
+        private int folds;                      // Number of folds
+        private int threads;                    // Number of threads used to count and score
+        private Metrics metrics;                // Timings of phases and counts of lines
+        private CPTable structure;              // Empty CPTs with structure of network
+        private int query;                      // Index of class variable in network
+        private Schema schema;                  // Binding of events file header to network
+
+        /**
+         * Constructor
+         *
+         * @param netFileName Name of file containing structure of bayesian network.
+         * @param eventsFileName Name of file containing labelled data.
+         * @param className Name of class variable, the node which is predicted.
+         * @param folds Number of folds, at least 2.
+         * @param threads Number of threads to use to count and score the data.
+         */
+        public CrossValidator(String netFileName, String eventsFileName, String className, int folds, int threads)
+                        throws FileNotFoundException {
+                if (folds < 2) throw new IllegalArgumentException("Number of folds must be at least 2");
+                bNetEst = new BayesNetEstimate(netFileName, eventsFileName, threads);
+                eventsFile = new File(eventsFileName);
+                this.className = className;
+                this.folds = folds;
+                this.threads = threads;
+                setMetrics(new Metrics());
+        }
+
+        /**
+         * Gets the metrics recorded while cross-validating.
+         *
+         * @return Metrics.
+         */
+        public Metrics getMetrics() {
+                return metrics;
+        }
+
+        /**
+         * Records metrics into the given Metrics instead of this object's own, so they can be shared.
+         *
+         * @param metrics Metrics to record into.
+         */
+        public void setMetrics(Metrics metrics) {
+                this.metrics = metrics;
+                bNetEst.setMetrics(metrics);
+        }
+
+        /**
+         * Cross-validates the network on the events file, with the 1/1 initialisation of counts.
+         *
+         * @return Evaluation of each held out fold.
+         */
+        public Evaluation[] evaluate() throws IOException {
+                return evaluate(new Smoothing[] {Smoothing.DEFAULT})[0];
+        }
+
+        /**
+         * Cross-validates the network on the events file under each of several smoothings, reading it once.
+         *
+         * @param smoothings Smoothings to evaluate.
+         * @return Evaluation of each held out fold under each smoothing, indexed by smoothing then fold.
+         */
+        public Evaluation[][] evaluate(final Smoothing[] smoothings) throws IOException {
+                structure = bNetEst.readStructure();
+
+                /* Count folds */
+                long start = System.nanoTime();
+                long dataStart = bind();
+                long[] bounds = BayesNetEstimate.lineBounds(eventsFile, dataStart, threads);
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                try {
+                        List<Future<Fold[]>> counted = new ArrayList<Future<Fold[]>>();
+                        for (int i = 0; i < threads; i++) {
+                                final long from = bounds[i], to = bounds[i + 1];
+                                counted.add(pool.submit(new Callable<Fold[]>() {
+                                        public Fold[] call() throws IOException {
+                                                return countChunk(from, to);
+                                        }
+                                }));
+                        }
+                        final Fold[] fold = counted.get(0).get();
+                        for (int i = 1; i < counted.size(); i++) {
+                                Fold[] f = counted.get(i).get();
+                                for (int k = 0; k < folds; k++) fold[k].add(f[k]);
+                        }
+                        final CPTable total = new CPTable(structure);
+                        for (int k = 0; k < folds; k++) total.add(fold[k].counts);
+                        metrics.phase(Metrics.TRAIN, start);
+
+                        /* Score each fold against the counts of every other fold */
+                        start = System.nanoTime();
+                        List<Future<Evaluation[]>> scored = new ArrayList<Future<Evaluation[]>>();
+                        for (int k = 0; k < folds; k++) {
+                                final int held = k;
+                                scored.add(pool.submit(new Callable<Evaluation[]>() {
+                                        public Evaluation[] call() {
+                                                Evaluation[] e = score(total, fold[held], smoothings);
+                                                fold[held] = null;      // Release lines once scored
+                                                return e;
+                                        }
+                                }));
+                        }
+                        Evaluation[][] result = new Evaluation[smoothings.length][folds];
+                        for (int k = 0; k < folds; k++) {
+                                Evaluation[] e = scored.get(k).get();
+                                for (int i = 0; i < smoothings.length; i++) result[i][k] = e[i];
+                        }
+                        metrics.phase(Metrics.EVALUATE, start);
+                        return result;
+                } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while cross-validating");
+                } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                        throw new IOException("Error cross-validating", e.getCause());
+                } finally {
+                        pool.shutdownNow();
+                }
+        }
+
+        /**
+         * Reads the header of the events file and binds it to the network.
+         *
+         * @return Offset of the first line of data.
+         */
+        private long bind() throws IOException {
+                CsvTokenizer tok = new CsvTokenizer(eventsFile);
+                try {
+                        String[] vars = tok.readHeader();
+                        if (vars == null) throw new IOException(eventsFile + " is empty");
+                        schema = new Schema(structure, vars, eventsFile.toString());
+                        query = -1;
+                        for (int i = 0; i < structure.size(); i++) {
+                                if (structure.getName(i).equals(className)) query = i;
+                        }
+                        if (query < 0) throw new IOException("Class variable " + className + " is not in the network");
+                        return tok.position();
+                } finally {
+                        tok.close();
+                }
+        }
+
+        /**
+         * Counts the lines in a byte range of the events file into their folds.
+         *
+         * @param from Offset of the first byte of the range, which must be the start of a line.
+         * @param to Offset one past the last byte of the range, which must be the end of a line or the file.
+         * @return Counts and lines of each fold in the range.
+         */
+        private Fold[] countChunk(long from, long to) throws IOException {
+                Fold[] fold = new Fold[folds];
+                for (int k = 0; k < folds; k++) fold[k] = new Fold(new CPTable(structure));
+                byte[] row = new byte[structure.size()];
+                boolean[] values = new boolean[structure.size()];
+                long rows = 0;
+                CsvTokenizer tok = new CsvTokenizer(eventsFile, from, to);
+                try {
+                        schema.project(tok);
+                        for (long offset = tok.position(); tok.next(row); offset = tok.position()) {
+                                for (int i = 0; i < values.length; i++) values[i] = (row[i] == CsvTokenizer.TRUE);
+                                Fold f = fold[foldOf(offset)];
+                                f.counts.update(values);
+                                f.add(row);
+                                rows++;
+                        }
+                } finally {
+                        tok.close();
+                }
+                metrics.trained(rows);
+                return fold;
+        }
+
+        /**
+         * Scores the lines of a fold with the network trained on every other fold, under each smoothing.
+         *
+         * @param total Counts of every fold.
+         * @param held Fold to score.
+         * @param smoothings Smoothings to score under.
+         * @return Evaluation of fold under each smoothing.
+         */
+        private Evaluation[] score(CPTable total, Fold held, Smoothing[] smoothings) {
+                CPTable cpt = total.copy();
+                cpt.subtract(held.counts);
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                int[] identity = new int[cpt.size()];
+                for (int i = 0; i < identity.length; i++) identity[i] = i;
+
+                Evaluation[] e = new Evaluation[smoothings.length];
+                double[] logOdds = new double[RowBlock.ROWS];
+                for (int i = 0; i < smoothings.length; i++) {
+                        cpt.freeze(smoothings[i]);
+                        CompiledScorer scorer = new CompiledScorer(cpt, new LogTable(cpt, blanket), blanket, identity);
+                        e[i] = new Evaluation();
+                        long positives = 0;
+                        for (RowBlock block : held.lines) {
+                                scorer.logOdds(query, block, logOdds);
+                                for (int r = 0; r < block.size(); r++) {
+                                        e[i].add(block.get(r, query), logOdds[r]);
+                                        if (logOdds[r] >= 0) positives++;
+                                }
+                        }
+                        metrics.classified(positives, e[i].getRows() - positives);
+                }
+                return e;
+        }
+
+        /** Gets the fold of the line at an offset in the events file. */
+        int foldOf(long offset) {
+                return (int)(((offset * 0x9E3779B97F4A7C15L) >>> 33) % folds);
+        }
+
+        /** The counts and lines of one fold of the events file. */
+        private class Fold {
+                final CPTable counts;                   // Counts of lines in fold
+                final List<RowBlock> lines;             // Lines in fold, as the values of each node
+
+                Fold(CPTable counts) {
+                        this.counts = counts;
+                        this.lines = new ArrayList<RowBlock>();
+                }
+
+                /** Adds a line to the fold, as the values of each node. */
+                void add(byte[] cells) {
+                        RowBlock last = lines.isEmpty() ? null : lines.get(lines.size() - 1);
+                        if (last == null || last.size() == RowBlock.ROWS) {
+                                last = new RowBlock(cells.length);
+                                lines.add(last);
+                        }
+                        last.add(cells);
+                }
+
+                /** Adds the counts and lines of the same fold in another byte range. */
+                void add(Fold f) {
+                        counts.add(f.counts);
+                        lines.addAll(f.lines);
+                }
+        }
+
+        /**
+         * Gets a network file and labelled events file from command line args, cross-validates the network and prints
+         * the evaluation of every fold and of all folds together.
+         */
+        public static void main(String[] args) throws FileNotFoundException, IOException {
+                /* Parse options */
+                int threads = 1, folds = 10, arg = 0;
+                String className = "spam", json = null;
+                Smoothing[] smoothings = {Smoothing.DEFAULT};
+                try {
+                        while (arg < args.length && args[arg].startsWith("-")) {
+                                if (arg + 1 >= args.length) throw new IllegalArgumentException("Missing value for " +
+                                                                                               args[arg]);
+                                if (args[arg].equals("-t")) threads = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-k")) folds = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-c")) className = args[arg + 1];
+                                else if (args[arg].equals("-j")) json = args[arg + 1];
+                                else if (args[arg].equals("-s")) {
+                                        String[] labels = args[arg + 1].split(",");
+                                        smoothings = new Smoothing[labels.length];
+                                        for (int i = 0; i < labels.length; i++) {
+                                                smoothings[i] = Smoothing.parse(labels[i]);
+                                        }
+                                }
+                                else throw new IllegalArgumentException("Unknown option " + args[arg]);
+                                arg += 2;
+                        }
+                        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                        if (folds < 2) throw new IllegalArgumentException("Number of folds must be at least 2");
+                } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* If wrong arg num print usage and exit */
+                if (args.length - arg != 2) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* Cross-validate and print evaluations */
+                CrossValidator cv = new CrossValidator(args[arg], args[arg + 1], className, folds, threads);
+                cv.getMetrics().register("CrossValidator");
+                Evaluation[][] result = cv.evaluate(smoothings);
+                for (int i = 0; i < smoothings.length; i++) {
+                        if (i > 0) System.out.println();
+                        System.out.println("Smoothing: " + smoothings[i]);
+                        Evaluation all = new Evaluation();
+                        for (int k = 0; k < result[i].length; k++) {
+                                Evaluation e = result[i][k];
+                                System.out.println(String.format("Fold %d: rows %d, accuracy %.6f, log-loss %.6f", k,
+                                                                 e.getRows(), e.getAccuracy(), e.getLogLoss()));
+                                all.add(e);
+                        }
+                        System.out.println();
+                        System.out.print(all);
+                }
+                if (json != null) cv.getMetrics().writeJson(new File(json));
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.out). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: CrossValidator [-k folds] [-c class] [-s smoothings] [-t threads] " +
+                                                        "[-j metrics file] [network file] [events file]\n" +
+                          "             folds        - Number of folds (default 10)\n" +
+                          "             class        - The variable which is predicted (default spam)\n" +
+                          "             smoothings   - Comma separated list of fraction, laplace, lidstone:alpha or " +
+                                                      "dirichlet:ess, each evaluated (default fraction)\n" +
+                          "             threads      - Number of threads used to count and score (default 1)\n" +
+                          "             metrics file - The file to write a JSON summary of timings and counts to\n" +
+                          "             network file - The file which contains the structure of the bayesian network\n"+
+                          "             events file  - The file which contains the labelled data to cross-validate on");
+        }
+}
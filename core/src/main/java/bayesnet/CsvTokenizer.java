@@ -0,0 +1,328 @@
+/* ****************************************************************************************************************** *
+ * Name:        CsvTokenizer.java
+ * Description: Memory-mapped tokenizer for CSV files of 0/1 data.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Tokenizer for the events and test data files which reads the bytes of the file directly, without decoding lines
+ * into Strings.
+ * <p>
+ * The file is memory-mapped with {@link FileChannel#map FileChannel.map} in windows of at most {@link #WINDOW WINDOW}
+ * bytes, so files larger than 2GB are read by remapping the window at the start of the first line which does not fit.
+ * Each line is scanned once for commas and its cells decoded straight into a byte array row buffer as one of:
+ * <ul>
+ *      <li>{@link #TRUE TRUE}    - the cell is "1",</li>
+ *      <li>{@link #UNKNOWN UNKNOWN} - the cell is "?",</li>
+ *      <li>{@link #FALSE FALSE}   - the cell is anything else.</li>
+ * </ul>
+ * <p>
+ * Lines may end with "\n" or "\r\n", and the last line need not end with a newline. Blank lines are skipped.
+ * <p>
+ * A tokenizer may be given a {@link #setProjection(int[]) projection}, which decodes only some columns, each into a
+ * chosen slot of the row buffer, e.g. the columns of a bayesian network's nodes into network order as bound by a
+ * {@link Schema Schema}. Other columns are passed over without being decoded, and the rest of the line is not split
+ * into cells once the last projected column has been decoded.
+ * <p>
+ * A tokenizer may be restricted to a byte range of the file, which must start at the start of a line, so several
+ * tokenizers can read the same file in parallel. A tokenizer may also read data already in memory, such as the body
+ * of a request, in which case the buffer is the one and only window.
+ */
+public class CsvTokenizer implements Closeable {
+        /* Public members */
+        /** Cell value for anything other than "1" or "?" */
+        public static final byte FALSE = 0;
+        /** Cell value for "1" */
+        public static final byte TRUE = 1;
+        /** Cell value for "?" */
+        public static final byte UNKNOWN = 2;
+
+        /* Package Private members */
+        static final int WINDOW = 1 << 30;      // Maximum number of bytes mapped at once; also the maximum line length
+
+        /* Private members */
+        private FileChannel channel;            // Channel of file being read, or null if reading a buffer
+        private int window;                     // Maximum number of bytes mapped at once
+        private long size;                      // Size of file
+        private long end;                       // Offset one past the last byte of the range being read
+        private ByteBuffer buf;                 // Currently mapped window of the file
+        private long base;                      // Offset in file of start of window
+        private int limit;                      // Number of bytes in window
+        private int pos;                        // Position in window of next line
+        private int lineStart;                  // Position in window of start of current line
+        private int lineEnd;                    // Position in window of end of current line, excluding the newline
+        private int unknown;                    // Column of last unknown cell in current line, or -1
+        private int unknowns;                   // Number of unknown cells in current line
+        private int unknownAt;                  // Position in current line of last unknown cell, or -1
+        private int[] projection;               // Row buffer slot of each column, or -1 to skip it; null for all
+        private int lastProjected;              // Last column with a slot in projection
+
+        /**
+         * Constructor. Tokenizes the whole file.
+         *
+         * @param file File to tokenize.
+         */
+        public CsvTokenizer(File file) throws IOException {
+                this(file, 0, Long.MAX_VALUE);
+        }
+
+        /**
+         * Constructor. Tokenizes a byte range of the file.
+         *
+         * @param file File to tokenize.
+         * @param from Offset of the start of the range, which must be the start of a line.
+         * @param to Offset one past the end of the range, which must be the end of a line or past the end of the file.
+         */
+        public CsvTokenizer(File file, long from, long to) throws IOException {
+                this(file, from, to, WINDOW);
+        }
+
+        /**
+         * Constructor. Tokenizes a byte range of the file, mapping smaller windows than usual.
+         *
+         * @param file File to tokenize.
+         * @param from Offset of the start of the range, which must be the start of a line.
+         * @param to Offset one past the end of the range, which must be the end of a line or past the end of the file.
+         * @param window Maximum number of bytes mapped at once, at most {@link #WINDOW WINDOW}.
+         */
+        CsvTokenizer(File file, long from, long to, int window) throws IOException {
+                this.window = window;
+                channel = new RandomAccessFile(file, "r").getChannel();
+                size = channel.size();
+                seek(from, to);
+        }
+
+        /**
+         * Constructor. Tokenizes data in memory, from the buffer's position to its limit.
+         *
+         * @param data Data to tokenize, which is not copied and must not be modified while it is being read.
+         */
+        public CsvTokenizer(ByteBuffer data) {
+                buf = data.slice();
+                size = end = limit = window = buf.limit();
+        }
+
+        /**
+         * Moves the tokenizer to a new byte range of the file. The current window is kept if the start of the range
+         * is in it.
+         *
+         * @param from Offset of the start of the range, which must be the start of a line.
+         * @param to Offset one past the end of the range, which must be the end of a line or past the end of the file.
+         */
+        public void seek(long from, long to) throws IOException {
+                end = Math.min(to, size);
+                if (buf != null && from >= base && from < base + limit) pos = (int)(from - base);
+                else map(from);
+        }
+
+        /**
+         * Gets the offset in the file of the next line to be read.
+         *
+         * @return Offset of next line.
+         */
+        public long position() {
+                return base + pos;
+        }
+
+        /**
+         * Decodes only some columns of each line read by {@link #next(byte[]) next}, each into a given slot of the
+         * row buffer. Unknown cells are only looked for in projected columns, and lines need only have cells up to the
+         * last projected column.
+         *
+         * @param slots Slot in the row buffer of each column, or -1 for a column which is skipped; columns beyond the
+         *              length of the array are skipped. Null to decode every column into the slot of the same index.
+         */
+        public void setProjection(int[] slots) {
+                projection = slots;
+                lastProjected = -1;
+                if (slots != null) for (int c = 0; c < slots.length; c++) if (slots[c] >= 0) lastProjected = c;
+        }
+
+        /**
+         * Reads the next line as a header, decoding it into Strings.
+         *
+         * @return Cells of header line, or null if there are no more lines.
+         */
+        public String[] readHeader() throws IOException {
+                if (!nextLine()) return null;
+                byte[] line = new byte[lineLength()];
+                getLine(line);
+                return new String(line).split(",");
+        }
+
+        /**
+         * Reads the next line and decodes its cells into a row buffer, or only its projected cells if the tokenizer has
+         * a {@link #setProjection(int[]) projection}. Cells beyond the length of the row buffer are ignored.
+         *
+         * @param row Row buffer, with one entry per column, or per slot of the projection.
+         * @return True if a line was read, false if there are no more lines.
+         * @throws IOException If the line has fewer cells than the row buffer, or than the last projected column.
+         */
+        public boolean next(byte[] row) throws IOException {
+                if (!nextLine()) return false;
+
+                /* Decode cells */
+                int col = 0, start = lineStart, len, slot;
+                byte b, v;
+                unknown = -1;
+                unknowns = 0;
+                unknownAt = -1;
+                for (int p = lineStart; p <= lineEnd; p++) {
+                        if (p < lineEnd && buf.get(p) != ',') continue;
+
+                        /* End of cell */
+                        slot = (projection == null) ? col : ((col < projection.length) ? projection[col] : -1);
+                        if (slot >= 0) {
+                                len = p - start;
+                                v = FALSE;
+                                if (len == 1) {
+                                        b = buf.get(start);
+                                        if (b == '1') v = TRUE;
+                                        else if (b == '?') v = UNKNOWN;
+                                }
+                                if (v == UNKNOWN) {
+                                        unknown = slot;
+                                        unknowns++;
+                                        unknownAt = start - lineStart;
+                                }
+                                if (slot < row.length) row[slot] = v;
+                        }
+                        col++;
+                        start = p + 1;
+                        if (projection != null && col > lastProjected) break;   // Rest of line is not projected
+                }
+                int expected = (projection == null) ? row.length : lastProjected + 1;
+                if (col < expected) {
+                        throw new IOException("Line at offset " + (base + lineStart) + " has " + col + " cells, " +
+                                              "expected " + expected);
+                }
+
+                return true;
+        }
+
+        /**
+         * Skips lines without decoding them.
+         *
+         * @param n Number of lines to skip.
+         * @return Number of lines skipped, which is less than n if the end of the range was reached.
+         */
+        public int skip(int n) throws IOException {
+                int i = 0;
+                while (i < n && nextLine()) i++;
+                return i;
+        }
+
+        /**
+         * Gets the column of the last unknown cell in the line last read by {@link #next(byte[]) next}, or its slot in
+         * the row buffer if the tokenizer has a projection.
+         *
+         * @return Column or slot of last unknown cell, or -1 if there are none.
+         */
+        public int lastUnknown() {
+                return unknown;
+        }
+
+        /**
+         * Gets the position of the last unknown cell in the line last read by {@link #next(byte[]) next}, i.e. the
+         * offset of its "?" from the start of the line.
+         *
+         * @return Offset of last unknown cell in line, or -1 if there are none.
+         */
+        public int lastUnknownOffset() {
+                return unknownAt;
+        }
+
+        /**
+         * Gets the number of unknown cells in the line last read by {@link #next(byte[]) next}, including cells beyond
+         * the length of the row buffer, but only of projected columns if the tokenizer has a projection.
+         *
+         * @return Number of unknown cells.
+         */
+        public int unknownCount() {
+                return unknowns;
+        }
+
+        /**
+         * Gets the length in bytes of the current line, excluding its newline.
+         *
+         * @return Length of current line.
+         */
+        public int lineLength() {
+                return lineEnd - lineStart;
+        }
+
+        /**
+         * Copies the bytes of the current line, excluding its newline, into a buffer.
+         *
+         * @param dst Buffer of at least {@link #lineLength() lineLength()} bytes.
+         */
+        public void getLine(byte[] dst) {
+                getLine(dst, 0);
+        }
+
+        /**
+         * Copies the bytes of the current line, excluding its newline, into a buffer at an offset.
+         *
+         * @param dst Buffer with at least {@link #lineLength() lineLength()} bytes after off.
+         * @param off Offset in dst to copy the line to.
+         */
+        public void getLine(byte[] dst, int off) {
+                buf.get(lineStart, dst, off, lineEnd - lineStart);
+        }
+
+        /** Closes the file. */
+        public void close() throws IOException {
+                buf = null;
+                if (channel != null) channel.close();
+        }
+
+        /**
+         * Finds the next non-blank line in the range, remapping the window if the line does not fit in it, and sets
+         * lineStart and lineEnd to it.
+         *
+         * @return True if there is another line, false if the end of the range has been reached.
+         */
+        private boolean nextLine() throws IOException {
+                while (true) {
+                        if (base + pos >= end) return false;
+
+                        /* Find newline */
+                        int stop = (int)Math.min(limit, end - base);
+                        int p = pos;
+                        while (p < stop && buf.get(p) != '\n') p++;
+                        if (p == stop && base + stop < end) {
+                                /* Line runs past end of window */
+                                if (pos == 0) throw new IOException("Line at offset " + base + " is longer than " +
+                                                                    window + " bytes");
+                                map(base + pos);
+                                continue;
+                        }
+
+                        lineStart = pos;
+                        lineEnd = p;
+                        if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r') lineEnd--;
+                        pos = Math.min(p + 1, stop);
+                        if (lineEnd > lineStart) return true;
+                }
+        }
+
+        /**
+         * Maps a window of the file starting at an offset.
+         *
+         * @param offset Offset of start of window.
+         */
+        private void map(long offset) throws IOException {
+                base = offset;
+                limit = (int)Math.max(0, Math.min(window, size - offset));
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, base, limit);
+                pos = 0;
+        }
+}
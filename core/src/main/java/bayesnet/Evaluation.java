@@ -0,0 +1,131 @@
+/* ****************************************************************************************************************** *
+ * Name:        Evaluation.java
+ * Description: Quality of the predictions of a classifier on labelled data.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * Accumulates the predictions of a binary classifier against the true labels: a confusion matrix, from which accuracy,
+ * precision and recall are derived, and the log-loss of the predicted probabilities.
+ * <p>
+ * A line is predicted true when the log odds of its label are at least 0, as by {@link BayesNetPredict
+ * BayesNetPredict}. For log-loss, probabilities are clipped to [{@link #EPSILON EPSILON}, 1 - EPSILON] so a single
+ * confident mistake does not make the loss infinite, and log odds which are not a number count as a probability of 0.5.
+ *
+ * @see CrossValidator
+ */
+public class Evaluation {
+        /** Smallest probability used for log-loss */
+        public static final double EPSILON = 1e-15;
+
+        /* Private members */
+        private long truePos;                   // Lines labelled true and predicted true
+        private long falsePos;                  // Lines labelled false and predicted true
+        private long trueNeg;                   // Lines labelled false and predicted false
+        private long falseNeg;                  // Lines labelled true and predicted false
+        private double loss;                    // Sum of log-loss of every line
+
+        /**
+         * Adds a prediction.
+         *
+         * @param label True label of line.
+         * @param logOdds Predicted log odds of the label being true.
+         */
+        public void add(boolean label, double logOdds) {
+                boolean predicted = logOdds >= 0;
+                if (label) {
+                        if (predicted) truePos++;
+                        else falseNeg++;
+                } else {
+                        if (predicted) falsePos++;
+                        else trueNeg++;
+                }
+                double p = Double.isNaN(logOdds) ? 0.5 : LogTable.posterior(logOdds);
+                p = Math.min(1 - EPSILON, Math.max(EPSILON, label ? p : 1 - p));
+                loss -= Math.log(p);
+        }
+
+        /**
+         * Adds every prediction of another evaluation.
+         *
+         * @param e Evaluation to add.
+         */
+        public void add(Evaluation e) {
+                truePos += e.truePos;
+                falsePos += e.falsePos;
+                trueNeg += e.trueNeg;
+                falseNeg += e.falseNeg;
+                loss += e.loss;
+        }
+
+        /** @return Number of lines evaluated. */
+        public long getRows() {
+                return truePos + falsePos + trueNeg + falseNeg;
+        }
+
+        /** @return Number of lines labelled true and predicted true. */
+        public long getTruePositives() {
+                return truePos;
+        }
+
+        /** @return Number of lines labelled false and predicted true. */
+        public long getFalsePositives() {
+                return falsePos;
+        }
+
+        /** @return Number of lines labelled false and predicted false. */
+        public long getTrueNegatives() {
+                return trueNeg;
+        }
+
+        /** @return Number of lines labelled true and predicted false. */
+        public long getFalseNegatives() {
+                return falseNeg;
+        }
+
+        /** @return Fraction of lines predicted correctly, or 0 if there are none. */
+        public double getAccuracy() {
+                return ratio(truePos + trueNeg, getRows());
+        }
+
+        /** @return Fraction of lines predicted true which are labelled true, or 0 if none are predicted true. */
+        public double getPrecision() {
+                return ratio(truePos, truePos + falsePos);
+        }
+
+        /** @return Fraction of lines labelled true which are predicted true, or 0 if none are labelled true. */
+        public double getRecall() {
+                return ratio(truePos, truePos + falseNeg);
+        }
+
+        /** @return Mean negative log probability of the true labels, in nats, or 0 if there are no lines. */
+        public double getLogLoss() {
+                return (getRows() == 0) ? 0 : loss / getRows();
+        }
+
+        /**
+         * Returns a report of the evaluation: the confusion matrix, then each measure on its own line.
+         *
+         * @return Report of evaluation.
+         */
+        public String toString() {
+                StringBuilder sb = new StringBuilder();
+                sb.append(String.format("%-10s %12s %12s\n", "", "predicted 1", "predicted 0"));
+                sb.append(String.format("%-10s %12d %12d\n", "actual 1", truePos, falseNeg));
+                sb.append(String.format("%-10s %12d %12d\n", "actual 0", falsePos, trueNeg));
+                sb.append(String.format("Rows:      %d\n", getRows()));
+                sb.append(String.format("Accuracy:  %.6f\n", getAccuracy()));
+                sb.append(String.format("Precision: %.6f\n", getPrecision()));
+                sb.append(String.format("Recall:    %.6f\n", getRecall()));
+                sb.append(String.format("Log-loss:  %.6f\n", getLogLoss()));
+                return sb.toString();
+        }
+
+        /** Divides two counts, or returns 0 if the denominator is 0. */
+        private static double ratio(long num, long denom) {
+                return (denom == 0) ? 0 : num / (double)denom;
+        }
+}
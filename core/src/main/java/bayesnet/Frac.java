@@ -5,6 +5,8 @@
  * Date:        20/05/15
  * ****************************************************************************************************************** */
 
+package bayesnet;
+
 /**
  * Simple representation of a fraction.
  * <p>
@@ -0,0 +1,97 @@
+/* ****************************************************************************************************************** *
+ * Name:        LineBatch.java
+ * Description: Reusable buffer of lines of test data and the log odds predicted for them.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Arrays;
+
+/**
+ * A batch of lines of test data which have been classified, or are waiting for the scores of their block, kept as the
+ * raw bytes of each line along with the position of its unknown variable and its log odds.
+ * <p>
+ * The bytes of every line are copied end to end into one growable array, so a batch holds its lines without any
+ * per-line objects, and once its arrays have grown to the largest batch they are reused without allocating when the
+ * batch is cleared. {@link PredictionWriter PredictionWriter} writes the lines out with the "?" of each unknown
+ * variable patched in place.
+ */
+public class LineBatch {
+        /* Package Private members */
+        byte[] data;                            // Bytes of every line, end to end, without newlines
+        int[] start;                            // Offset in data[] of each line; start[size] is the end of the last
+        int[] query;                            // Offset in data[] of the "?" of the unknown variable of each line
+        double[] logOdds;                       // Log odds of the unknown variable of each line being true
+
+        /* Private members */
+        private int size;                       // Number of lines in batch
+
+        /** Constructor. Creates an empty batch. */
+        public LineBatch() {
+                data = new byte[1 << 12];
+                start = new int[65];
+                query = new int[64];
+                logOdds = new double[64];
+        }
+
+        /**
+         * Appends the line last read by a tokenizer to the batch. Its log odds must be set before it is written.
+         *
+         * @param tok Tokenizer which has just read a line of test data with an unknown variable.
+         * @return Index of the line in the batch.
+         */
+        public int add(CsvTokenizer tok) {
+                int len = tok.lineLength(), off = start[size];
+                if (size == query.length) {
+                        start = Arrays.copyOf(start, 2 * size + 1);
+                        query = Arrays.copyOf(query, 2 * size);
+                        logOdds = Arrays.copyOf(logOdds, 2 * size);
+                }
+                if ((long)off + len > data.length) {
+                        if ((long)off + len > Integer.MAX_VALUE - 8) throw new IllegalStateException("Batch is full");
+                        data = Arrays.copyOf(data, (int)Math.min(Integer.MAX_VALUE - 8,
+                                                                 Math.max(2L * data.length, (long)off + len)));
+                }
+                tok.getLine(data, off);
+                query[size] = off + tok.lastUnknownOffset();
+                start[size + 1] = off + len;
+                return size++;
+        }
+
+        /**
+         * Sets the log odds of the unknown variable of a line being true.
+         *
+         * @param line Index of line in batch.
+         * @param logOdds Log odds of the unknown variable being true.
+         */
+        public void setLogOdds(int line, double logOdds) {
+                this.logOdds[line] = logOdds;
+        }
+
+        /**
+         * Gets the log odds of the unknown variable of a line being true.
+         *
+         * @param line Index of line in batch.
+         * @return Log odds of the unknown variable being true.
+         */
+        public double getLogOdds(int line) {
+                return logOdds[line];
+        }
+
+        /** Removes every line from the batch, keeping its buffers. */
+        public void clear() {
+                size = 0;
+        }
+
+        /**
+         * Gets the number of lines in the batch.
+         *
+         * @return Number of lines.
+         */
+        public int size() {
+                return size;
+        }
+}
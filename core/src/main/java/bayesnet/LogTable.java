@@ -0,0 +1,220 @@
+/* ****************************************************************************************************************** *
+ * Name:        LogTable.java
+ * Description: Log-space conditional probability tables of a bayesian network, for scoring without underflow.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log-space form of the conditional probability tables of a bayesian network.
+ * <p>
+ * Multiplying the probabilities of a few hundred nodes underflows a double to 0.0, after which every model of the
+ * network has the same exact event probability. LogTable instead precomputes log P(true) and log P(false) for every
+ * entry of a {@link CPTable CPTable} when the network is loaded, so scoring a model is a sum of table lookups with no
+ * division, no log and no risk of underflow:
+ * <p>
+ * log ExactEventP(x1, ..., xn) = SUM(log P(xi | PARENTS(Xi)));
+ * <p>
+ * The posterior of a single query variable is normalized from the log probabilities of its {@link MarkovBlanket
+ * markov blanket} factors for each of its values.
+ * <p>
+ * Only dense CPTs are precomputed, under the {@link Smoothing smoothing} of the CPTable. The log probabilities of
+ * nodes whose CPT is sparse or noisy-OR are calculated from their {@link NodeCPT NodeCPT} when needed, which is cheap
+ * once the CPTable is {@link CPTable#freeze(Smoothing) frozen}.
+ * <p>
+ * Smoothing such as {@link Smoothing.Method#FRACTION FRACTION} can make an entry exactly 1, so the log probability of
+ * the other value is -Infinity. A query whose terms are -Infinity for one value only is certain, with log odds of
+ * +/-Infinity. A query whose terms are -Infinity for both values has no defined log odds, as both of its exact event
+ * probabilities are 0; it is a tie and is {@link #resolveTie(double) resolved} as comparing them would resolve it.
+ * <p>
+ * The factors outside the markov blanket cancel from the log odds, except that one which is 0 makes both exact event
+ * probabilities 0 too. Under FRACTION every unseen parent configuration is certain, so nearly every node of a wide
+ * network can have a factor of 0, and checking them all would cost a factor per node for every row. By default these
+ * factors are ignored and the log odds are those of the blanket. A LogTable built with exact ties also checks the
+ * factors of the {@link #certain certain} nodes outside the blanket of each query, its {@link #guards(int) guards},
+ * so that a row in which one is 0 is a tie, exactly as comparing the exact event probabilities would predict.
+ *
+ * @see CPTable
+ * @see MarkovBlanket
+ */
+public class LogTable {
+        /* Package Private members */
+        protected double[] logTrue;     // log P(node = true | parent configuration), laid out as CPTable.num[]
+        protected double[] logFalse;    // log P(node = false | parent configuration), laid out as CPTable.num[]
+        protected int[] certain;        // Certain nodes guarded for exact ties, in ascending order, or none
+
+        /* Private members */
+        private CPTable cpt;            // CPTs of bayesian network, for structure
+        private MarkovBlanket blanket;  // Markov blankets of nodes in network
+        private AtomicReferenceArray<int[]> guards;     // Certain nodes outside the blanket of each query, or null
+
+        /**
+         * Constructor. Precomputes the log probabilities of every entry of the CPTs. Factors outside the markov
+         * blanket of a query are ignored.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param blanket Markov blankets of nodes in network.
+         */
+        public LogTable(CPTable cpt, MarkovBlanket blanket) {
+                this(cpt, blanket, false);
+        }
+
+        /**
+         * Constructor. Precomputes the log probabilities of every entry of the CPTs.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param blanket Markov blankets of nodes in network.
+         * @param exactTies If true, a factor outside the markov blanket of a query which is 0 makes the query a tie.
+         */
+        public LogTable(CPTable cpt, MarkovBlanket blanket, boolean exactTies) {
+                this.cpt = cpt;
+                this.blanket = blanket;
+                logTrue = new double[cpt.num.length];
+                logFalse = new double[cpt.num.length];
+                double prob;
+                for (int i = 0; i < cpt.size(); i++) {
+                        /* Smoothed to avoid zero-frequency error, or precomputed if the table is frozen */
+                        for (int j = cpt.cptOff[i], end = cpt.cptOff[i + 1]; j < end; j++) {
+                                prob = cpt.getTrueProb(i, j - cpt.cptOff[i]);
+                                logTrue[j] = Math.log(prob);
+                                logFalse[j] = Math.log1p(-prob);
+                        }
+                }
+
+                /* Nodes whose factor can be 0 */
+                int n = 0;
+                int[] c = new int[cpt.size()];
+                for (int i = 0; i < cpt.size() && exactTies; i++) if (cpt.hasCertainConfiguration(i)) c[n++] = i;
+                certain = Arrays.copyOf(c, n);
+                guards = new AtomicReferenceArray<int[]>(cpt.size());
+        }
+
+        /**
+         * Gets the certain nodes outside the markov blanket of a query, whose factors are checked for 0 when scoring
+         * it. Found the first time each query is scored, then cached.
+         *
+         * @param node Index of query node in network.
+         * @return Nodes guarded for the query, in ascending order; empty unless built with exact ties.
+         */
+        int[] guards(int node) {
+                int[] g = guards.get(node);
+                if (g != null) return g;
+
+                boolean[] isFactor = new boolean[cpt.size()];
+                for (int f = blanket.factorOff[node]; f < blanket.factorOff[node + 1]; f++) {
+                        isFactor[blanket.factorIdx[f]] = true;
+                }
+                int n = 0;
+                g = new int[certain.length];
+                for (int i : certain) if (!isFactor[i]) g[n++] = i;
+                guards.compareAndSet(node, null, Arrays.copyOf(g, n));
+                return guards.get(node);
+        }
+
+        /**
+         * Returns the log probability of a node being the value it has in the given model, given the state of its
+         * parents in that model.
+         *
+         * @param node Index of node in network.
+         * @param values The model for the variables.
+         * @return log P(node = values[node] | PARENTS(node)).
+         */
+        public double logProb(int node, boolean[] values) {
+                if (cpt.getKind(node) != CPTKind.DENSE) {
+                        double prob = cpt.getTrueProb(node, cpt.key(node, values));
+                        return (values[node]) ? Math.log(prob) : Math.log1p(-prob);
+                }
+                int entry = cpt.cptOff[node] + cpt.index(node, values);
+                return (values[node]) ? logTrue[entry] : logFalse[entry];
+        }
+
+        /**
+         * Calculates the log of the exact event probability for the bayesian network given the specified model.
+         *
+         * @param values The model for the variables.
+         * @return The log of the exact event probability for the given model.
+         */
+        public double logExactEventProb(boolean[] values) {
+                double logProb = 0;
+                for (int i = 0; i < cpt.size(); i++) logProb += logProb(i, values);
+                return logProb;
+        }
+
+        /**
+         * Calculates log(P(node = true, rest) / P(node = false, rest)) for the specified model, from the factors in
+         * the node's markov blanket only. The value of the node in the model is ignored.
+         *
+         * @param node Index of query node in network.
+         * @param values The model for the variables. Modified during the call, but restored before it returns.
+         * @return Log odds of the node being true, or 0 if P(node = true, rest) and P(node = false, rest) are both 0.
+         */
+        public double logOdds(int node, boolean[] values) {
+                boolean value = values[node];
+                double logTrueSum = 0, logFalseSum = 0;
+                int f = blanket.factorOff[node], end = blanket.factorOff[node + 1];
+
+                /* Query node's own factor does not depend on its value */
+                if (cpt.getKind(node) != CPTKind.DENSE) {
+                        double prob = cpt.getTrueProb(node, cpt.key(node, values));
+                        logTrueSum += Math.log(prob);
+                        logFalseSum += Math.log1p(-prob);
+                } else {
+                        int entry = cpt.cptOff[node] + cpt.index(node, values);
+                        logTrueSum += logTrue[entry];
+                        logFalseSum += logFalse[entry];
+                }
+
+                /* Factors of children */
+                values[node] = true;
+                for (int i = f + 1; i < end; i++) logTrueSum += logProb(blanket.factorIdx[i], values);
+                values[node] = false;
+                for (int i = f + 1; i < end; i++) logFalseSum += logProb(blanket.factorIdx[i], values);
+                values[node] = value;
+
+                /* A factor outside the blanket which is 0 makes both exact event probabilities 0 */
+                for (int i : guards(node)) if (logProb(i, values) == Double.NEGATIVE_INFINITY) return 0;
+
+                return resolveTie(logTrueSum - logFalseSum);
+        }
+
+        /**
+         * Calculates the normalized posterior probability of a node being true given the values of the rest of the
+         * variables in the specified model. The value of the node in the model is ignored.
+         *
+         * @param node Index of query node in network.
+         * @param values The model for the variables. Modified during the call, but restored before it returns.
+         * @return P(node = true | rest).
+         */
+        public double posterior(int node, boolean[] values) {
+                return posterior(logOdds(node, values));
+        }
+
+        /**
+         * Resolves log odds which are undefined because P(true, rest) and P(false, rest) are both 0, so the sums of
+         * their log probabilities are both -Infinity, or a term of +Infinity meets one of -Infinity. Such a query is
+         * a tie, which comparing its exact event probabilities predicts true, so it is given log odds of 0 and a
+         * posterior of 0.5. Any other log odds, including the infinite log odds of a certain query, are unchanged.
+         *
+         * @param logOdds log(P(true, rest) / P(false, rest)), which may be NaN.
+         * @return Log odds, or 0 if they are NaN.
+         */
+        public static double resolveTie(double logOdds) {
+                return Double.isNaN(logOdds) ? 0 : logOdds;
+        }
+
+        /**
+         * Converts log odds into a probability.
+         *
+         * @param logOdds log(P(true) / P(false)).
+         * @return P(true).
+         */
+        public static double posterior(double logOdds) {
+                return 1 / (1 + Math.exp(-logOdds));
+        }
+}
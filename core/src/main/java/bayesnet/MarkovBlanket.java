@@ -0,0 +1,121 @@
+/* ****************************************************************************************************************** *
+ * Name:        MarkovBlanket.java
+ * Description: Precomputed markov blankets of the nodes in a bayesian network, for scoring a single query variable.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * Precomputed markov blankets of every node in a bayesian network.
+ * <p>
+ * The markov blanket of a node is its parents, its children and its children's other parents. Given its blanket, a
+ * node is independent of every other node in the network, so when comparing two models which differ only in the value
+ * of one query node the factors of every node outside of the query node and its children cancel. i.e.
+ * <p>
+ * ExactEventP(q, x) / ExactEventP(!q, x) = PRODUCT(P(fi | PARENTS(Fi)) for Fi in {Q} + CHILDREN(Q)) / ...
+ * <p>
+ * MarkovBlanket precomputes, for every node, these factor nodes and the variables in its blanket when the network is
+ * loaded, so scoring a query costs time proportional to the query's neighbourhood rather than the whole network.
+ *
+ * @see CPTable
+ */
+public class MarkovBlanket {
+        /* Package Private members */
+        protected int[] factorOff;      // Start of each node's factors in factorIdx[]; factorOff[n] is its end
+        protected int[] factorIdx;      // Packed factor nodes of every node: the node itself followed by its children
+        protected int[] blanketOff;     // Start of each node's blanket in blanketIdx[]; blanketOff[n] is its end
+        protected int[] blanketIdx;     // Packed markov blanket of every node, in ascending order
+
+        /* Private members */
+        private CPTable cpt;            // CPTs of bayesian network
+
+        /**
+         * Constructor. Computes the markov blanket of every node in the network.
+         *
+         * @param cpt CPTs of the bayesian network.
+         */
+        public MarkovBlanket(CPTable cpt) {
+                this.cpt = cpt;
+                int size = cpt.size();
+
+                /* Count children of each node */
+                int[] childNum = new int[size];
+                for (int j = 0; j < cpt.parentIdx.length; j++) childNum[cpt.parentIdx[j]]++;
+
+                /* Factors are the node followed by its children */
+                factorOff = new int[size + 1];
+                for (int i = 0; i < size; i++) factorOff[i + 1] = factorOff[i] + 1 + childNum[i];
+                factorIdx = new int[factorOff[size]];
+                int[] next = new int[size];
+                for (int i = 0; i < size; i++) {
+                        factorIdx[factorOff[i]] = i;
+                        next[i] = factorOff[i] + 1;
+                }
+                for (int c = 0; c < size; c++) {
+                        for (int j = cpt.parentOff[c]; j < cpt.parentOff[c + 1]; j++) {
+                                factorIdx[next[cpt.parentIdx[j]]++] = c;
+                        }
+                }
+
+                /* Blanket is the parents of every factor node, excluding the node itself, and its children */
+                boolean[] inBlanket = new boolean[size];
+                int[][] blankets = new int[size][];
+                int total = 0;
+                for (int i = 0; i < size; i++) {
+                        int n = 0;
+                        for (int f = factorOff[i]; f < factorOff[i + 1]; f++) {
+                                int node = factorIdx[f];
+                                if (node != i) inBlanket[node] = true;
+                                for (int j = cpt.parentOff[node]; j < cpt.parentOff[node + 1]; j++) {
+                                        if (cpt.parentIdx[j] != i) inBlanket[cpt.parentIdx[j]] = true;
+                                }
+                        }
+                        for (int j = 0; j < size; j++) if (inBlanket[j]) n++;
+                        blankets[i] = new int[n];
+                        n = 0;
+                        for (int j = 0; j < size; j++) {
+                                if (inBlanket[j]) blankets[i][n++] = j;
+                                inBlanket[j] = false;
+                        }
+                        total += n;
+                }
+                blanketOff = new int[size + 1];
+                blanketIdx = new int[total];
+                for (int i = 0; i < size; i++) {
+                        blanketOff[i + 1] = blanketOff[i] + blankets[i].length;
+                        System.arraycopy(blankets[i], 0, blanketIdx, blanketOff[i], blankets[i].length);
+                }
+        }
+
+        /**
+         * Gets the markov blanket of a node.
+         *
+         * @param node Index of node in network.
+         * @return Indices of the nodes in the markov blanket, in ascending order.
+         */
+        public int[] getBlanket(int node) {
+                int[] blanket = new int[blanketOff[node + 1] - blanketOff[node]];
+                System.arraycopy(blanketIdx, blanketOff[node], blanket, 0, blanket.length);
+                return blanket;
+        }
+
+        /**
+         * Calculates the product of the conditional probabilities of a node and its children for the specified model.
+         * <p>
+         * For two models which differ only in the value of the node, the ratio of these products is equal to the ratio
+         * of the exact event probabilities of the models.
+         *
+         * @param node Index of query node in network.
+         * @param values The model for the variables.
+         * @return PRODUCT(P(fi | PARENTS(Fi))) for Fi in the node and its children.
+         */
+        public double calcBlanketProb(int node, boolean[] values) {
+                double prob = 1;
+                for (int f = factorOff[node], end = factorOff[node + 1]; f < end; f++) {
+                        prob *= cpt.getProb(factorIdx[f], values);
+                }
+                return prob;
+        }
+}
@@ -0,0 +1,380 @@
+/* ****************************************************************************************************************** *
+ * Name:        Metrics.java
+ * Description: Low-overhead runtime metrics of training and classification.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.*;
+
+/**
+ * Records timings of the phases of training and classification, counts of lines trained and classified and of
+ * result cache lookups, and a histogram of the classification latency of each line.
+ * <p>
+ * Latency is only recorded for lines classified one at a time. Lines scored together in a {@link RowBlock RowBlock}
+ * have no latency of their own, so blocks are recorded separately, as the number of blocks and lines and the time
+ * spent scoring them, from which their throughput is reported.
+ * <p>
+ * Every counter is a {@link LongAdder LongAdder}, so the threads of the parallel paths update them without contending,
+ * and recording is cheap enough to do on the hot paths: counts are added once per chunk or block of lines where the
+ * lines are processed together. The latency histogram has 8 linear buckets per power of two nanoseconds, so
+ * percentiles are accurate to within 12.5%.
+ * <p>
+ * Metrics can be read as a JSON summary with {@link #toJson() toJson} or exported over JMX with
+ * {@link #register(String) register}.
+ *
+ * @see MetricsMXBean
+ */
+public class Metrics implements MetricsMXBean {
+        /* Public members */
+        /** Phase of parsing the network structure file */
+        public static final String PARSE_NETWORK = "parseNetwork";
+        /** Phase of learning the network structure from the events file */
+        public static final String LEARN_STRUCTURE = "learnStructure";
+        /** Phase of counting the events file into the CPTs */
+        public static final String TRAIN = "train";
+        /** Phase of writing a model file */
+        public static final String WRITE_MODEL = "writeModel";
+        /** Phase of loading a model file */
+        public static final String LOAD_MODEL = "loadModel";
+        /** Phase of binding the header of test data to the network */
+        public static final String BIND = "bind";
+        /** Phase of classifying test data */
+        public static final String CLASSIFY = "classify";
+        /** Phase of scoring held out folds of the events file */
+        public static final String EVALUATE = "evaluate";
+
+        /* Private members */
+        private static final int SUB_BITS = 3;  // Log2 of number of buckets per power of two
+        private ConcurrentHashMap<String, LongAdder> phaseNanos;        // Total time spent in each phase
+        private LongAdder trained;              // Lines of events counted
+        private LongAdder positive;             // Lines classified as true
+        private LongAdder negative;             // Lines classified as false
+        private LongAdder errors;               // Failed operations
+        private LongAdder cacheHits;            // Lines scored from the result cache
+        private LongAdder cacheMisses;          // Lines looked up in the result cache but scored
+        private LongAdder[] latency;            // Number of lines in each latency bucket
+        private LongAdder latencyNanos;         // Total latency of every line
+        private LongAccumulator latencyMax;     // Maximum latency of a line
+        private LongAdder blocks;               // Blocks of lines scored together
+        private LongAdder blockRows;            // Lines scored in blocks
+        private LongAdder blockNanos;           // Total time spent scoring blocks
+
+        /** Constructor. All metrics start at zero. */
+        public Metrics() {
+                phaseNanos = new ConcurrentHashMap<String, LongAdder>();
+                trained = new LongAdder();
+                positive = new LongAdder();
+                negative = new LongAdder();
+                errors = new LongAdder();
+                cacheHits = new LongAdder();
+                cacheMisses = new LongAdder();
+                latency = new LongAdder[(64 - SUB_BITS + 1) << SUB_BITS];
+                for (int i = 0; i < latency.length; i++) latency[i] = new LongAdder();
+                latencyNanos = new LongAdder();
+                latencyMax = new LongAccumulator(Long::max, 0);
+                blocks = new LongAdder();
+                blockRows = new LongAdder();
+                blockNanos = new LongAdder();
+        }
+
+        /**
+         * Adds the time since a start time to a phase.
+         *
+         * @param phase Name of phase.
+         * @param start Start time of phase, from {@link System#nanoTime() System.nanoTime}.
+         */
+        public void phase(String phase, long start) {
+                long nanos = System.nanoTime() - start;
+                LongAdder a = phaseNanos.get(phase);
+                if (a == null) a = phaseNanos.computeIfAbsent(phase, k -> new LongAdder());
+                a.add(nanos);
+        }
+
+        /**
+         * Counts lines of events which have been counted into the CPTs.
+         *
+         * @param rows Number of lines.
+         */
+        public void trained(long rows) {
+                trained.add(rows);
+        }
+
+        /**
+         * Counts lines of test data which have been classified.
+         *
+         * @param positives Number of lines classified as true.
+         * @param negatives Number of lines classified as false.
+         */
+        public void classified(long positives, long negatives) {
+                if (positives != 0) positive.add(positives);
+                if (negatives != 0) negative.add(negatives);
+        }
+
+        /**
+         * Records the classification latency of lines classified one at a time.
+         *
+         * @param nanos Latency of each line, in nanoseconds.
+         * @param rows Number of lines with this latency.
+         */
+        public void latency(long nanos, long rows) {
+                nanos = Math.max(0, nanos);
+                latency[bucket(nanos)].add(rows);
+                latencyNanos.add(nanos * rows);
+                latencyMax.accumulate(nanos);
+        }
+
+        /**
+         * Records a block of lines scored together. The lines are not added to the latency histogram.
+         *
+         * @param nanos Time spent reading and scoring the lines of the block, in nanoseconds.
+         * @param rows Number of lines in the block.
+         */
+        public void block(long nanos, long rows) {
+                blocks.increment();
+                blockRows.add(rows);
+                blockNanos.add(Math.max(0, nanos));
+        }
+
+        /**
+         * Counts lookups in a {@link ResultCache ResultCache}.
+         *
+         * @param hits Number of lookups which found their key.
+         * @param misses Number of lookups which did not.
+         */
+        public void cached(long hits, long misses) {
+                if (hits != 0) cacheHits.add(hits);
+                if (misses != 0) cacheMisses.add(misses);
+        }
+
+        /** Counts a failed operation. */
+        public void error() {
+                errors.increment();
+        }
+
+        @Override
+        public Map<String, Double> getPhaseMillis() {
+                Map<String, Double> millis = new TreeMap<String, Double>();
+                for (Map.Entry<String, LongAdder> e : phaseNanos.entrySet()) {
+                        millis.put(e.getKey(), e.getValue().sum() / 1e6);
+                }
+                return millis;
+        }
+
+        @Override
+        public long getRowsTrained() {
+                return trained.sum();
+        }
+
+        @Override
+        public long getRowsClassified() {
+                return positive.sum() + negative.sum();
+        }
+
+        @Override
+        public long getPositive() {
+                return positive.sum();
+        }
+
+        @Override
+        public long getNegative() {
+                return negative.sum();
+        }
+
+        @Override
+        public double getPositiveFraction() {
+                long rows = getRowsClassified();
+                return (rows == 0) ? 0 : getPositive() / (double)rows;
+        }
+
+        @Override
+        public long getErrors() {
+                return errors.sum();
+        }
+
+        @Override
+        public long getCacheHits() {
+                return cacheHits.sum();
+        }
+
+        @Override
+        public long getCacheMisses() {
+                return cacheMisses.sum();
+        }
+
+        @Override
+        public double getCacheHitRate() {
+                long hits = getCacheHits(), lookups = hits + getCacheMisses();
+                return (lookups == 0) ? 0 : hits / (double)lookups;
+        }
+
+        @Override
+        public double getTrainRowsPerSecond() {
+                return perSecond(getRowsTrained(), TRAIN);
+        }
+
+        @Override
+        public double getClassifyRowsPerSecond() {
+                return perSecond(getRowsClassified(), CLASSIFY);
+        }
+
+        @Override
+        public long getBlocks() {
+                return blocks.sum();
+        }
+
+        @Override
+        public long getBlockRows() {
+                return blockRows.sum();
+        }
+
+        @Override
+        public double getBlockRowsPerSecond() {
+                long nanos = blockNanos.sum();
+                return (nanos == 0) ? 0 : getBlockRows() * 1e9 / nanos;
+        }
+
+        @Override
+        public double getLatencyP50Micros() {
+                return latencyPercentileMicros(0.5);
+        }
+
+        @Override
+        public double getLatencyP99Micros() {
+                return latencyPercentileMicros(0.99);
+        }
+
+        @Override
+        public double getLatencyP999Micros() {
+                return latencyPercentileMicros(0.999);
+        }
+
+        @Override
+        public double getLatencyMaxMicros() {
+                return latencyMax.get() / 1e3;
+        }
+
+        @Override
+        public double getLatencyMeanMicros() {
+                long rows = 0;
+                for (LongAdder a : latency) rows += a.sum();
+                return (rows == 0) ? 0 : latencyNanos.sum() / 1e3 / rows;
+        }
+
+        @Override
+        public double latencyPercentileMicros(double p) {
+                long[] counts = new long[latency.length];
+                long rows = 0;
+                for (int i = 0; i < counts.length; i++) rows += (counts[i] = latency[i].sum());
+                if (rows == 0) return 0;
+
+                /* Find bucket holding the line at rank ceil(p * rows) */
+                long rank = Math.max(1, (long)Math.ceil(p * rows)), seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                        seen += counts[i];
+                        if (seen >= rank) return Math.min(upperBound(i), latencyMax.get()) / 1e3;
+                }
+                return getLatencyMaxMicros();
+        }
+
+        @Override
+        public String toJson() {
+                StringBuilder sb = new StringBuilder("{\n  \"phaseMillis\": {");
+                String sep = "";
+                for (Map.Entry<String, Double> e : getPhaseMillis().entrySet()) {
+                        sb.append(sep).append("\n    \"").append(e.getKey()).append("\": ").append(e.getValue());
+                        sep = ",";
+                }
+                sb.append(sep.isEmpty() ? "},\n" : "\n  },\n");
+                sb.append("  \"rowsTrained\": ").append(getRowsTrained()).append(",\n");
+                sb.append("  \"rowsClassified\": ").append(getRowsClassified()).append(",\n");
+                sb.append("  \"positive\": ").append(getPositive()).append(",\n");
+                sb.append("  \"negative\": ").append(getNegative()).append(",\n");
+                sb.append("  \"positiveFraction\": ").append(getPositiveFraction()).append(",\n");
+                sb.append("  \"errors\": ").append(getErrors()).append(",\n");
+                sb.append("  \"cacheHits\": ").append(getCacheHits()).append(",\n");
+                sb.append("  \"cacheMisses\": ").append(getCacheMisses()).append(",\n");
+                sb.append("  \"cacheHitRate\": ").append(getCacheHitRate()).append(",\n");
+                sb.append("  \"trainRowsPerSecond\": ").append(getTrainRowsPerSecond()).append(",\n");
+                sb.append("  \"classifyRowsPerSecond\": ").append(getClassifyRowsPerSecond()).append(",\n");
+                sb.append("  \"blocks\": ").append(getBlocks()).append(",\n");
+                sb.append("  \"blockRows\": ").append(getBlockRows()).append(",\n");
+                sb.append("  \"blockRowsPerSecond\": ").append(getBlockRowsPerSecond()).append(",\n");
+                sb.append("  \"latencyMicros\": {\n");
+                sb.append("    \"mean\": ").append(getLatencyMeanMicros()).append(",\n");
+                sb.append("    \"p50\": ").append(getLatencyP50Micros()).append(",\n");
+                sb.append("    \"p90\": ").append(latencyPercentileMicros(0.9)).append(",\n");
+                sb.append("    \"p99\": ").append(getLatencyP99Micros()).append(",\n");
+                sb.append("    \"p999\": ").append(getLatencyP999Micros()).append(",\n");
+                sb.append("    \"max\": ").append(getLatencyMaxMicros()).append("\n");
+                sb.append("  }\n}\n");
+                return sb.toString();
+        }
+
+        /**
+         * Writes the JSON summary of every metric to a file.
+         *
+         * @param file File to write.
+         */
+        public void writeJson(File file) throws IOException {
+                Writer w = new FileWriter(file);
+                try {
+                        w.write(toJson());
+                } finally {
+                        w.close();
+                }
+        }
+
+        /**
+         * Registers these metrics with the platform MBean server as "bayesnet:type=Metrics,name=[name]", replacing
+         * any metrics already registered with that name.
+         *
+         * @param name Name of metrics, e.g. the name of the program recording them.
+         * @return Name the metrics are registered under.
+         */
+        public ObjectName register(String name) {
+                try {
+                        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                        ObjectName on = new ObjectName("bayesnet:type=Metrics,name=" + ObjectName.quote(name));
+                        if (server.isRegistered(on)) server.unregisterMBean(on);
+                        server.registerMBean(this, on);
+                        return on;
+                } catch (JMException e) {
+                        throw new IllegalStateException("Cannot register metrics " + name, e);
+                }
+        }
+
+        /** Rows per second of the time spent in a phase. */
+        private double perSecond(long rows, String phase) {
+                LongAdder a = phaseNanos.get(phase);
+                long nanos = (a == null) ? 0 : a.sum();
+                return (nanos == 0) ? 0 : rows * 1e9 / nanos;
+        }
+
+        /**
+         * Gets the latency bucket of a number of nanoseconds. Values below 2^SUB_BITS have a bucket each; above that,
+         * each power of two is split into 2^SUB_BITS buckets by the bits after the leading one.
+         */
+        private static int bucket(long nanos) {
+                if (nanos < (1 << SUB_BITS)) return (int)nanos;
+                int exp = 63 - Long.numberOfLeadingZeros(nanos);
+                return ((exp - SUB_BITS + 1) << SUB_BITS) | (int)((nanos >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+        }
+
+        /** Gets the largest number of nanoseconds in a latency bucket. */
+        private static long upperBound(int bucket) {
+                if (bucket < (1 << SUB_BITS)) return bucket;
+                int shift = (bucket >>> SUB_BITS) - 1;
+                long lower = ((long)((1 << SUB_BITS) | (bucket & ((1 << SUB_BITS) - 1)))) << shift;
+                return lower + (1L << shift) - 1;
+        }
+}
@@ -0,0 +1,88 @@
+/* ****************************************************************************************************************** *
+ * Name:        MetricsMXBean.java
+ * Description: JMX management interface of the runtime metrics of training and classification.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Map;
+
+/**
+ * Management interface through which {@link Metrics Metrics} are exported over JMX, e.g. to jconsole. Every attribute
+ * is a live view of the counters.
+ *
+ * @see Metrics#register(String)
+ */
+public interface MetricsMXBean {
+        /** @return Total milliseconds spent in each phase, by phase name. */
+        Map<String, Double> getPhaseMillis();
+
+        /** @return Number of lines of events counted into the CPTs. */
+        long getRowsTrained();
+
+        /** @return Number of lines of test data classified. */
+        long getRowsClassified();
+
+        /** @return Number of lines classified as true (spam). */
+        long getPositive();
+
+        /** @return Number of lines classified as false (ham). */
+        long getNegative();
+
+        /** @return Fraction of classified lines which were classified as true, or 0 if none have been. */
+        double getPositiveFraction();
+
+        /** @return Number of failed operations, such as rejected requests. */
+        long getErrors();
+
+        /** @return Number of lines scored from the result cache. */
+        long getCacheHits();
+
+        /** @return Number of lines looked up in the result cache and not found, so scored. */
+        long getCacheMisses();
+
+        /** @return Fraction of result cache lookups which were hits, or 0 if there have been none. */
+        double getCacheHitRate();
+
+        /** @return Lines of events counted per second of the training phase. */
+        double getTrainRowsPerSecond();
+
+        /** @return Lines of test data classified per second of the classification phase. */
+        double getClassifyRowsPerSecond();
+
+        /** @return Number of blocks of lines scored together. */
+        long getBlocks();
+
+        /** @return Number of lines scored in blocks, which are not in the latency percentiles. */
+        long getBlockRows();
+
+        /** @return Lines scored in blocks per second of scoring them. */
+        double getBlockRowsPerSecond();
+
+        /** @return Median classification latency of a line classified alone, in microseconds. */
+        double getLatencyP50Micros();
+
+        /** @return 99th percentile classification latency of a line classified alone, in microseconds. */
+        double getLatencyP99Micros();
+
+        /** @return 99.9th percentile latency of a line classified alone, in microseconds. */
+        double getLatencyP999Micros();
+
+        /** @return Maximum classification latency of a line classified alone, in microseconds. */
+        double getLatencyMaxMicros();
+
+        /** @return Mean classification latency of a line classified alone, in microseconds. */
+        double getLatencyMeanMicros();
+
+        /**
+         * @param p Fraction of lines, between 0 and 1.
+         * @return Classification latency which fraction p of lines were at or below, in microseconds.
+         */
+        double latencyPercentileMicros(double p);
+
+        /** @return JSON summary of every metric. */
+        String toJson();
+}
@@ -0,0 +1,154 @@
+/* ****************************************************************************************************************** *
+ * Name:        ModelFile.java
+ * Description: Reads and writes trained bayesian networks in a compact binary format.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads and writes the {@link CPTable CPTable} of a trained bayesian network as a binary model file, so a network can
+ * be trained once and loaded for prediction without reading the training data again.
+ * <p>
+ * The model file is a sequence of big-endian values:
+ * <pre>
+ *      int     magic           - "BNSM"
+ *      int     version         - {@link #VERSION VERSION}
+ *      int     nodes           - Number of nodes in network
+ *      for each node, parents first:
+ *          int     nameLength  - Length of name in bytes
+ *          byte[]  name        - Name of node, in UTF-8
+ *          int     parentNum   - Number of parents
+ *          int[]   parents     - Indices of parents, in the order of Node.parents[]
+ *          byte    kind        - Kind of CPT, the ordinal of a {@link CPTKind CPTKind}
+ *      long[]  num             - Raw count of each node being true for each parent configuration of dense nodes
+ *      long[]  denom           - Raw count of each parent configuration of dense nodes
+ *      for each node which is not dense, parents first:
+ *          ...     table       - Counts written by {@link NodeCPT#write(DataOutput) NodeCPT.write}
+ * </pre>
+ * The counts are stored in the order of {@link CPTable CPTable}'s packed arrays. The model file is memory-mapped when
+ * read and the counts are copied out in bulk. Version 1 files, which have no kinds and only dense nodes, can still be
+ * read.
+ *
+ * @see CPTable
+ */
+public class ModelFile {
+        /* Public members */
+        /** Magic number at start of every model file */
+        public static final int MAGIC = 0x424E534D;
+        /** Version of model file format written */
+        public static final int VERSION = 2;
+
+        /** Not instantiable */
+        private ModelFile() {
+        }
+
+        /**
+         * Writes a trained bayesian network to a model file.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param file Model file to write.
+         */
+        public static void write(CPTable cpt, File file) throws IOException {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                                                                                     1 << 16));
+                try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        out.writeInt(cpt.size());
+                        for (int i = 0; i < cpt.size(); i++) {
+                                byte[] name = cpt.getName(i).getBytes(StandardCharsets.UTF_8);
+                                out.writeInt(name.length);
+                                out.write(name);
+                                out.writeInt(cpt.parentOff[i + 1] - cpt.parentOff[i]);
+                                for (int j = cpt.parentOff[i]; j < cpt.parentOff[i + 1]; j++) {
+                                        out.writeInt(cpt.parentIdx[j]);
+                                }
+                                out.writeByte(cpt.getKind(i).ordinal());
+                        }
+                        for (int i = 0; i < cpt.num.length; i++) out.writeLong(cpt.num[i]);
+                        for (int i = 0; i < cpt.denom.length; i++) out.writeLong(cpt.denom[i]);
+                        for (int i = 0; i < cpt.size(); i++) {
+                                if (cpt.getKind(i) != CPTKind.DENSE) cpt.tables[i].write(out);
+                        }
+                } finally {
+                        out.close();
+                }
+        }
+
+        /**
+         * Reads a trained bayesian network from a model file.
+         *
+         * @param file Model file to read.
+         * @return CPTs of trained bayesian network.
+         * @throws IOException If the file is not a model file, is of an unsupported version or is corrupt.
+         */
+        public static CPTable read(File file) throws IOException {
+                FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+                try {
+                        ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                        /* Header */
+                        if (buf.remaining() < 12 || buf.getInt() != MAGIC) {
+                                throw new IOException(file + " is not a model file");
+                        }
+                        int version = buf.getInt();
+                        if (version != 1 && version != VERSION) {
+                                throw new IOException(file + " is model file version " + version +
+                                                      ", expected version " + VERSION);
+                        }
+
+                        /* Structure */
+                        int size = buf.getInt();
+                        String[] names = new String[size];
+                        int[][] parents = new int[size][];
+                        CPTKind[] kinds = new CPTKind[size];
+                        for (int i = 0; i < size; i++) {
+                                byte[] name = new byte[buf.getInt()];
+                                buf.get(name);
+                                names[i] = new String(name, StandardCharsets.UTF_8);
+                                parents[i] = new int[buf.getInt()];
+                                for (int j = 0; j < parents[i].length; j++) {
+                                        parents[i][j] = buf.getInt();
+                                        if (parents[i][j] < 0 || parents[i][j] >= i) {
+                                                throw new IOException(file + " is corrupt: parent of node " +
+                                                                      names[i] + " is not declared before it");
+                                        }
+                                }
+                                kinds[i] = (version == 1) ? CPTKind.DENSE : CPTKind.values()[buf.get()];
+                        }
+
+                        /* Counts */
+                        CPTable cpt = new CPTable(names, parents, kinds);
+                        if (buf.remaining() < 16L * cpt.num.length) {
+                                throw new IOException(file + " is corrupt: expected " + cpt.num.length + " counts");
+                        }
+                        buf.asLongBuffer().get(cpt.num).get(cpt.denom);
+                        buf.position(buf.position() + 16 * cpt.num.length);
+                        for (int i = 0; i < size; i++) {
+                                if (kinds[i] == CPTKind.SPARSE) {
+                                        cpt.tables[i] = SparseCPT.read(buf, parents[i].length);
+                                } else if (kinds[i] == CPTKind.NOISY_OR) {
+                                        cpt.tables[i] = NoisyOrCPT.read(buf, parents[i].length);
+                                }
+                        }
+                        if (buf.hasRemaining()) {
+                                throw new IOException(file + " is corrupt: " + buf.remaining() + " bytes after counts");
+                        }
+
+                        return cpt;
+                } catch (RuntimeException e) {
+                        /* BufferUnderflowException, NegativeArraySizeException etc. from a truncated file */
+                        throw new IOException(file + " is corrupt", e);
+                } finally {
+                        channel.close();
+                }
+        }
+}
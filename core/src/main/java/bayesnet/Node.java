@@ -0,0 +1,251 @@
+/* ****************************************************************************************************************** *
+ * Name:        Node.java
+ * Description: Representation of a node in a bayesian network.
+ * Author:      Campbell Lockley        studentID: 1178618
+ * Date:        19/05/15
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * This is a Representation of a node in a bayesian network.
+ * <p>
+ * Nodes have:
+ * <ul>
+ *      <li>a name, </li>
+ *      <li>some parents, </li>
+ *      <li>and a conditional probability table (CPT).</li>
+ * </ul>
+ * <p>
+ * The probability of this node depends on the states of its parents, which determines the index into its CPT for the 
+ * conditional probability.
+ * <p>
+ * The probabilities in this implementation are represented as fractions with discrete numerator-denominator components.
+ *  This is to facilitate the calculation step. Calling the fraction's {@link Frac#getDouble() getDouble()} method will
+ * return the probability as a double.
+ * <p>
+ * In order to avoid the zero-frequency problem the fractions representing the CPT is initialised as 1/1. Other
+ * {@link Smoothing smoothing} can be chosen by {@link #freeze(Smoothing) freezing} the node, which is applied to the
+ * counts without that initialisation and precomputes P(true) and P(false) for every entry of the CPT, so probabilities
+ * are looked up rather than divided out. Updating a frozen node discards the precomputed probabilities.
+ * <p>
+ * Nodes whose {@link CPTKind kind} is not dense have no table of fractions; their CPT is a {@link NodeCPT NodeCPT}
+ * instead, keyed by the same index computed in a long.
+ *
+ * @see Frac
+ * @see CPTKind
+ */
+public class Node {
+        /* Package Private members */
+        protected int[] parents;        // Indices of this nodes parents in representation of bayesian network
+        protected Frac[] probs;         // The CPT of this node, or null if it is not dense.
+        protected NodeCPT table;        // The CPT of this node if it is not dense, otherwise null.
+        protected double[] pTrue;       // Frozen P(true) of each entry of probs[], or null if not frozen.
+        protected double[] pFalse;      // Frozen P(false) of each entry of probs[], or null if not frozen.
+
+        /* Private members */
+        private String name;            // Name of this node
+        private Smoothing smoothing;    // Smoothing of probabilities
+
+        /** Constructor. The node's CPT is of the default kind for its number of parents. */
+        public Node(String name, int[] parents) {
+                this(name, parents, CPTKind.forParents(parents.length));
+        }
+
+        /** Constructor */
+        public Node(String name, int[] parents, CPTKind kind) {
+                if (parents.length > CPTKind.MAX_PARENTS || (kind == CPTKind.DENSE && parents.length > 30)) {
+                        throw new IllegalArgumentException("Node " + name + " has too many parents for a " +
+                                                           kind.getLabel() + " CPT");
+                }
+                this.name = name;
+                this.parents = parents;
+                this.smoothing = Smoothing.DEFAULT;
+                if (kind != CPTKind.DENSE) {
+                        this.table = kind.create(parents.length);
+                        return;
+                }
+                this.probs = new Frac[1 << parents.length];
+                /* Initialise counts as 1 to avoid zero-frequency error */
+                for (int i = 0; i < probs.length; i++) probs[i] = new Frac(1, 1);
+        }
+
+        /**
+         * Updates the CPT of this node given an observation of its value and its parents value's.
+         *
+         * @param pValues Values of its parents, in the order specified in the Node.parents[].
+         * @param value Value of this node.
+         */
+        public void update(boolean[] pValues, boolean value) {
+                assert (pValues.length == parents.length);
+                if (table != null) {
+                        table.update(parentKey(pValues), value);
+                        return;
+                }
+                int index = 0;
+                for (int i = 0; i < pValues.length; i++) index = (index << 1) | (pValues[i] ? 0 : 1);
+                pTrue = pFalse = null;
+                probs[index].denom++;
+                if (value) probs[index].num++;
+        }
+
+        /**
+         * Returns the probability of this node being the value specified given the state of its parents.
+         *
+         * @param pValues Values of its parents, in the order specified in the Node.parents[].
+         * @param value Value of this node.
+         */
+        public double getProb(boolean[] pValues, boolean value) {
+                assert (pValues.length == parents.length);
+                if (table != null) {
+                        double prob = table.getProb(parentKey(pValues));
+                        return (value == true) ? prob : (1 - prob);
+                }
+                int index = 0;
+                for (int i = 0; i < pValues.length; i++) index = (index << 1) | (pValues[i] ? 0 : 1);
+                if (pTrue != null) return (value == true) ? pTrue[index] : pFalse[index];
+                double prob = trueProb(index);
+                return (value == true) ? prob : (1 - prob);
+        }
+
+        /**
+         * Calculates the index into the CPT of this node given a model of every variable in the network, without
+         * first extracting the values of its parents.
+         *
+         * @param values The model for the variables in the network.
+         * @return Index of the parent configuration in this node's CPT.
+         */
+        public int index(boolean[] values) {
+                int index = 0;
+                for (int i = 0; i < parents.length; i++) index = (index << 1) | (values[parents[i]] ? 0 : 1);
+                return index;
+        }
+
+        /**
+         * Calculates the key of the parent configuration in this node's CPT given a model of every variable in the
+         * network. The key is the {@link #index(boolean[]) index} computed in a long, for nodes which are not dense.
+         *
+         * @param values The model for the variables in the network.
+         * @return Key of the parent configuration in this node's CPT.
+         */
+        public long key(boolean[] values) {
+                long key = 0;
+                for (int i = 0; i < parents.length; i++) key = (key << 1) | (values[parents[i]] ? 0 : 1);
+                return key;
+        }
+
+        /**
+         * Gets the probability of this node being true given a model of every variable in the network.
+         *
+         * @param values The model for the variables in the network.
+         * @return P(node = true | PARENTS(node)).
+         */
+        public double getTrueProb(boolean[] values) {
+                return (table != null) ? table.getProb(key(values)) : trueProb(index(values));
+        }
+
+        /**
+         * Sets the smoothing of this node's CPT and precomputes its probabilities. May be called again with another
+         * smoothing, as the counts are kept.
+         *
+         * @param s Smoothing.
+         */
+        public void freeze(Smoothing s) {
+                smoothing = s;
+                if (table != null) {
+                        table.freeze(s);
+                        return;
+                }
+                pTrue = pFalse = null;
+                double[] t = new double[probs.length], f = new double[probs.length];
+                for (int i = 0; i < probs.length; i++) {
+                        t[i] = trueProb(i);
+                        f[i] = 1 - t[i];
+                }
+                pTrue = t;
+                pFalse = f;
+        }
+
+        /**
+         * Gets the smoothing of this node's CPT.
+         *
+         * @return Smoothing.
+         */
+        public Smoothing getSmoothing() {
+                return smoothing;
+        }
+
+        /**
+         * Gets the kind of this node's CPT.
+         *
+         * @return Kind of CPT.
+         */
+        public CPTKind getKind() {
+                return (table != null) ? table.kind() : CPTKind.DENSE;
+        }
+
+        /** 
+         * Gets the name of this node.
+         *
+         * @return Name of this node as a String.
+         */
+        public String getName() {
+                return this.name;
+        }
+
+        /**
+         * Returns a string representation of a Node object.
+         *
+         * @param n Node to print.
+         * @return A string representation of a Node object.
+         */
+        public static String printNode(Node n, Node[] bayesNet) {
+                StringBuilder sb = new StringBuilder();
+
+                /* 1: [Name]:                        */
+                sb.append(n.getName());
+                sb.append(":\n");
+                /* 2: [[P1] [P2] ... ]               */
+                for (int i = 0; i < n.parents.length; i++) {
+                        sb.append(bayesNet[n.parents[i]].getName());
+                        if (i < (n.parents.length - 1)) sb.append(" ");
+                        else sb.append("\n");
+                }
+                /* 3: [[v1] [v2] ... ] [probability]
+                 * ...
+                 * N: [[v1] [v2] ... ] [probability] */
+                if (n.table != null) {
+                        String[] pNames = new String[n.parents.length];
+                        for (int i = 0; i < pNames.length; i++) pNames[i] = bayesNet[n.parents[i]].getName();
+                        n.table.print(sb, pNames);
+                        return sb.toString();
+                }
+                boolean[] pTableVals = new boolean[n.parents.length];
+                for (int i = (n.probs.length - 1); i >= 0; i--) {
+                        for (int j = 0; j < n.parents.length; j++) {
+                                sb.append((pTableVals[j]) ? "1" : "0");
+                                sb.append(", ");
+                                if ((i % (1 << (n.parents.length - j - 1))) == 0) {
+                                        pTableVals[j] = !pTableVals[j];
+                                }
+                        }
+                        sb.append(n.trueProb(i));
+                        sb.append("\n");
+                }
+
+                return sb.toString();
+        }
+
+        /** Gets P(true) of an entry of the dense CPT, removing the 1/1 initialisation before smoothing the counts. */
+        private double trueProb(int index) {
+                if (pTrue != null) return pTrue[index];
+                return smoothing.prob(probs[index].num - 1, probs[index].denom - 1, parents.length);
+        }
+
+        /** Calculates the key of a parent configuration from the values of the parents. */
+        private static long parentKey(boolean[] pValues) {
+                long key = 0;
+                for (int i = 0; i < pValues.length; i++) key = (key << 1) | (pValues[i] ? 0 : 1);
+                return key;
+        }
+}
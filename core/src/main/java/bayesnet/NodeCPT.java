@@ -0,0 +1,114 @@
+/* ****************************************************************************************************************** *
+ * Name:        NodeCPT.java
+ * Description: A conditional probability table of a single node which is not a dense table of every configuration.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The conditional probability table of one node, for the kinds of {@link CPTKind CPTKind} which are not dense.
+ * <p>
+ * A configuration of the node's parents is identified by a key built like a dense CPT index, but in a long: the first
+ * parent is the most significant bit and a parent which is false sets its bit. Like {@link CPTable CPTable}, tables
+ * store raw counts and apply {@link Smoothing smoothing} when a probability is calculated, so tables can be merged by
+ * adding them. {@link #freeze(Smoothing) Freezing} a table precomputes its probabilities, until its counts change.
+ * <p>
+ * Tables may be read from multiple threads as long as none is updating or freezing them.
+ *
+ * @see SparseCPT
+ * @see NoisyOrCPT
+ */
+public interface NodeCPT {
+        /**
+         * Gets the kind of this table.
+         *
+         * @return Kind of table.
+         */
+        CPTKind kind();
+
+        /**
+         * Updates the table with an observation of the node and its parents.
+         *
+         * @param key Key of parent configuration.
+         * @param value Value of node.
+         */
+        void update(long key, boolean value);
+
+        /**
+         * Gets the probability of the node being true given a configuration of its parents.
+         *
+         * @param key Key of parent configuration.
+         * @return P(node = true | parent configuration).
+         */
+        double getProb(long key);
+
+        /**
+         * Gets whether the node is certain for some configuration of its parents, i.e. whether
+         * {@link #getProb(long) getProb} is exactly 0 or 1 for some key, so the node's factor is 0 in some models.
+         *
+         * @return True if the node is certain for some parent configuration.
+         */
+        boolean hasCertainConfiguration();
+
+        /**
+         * Sets the smoothing of the table and precomputes its probabilities, so {@link #getProb(long) getProb} does
+         * not divide. Changing the counts of the table discards the precomputed probabilities; until it is frozen
+         * again, they are calculated from the counts with the same smoothing. A new table is smoothed by
+         * {@link Smoothing#DEFAULT Smoothing.DEFAULT}.
+         *
+         * @param s Smoothing.
+         */
+        void freeze(Smoothing s);
+
+        /**
+         * Adds the counts of another table of the same kind, for the same node, to the counts of this table.
+         *
+         * @param t Table to merge into this table.
+         */
+        void add(NodeCPT t);
+
+        /**
+         * Subtracts the counts of another table of the same kind, for the same node, which were counted from a subset
+         * of the observations counted into this table.
+         *
+         * @param t Table to remove from this table.
+         */
+        void subtract(NodeCPT t);
+
+        /**
+         * Creates a copy of this table, with the same smoothing.
+         *
+         * @return Copy of this table.
+         */
+        NodeCPT copy();
+
+        /**
+         * Creates an empty table of the same kind, for the same node, with the same smoothing.
+         *
+         * @return Empty table.
+         */
+        NodeCPT emptyCopy();
+
+        /**
+         * Appends a description of the table to a representation of its node, in the style of
+         * {@link Node#printNode(Node, Node[]) printNode}.
+         *
+         * @param sb Representation of node.
+         * @param parents Names of parents of node.
+         */
+        void print(StringBuilder sb, String[] parents);
+
+        /**
+         * Writes the counts of the table to a model file.
+         *
+         * @param out Model file being written.
+         * @see ModelFile
+         */
+        void write(DataOutput out) throws IOException;
+}
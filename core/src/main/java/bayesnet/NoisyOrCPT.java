@@ -0,0 +1,218 @@
+/* ****************************************************************************************************************** *
+ * Name:        NoisyOrCPT.java
+ * Description: Conditional probability table of a noisy-OR of a node's parents.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A conditional probability table which models a node as a noisy-OR of its parents: each parent which is true
+ * independently fails to make the node true with probability q_j, and the node is true with a leak probability when
+ * no parent makes it true, so
+ * <pre>
+ *      P(node = false | parents) = (1 - leak) * product of q_j over the parents which are true
+ * </pre>
+ * This needs one parameter per parent rather than one per configuration. The leak is estimated from the rows in which
+ * every parent is false, as (true + 1) / (rows + 2) by default. q_j is estimated from the rows in which parent j is
+ * true, as P(node = false | parent j = true) / (1 - leak), with the same smoothing and capped at 1. Both are
+ * {@link Smoothing#estimate(long, long) estimated} by the table's {@link Smoothing smoothing}, and a frozen table
+ * keeps 1 - leak and every q_j, so a probability is a product of at most one factor per parent.
+ *
+ * @see CPTKind#NOISY_OR
+ */
+public class NoisyOrCPT implements NodeCPT {
+        /* Private members */
+        private int parents;                    // Number of parents of node
+        private long[] parentTrue;              // Number of observations of each parent being true
+        private long[] parentTrueNodeFalse;     // Number of observations of each parent being true and node false
+        private long leakNum;                   // Number of observations of node true and every parent false
+        private long leakDenom;                 // Number of observations of every parent false
+        private Smoothing smoothing;            // Smoothing of parameters
+        private double[] inhibit;               // Frozen q_j of each parent, or null
+        private double leak;                    // Frozen leak
+        private double notLeak;                 // Frozen 1 - leak
+
+        /**
+         * Constructor. Creates an empty table.
+         *
+         * @param parents Number of parents of node, at most {@link CPTKind#MAX_PARENTS MAX_PARENTS}.
+         */
+        public NoisyOrCPT(int parents) {
+                this.parents = parents;
+                parentTrue = new long[parents];
+                parentTrueNodeFalse = new long[parents];
+                smoothing = Smoothing.DEFAULT;
+        }
+
+        @Override
+        public CPTKind kind() {
+                return CPTKind.NOISY_OR;
+        }
+
+        @Override
+        public void update(long key, boolean value) {
+                inhibit = null;
+                /* Parents which are true have their bit clear */
+                long active = ~key & mask();
+                if (active == 0) {
+                        leakDenom++;
+                        if (value) leakNum++;
+                        return;
+                }
+                for (; active != 0; active &= active - 1) {
+                        int j = parents - 1 - Long.numberOfTrailingZeros(active);
+                        parentTrue[j]++;
+                        if (!value) parentTrueNodeFalse[j]++;
+                }
+        }
+
+        @Override
+        public double getProb(long key) {
+                if (inhibit != null) {
+                        double pFalse = notLeak;
+                        for (long active = ~key & mask(); active != 0; active &= active - 1) {
+                                pFalse *= inhibit[parents - 1 - Long.numberOfTrailingZeros(active)];
+                        }
+                        return 1 - pFalse;
+                }
+                double leakFalse = 1 - getLeak();
+                double pFalse = leakFalse;
+                for (long active = ~key & mask(); active != 0; active &= active - 1) {
+                        int j = parents - 1 - Long.numberOfTrailingZeros(active);
+                        pFalse *= getInhibit(j, leakFalse);
+                }
+                return 1 - pFalse;
+        }
+
+        @Override
+        public boolean hasCertainConfiguration() {
+                /* P(node = false) is a product of factors of at most 1, so is largest when every parent is false
+                   and smallest when every parent is true                                                      */
+                return getProb(mask()) == 0 || getProb(0) == 1;
+        }
+
+        /**
+         * Gets the probability of the node being true when every parent is false.
+         *
+         * @return Leak probability.
+         */
+        public double getLeak() {
+                return (inhibit != null) ? leak : smoothing.estimate(leakNum, leakDenom);
+        }
+
+        @Override
+        public void freeze(Smoothing s) {
+                smoothing = s;
+                inhibit = null;
+                double[] q = new double[parents];
+                leak = getLeak();
+                notLeak = 1 - leak;
+                for (int j = 0; j < parents; j++) q[j] = getInhibit(j, notLeak);
+                inhibit = q;
+        }
+
+        @Override
+        public void add(NodeCPT t) {
+                NoisyOrCPT n = (NoisyOrCPT)t;
+                inhibit = null;
+                for (int j = 0; j < parents; j++) {
+                        parentTrue[j] += n.parentTrue[j];
+                        parentTrueNodeFalse[j] += n.parentTrueNodeFalse[j];
+                }
+                leakNum += n.leakNum;
+                leakDenom += n.leakDenom;
+        }
+
+        @Override
+        public void subtract(NodeCPT t) {
+                NoisyOrCPT n = (NoisyOrCPT)t;
+                inhibit = null;
+                for (int j = 0; j < parents; j++) {
+                        parentTrue[j] -= n.parentTrue[j];
+                        parentTrueNodeFalse[j] -= n.parentTrueNodeFalse[j];
+                }
+                leakNum -= n.leakNum;
+                leakDenom -= n.leakDenom;
+        }
+
+        @Override
+        public NodeCPT copy() {
+                NoisyOrCPT t = new NoisyOrCPT(parents);
+                t.add(this);
+                t.smoothing = smoothing;
+                if (inhibit != null) {
+                        t.inhibit = inhibit.clone();
+                        t.leak = leak;
+                        t.notLeak = notLeak;
+                }
+                return t;
+        }
+
+        @Override
+        public NodeCPT emptyCopy() {
+                NoisyOrCPT t = new NoisyOrCPT(parents);
+                t.smoothing = smoothing;
+                return t;
+        }
+
+        @Override
+        public void print(StringBuilder sb, String[] parents) {
+                double leakFalse = 1 - getLeak();
+                for (int j = 0; j < parents.length; j++) {
+                        sb.append(parents[j]).append(": ").append(1 - getInhibit(j, leakFalse)).append("\n");
+                }
+                sb.append("leak: ").append(getLeak()).append("\n");
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+                for (int j = 0; j < parents; j++) {
+                        out.writeLong(parentTrue[j]);
+                        out.writeLong(parentTrueNodeFalse[j]);
+                }
+                out.writeLong(leakNum);
+                out.writeLong(leakDenom);
+        }
+
+        /**
+         * Reads a table written by {@link #write(DataOutput) write} from a model file.
+         *
+         * @param buf Model file, positioned at the start of the table.
+         * @param parents Number of parents of node.
+         * @return Table.
+         * @throws IOException If the table is corrupt.
+         */
+        static NoisyOrCPT read(ByteBuffer buf, int parents) throws IOException {
+                NoisyOrCPT t = new NoisyOrCPT(parents);
+                for (int j = 0; j < parents; j++) {
+                        t.parentTrue[j] = buf.getLong();
+                        t.parentTrueNodeFalse[j] = buf.getLong();
+                        if (t.parentTrueNodeFalse[j] < 0 || t.parentTrueNodeFalse[j] > t.parentTrue[j]) {
+                                throw new IOException("Noisy-OR table has invalid counts for parent " + j);
+                        }
+                }
+                t.leakNum = buf.getLong();
+                t.leakDenom = buf.getLong();
+                if (t.leakNum < 0 || t.leakNum > t.leakDenom) throw new IOException("Noisy-OR table has invalid leak");
+                return t;
+        }
+
+        /** Gets q_j, the probability of parent j failing to make the node true. */
+        private double getInhibit(int j, double leakFalse) {
+                if (inhibit != null) return inhibit[j];
+                double pFalse = smoothing.estimate(parentTrueNodeFalse[j], parentTrue[j]);
+                return Math.min(1.0, pFalse / leakFalse);
+        }
+
+        /** Gets the key bits of every parent. */
+        private long mask() {
+                return (1L << parents) - 1;
+        }
+}
@@ -0,0 +1,189 @@
+/* ****************************************************************************************************************** *
+ * Name:        OnlineLearner.java
+ * Description: Incrementally updates a trained bayesian network from a stream of new events.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Incrementally updates the CPTs of a trained bayesian network with new observations, without retraining from the full
+ * history of events.
+ * <p>
+ * Because the CPTs are counts, folding a new event into the network is the same {@link CPTable#update(boolean[])
+ * update} used in training. OnlineLearner owns a private table which is updated with each event, either from an
+ * in-process feed through {@link #update(boolean[]) update} or from a CSV stream through {@link #learn(InputStream)
+ * learn}, and periodically publishes an immutable {@link Snapshot Snapshot} of it. Prediction threads read the latest
+ * snapshot with {@link #getSnapshot() getSnapshot}, which never blocks, so updates do not stall scoring.
+ * <p>
+ * Running {@link main(String[]) main} with a model file, a file of new events and the name of a new model file will
+ * write the updated network to the new model file.
+ *
+ * @see CPTable
+ * @see ModelFile
+ */
+public class OnlineLearner {
+        /* Private members */
+        private static final int CHUNK = 1 << 16;       // Initial size of buffer events are read into
+        private CPTable cpt;                    // Counts being updated; only accessed while holding this object's lock
+        private int publishInterval;            // Number of updates between published snapshots
+        private long rows;                      // Number of updates since construction
+        private volatile Snapshot snapshot;     // Latest published snapshot
+
+        /**
+         * Constructor.
+         *
+         * @param trained CPTs of trained bayesian network, which are copied and not modified.
+         * @param publishInterval Number of updates between automatically published snapshots.
+         */
+        public OnlineLearner(CPTable trained, int publishInterval) {
+                if (publishInterval < 1) throw new IllegalArgumentException("Publish interval must be at least 1");
+                this.cpt = trained.copy();
+                this.publishInterval = publishInterval;
+                publish();
+        }
+
+        /**
+         * Gets the latest published snapshot of the network. Never blocks.
+         *
+         * @return Latest snapshot.
+         */
+        public Snapshot getSnapshot() {
+                return snapshot;
+        }
+
+        /**
+         * Updates the network with an observation of every variable, publishing a snapshot if the publish interval has
+         * been reached.
+         *
+         * @param values The observed model for the variables.
+         */
+        public synchronized void update(boolean[] values) {
+                cpt.update(values);
+                if (++rows % publishInterval == 0) publish();
+        }
+
+        /**
+         * Updates the network with every line of events read from a CSV stream, then publishes a snapshot. The first
+         * line of the stream must be a header naming the columns, which is bound to the network by a {@link Schema
+         * Schema}, so it must have a column for every node and may have others.
+         * <p>
+         * The stream is read in chunks, and the complete lines of each are read by a {@link CsvTokenizer CsvTokenizer}
+         * projected by the schema, as in training. A partial line at the end of a chunk is kept for the next one.
+         *
+         * @param in Stream of events, which is read to the end but not closed.
+         * @return Number of events read.
+         * @throws IOException If the header has no column for a node, or more than one.
+         */
+        public long learn(InputStream in) throws IOException {
+                byte[] data = new byte[CHUNK];
+                byte[] row = new byte[cpt.size()];
+                boolean[] values = new boolean[cpt.size()];
+                Schema schema = null;
+                boolean eof = false;
+                int len = 0;
+                long n = 0;
+
+                while (!eof) {
+                        /* Fill buffer, growing it if it does not hold a whole line */
+                        if (len == data.length) data = Arrays.copyOf(data, 2 * data.length);
+                        int read = in.read(data, len, data.length - len);
+                        if (read < 0) eof = true;
+                        else len += read;
+
+                        /* Read the complete lines, or at the end of the stream every line */
+                        int end = eof ? len : lineEnd(data, len);
+                        if (end == 0) continue;
+                        CsvTokenizer tok = new CsvTokenizer(ByteBuffer.wrap(data, 0, end));
+                        if (schema == null) {
+                                String[] vars = tok.readHeader();
+                                if (vars == null) continue;     // Only blank lines so far
+                                schema = new Schema(cpt, vars, "Event stream");
+                        }
+                        schema.project(tok);
+                        while (tok.next(row)) {
+                                for (int i = 0; i < values.length; i++) values[i] = (row[i] == CsvTokenizer.TRUE);
+                                update(values);
+                                n++;
+                        }
+                        System.arraycopy(data, end, data, 0, len - end);
+                        len -= end;
+                }
+                if (schema == null) return 0;
+                publish();
+
+                return n;
+        }
+
+        /** Gets the offset one past the last newline in a buffer, or 0 if it has none. */
+        private static int lineEnd(byte[] data, int len) {
+                for (int i = len - 1; i >= 0; i--) if (data[i] == '\n') return i + 1;
+                return 0;
+        }
+
+        /**
+         * Publishes a snapshot of the current state of the network, frozen under the smoothing of the trained table.
+         *
+         * @return The published snapshot.
+         */
+        public synchronized Snapshot publish() {
+                CPTable copy = cpt.copy();
+                copy.freeze(copy.getSmoothing());
+                snapshot = new Snapshot(copy, new LogTable(copy, new MarkovBlanket(copy)), rows);
+                return snapshot;
+        }
+
+        /**
+         * An immutable snapshot of the network, ready for scoring. Neither table may be modified.
+         */
+        public static class Snapshot {
+                /** CPTs of network at the time of the snapshot */
+                public final CPTable cpt;
+                /** Log-space CPTs of network at the time of the snapshot */
+                public final LogTable logTable;
+                /** Number of updates applied since the learner was constructed */
+                public final long rows;
+
+                Snapshot(CPTable cpt, LogTable logTable, long rows) {
+                        this.cpt = cpt;
+                        this.logTable = logTable;
+                        this.rows = rows;
+                }
+        }
+
+        /**
+         * Gets a model file, a file of new events and the name of a new model file from command line args, and writes
+         * the network updated with the new events to the new model file.
+         */
+        public static void main(String[] args) throws IOException {
+                if (args.length != 3) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                OnlineLearner learner = new OnlineLearner(ModelFile.read(new File(args[0])), Integer.MAX_VALUE);
+                InputStream in = new FileInputStream(args[1]);
+                try {
+                        learner.learn(in);
+                } finally {
+                        in.close();
+                }
+                ModelFile.write(learner.getSnapshot().cpt, new File(args[2]));
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.err). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: OnlineLearner [model file] [events file] [new model file]\n" +
+                          "             model file     - The binary model file of a trained network\n" +
+                          "             events file    - The file which contains the new events to update the " +
+                                                        "network with\n" +
+                          "             new model file - The binary model file to write the updated network to");
+        }
+}
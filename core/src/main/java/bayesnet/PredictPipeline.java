@@ -0,0 +1,209 @@
+/* ****************************************************************************************************************** *
+ * Name:        PredictPipeline.java
+ * Description: Classifies test data with a pipeline of a reader, a pool of workers and an ordered writer.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Three stage pipeline for classifying test data with {@link BayesNetPredict BayesNetPredict}.
+ * <ol>
+ *      <li>A reader thread splits the test data into batches of lines, by byte range, and queues them.</li>
+ *      <li>A pool of workers takes batches from the queue, tokenizes the byte range with their own
+ *          {@link CsvTokenizer CsvTokenizer}, projected by the test data's {@link Schema Schema}, and classifies each
+ *          line against the trained network, which is not modified while classifying, and queues the completed
+ *          batch.</li>
+ *      <li>The calling thread takes completed batches and writes them out in the order they were read.</li>
+ * </ol>
+ * <p>
+ * The number of batches in the pipeline at once is bounded by both queue depths plus the number of workers, so memory
+ * use does not depend on the size of the test data. The {@link LineBatch LineBatch} of each written batch is reused
+ * for a later one. The output is identical to classifying one line at a time.
+ *
+ * @see BayesNetPredict
+ */
+public class PredictPipeline {
+        /* Private members */
+        private BayesNetPredict bNetPred;       // Classifies lines of test data
+        private int workers;                    // Number of worker threads
+        private int batchSize;                  // Number of lines per batch
+        private BlockingQueue<Batch> read;      // Batches waiting to be classified
+        private BlockingQueue<Batch> done;      // Classified batches waiting to be written, in any order
+        private Semaphore inFlight;             // Limits the number of batches read but not yet written
+        private Queue<LineBatch> free;          // Line buffers of batches which have been written
+
+        /**
+         * Constructor.
+         *
+         * @param bNetPred Predictor which has read the test file header, used to classify lines.
+         * @param workers Number of worker threads.
+         * @param batchSize Number of lines per batch.
+         * @param queueDepth Number of batches each queue can hold.
+         */
+        public PredictPipeline(BayesNetPredict bNetPred, int workers, int batchSize, int queueDepth) {
+                this.bNetPred = bNetPred;
+                this.workers = workers;
+                this.batchSize = batchSize;
+                read = new ArrayBlockingQueue<Batch>(queueDepth);
+                done = new ArrayBlockingQueue<Batch>(queueDepth);
+                inFlight = new Semaphore(2 * queueDepth + workers);
+                free = new ConcurrentLinkedQueue<LineBatch>();
+        }
+
+        /**
+         * Classifies every remaining line of the test data and writes them to a writer in their original order.
+         *
+         * @param tok Tokenizer positioned at the first line of test data, used to find the batches.
+         * @param w Writer for the classified lines.
+         */
+        public void run(final CsvTokenizer tok, PredictionWriter w) throws IOException {
+                ExecutorService pool = Executors.newFixedThreadPool(workers + 1);
+                try {
+                        /* Stage 1: Reader */
+                        pool.submit(new Runnable() {
+                                public void run() {
+                                        readBatches(tok);
+                                }
+                        });
+
+                        /* Stage 2: Workers */
+                        for (int i = 0; i < workers; i++) {
+                                pool.submit(new Runnable() {
+                                        public void run() {
+                                                classifyBatches();
+                                        }
+                                });
+                        }
+
+                        /* Stage 3: Ordered writer */
+                        writeBatches(w);
+                } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while classifying test data");
+                } finally {
+                        pool.shutdownNow();
+                }
+        }
+
+        /**
+         * Splits the test data into batches of lines onto the read queue. The last batch is followed by an end batch,
+         * which is also passed to the writer so it knows how many batches to expect.
+         */
+        private void readBatches(CsvTokenizer tok) {
+                int seq = 0;
+                try {
+                        long from = tok.position();
+                        int n;
+                        while (true) {
+                                inFlight.acquire();
+                                if ((n = tok.skip(batchSize)) == 0) break;
+                                read.put(new Batch(seq++, from, tok.position(), n));
+                                from = tok.position();
+                        }
+                        Batch end = new Batch(seq, 0, 0, -1);
+                        read.put(end);
+                        done.put(end);
+                } catch (InterruptedException e) {
+                        /* Pipeline shut down */
+                } catch (Throwable e) {
+                        fail(seq, e);
+                }
+        }
+
+        /** Classifies batches from the read queue onto the done queue until the end batch is taken. */
+        private void classifyBatches() {
+                byte[] row = new byte[bNetPred.getNetworkSize()];
+                boolean[] values = new boolean[bNetPred.getNetworkSize()];
+                RowBlock block = new RowBlock(bNetPred.getNetworkSize());
+                int[] lineOf = new int[RowBlock.ROWS];
+                double[] blockOdds = new double[RowBlock.ROWS];
+                CsvTokenizer tok = null;
+                Batch b = null;
+                try {
+                        tok = new CsvTokenizer(bNetPred.getTestFile());
+                        bNetPred.getSchema().project(tok);
+                        while ((b = read.take()).n >= 0) {
+                                tok.seek(b.from, b.to);
+                                b.lines = free.poll();
+                                if (b.lines == null) b.lines = new LineBatch();
+                                for (int i = 0, k; i < b.n; i += k) {
+                                        k = bNetPred.classify(tok, block, lineOf, blockOdds, b.lines, b.n - i, row,
+                                                              values);
+                                        if (k == 0) break;
+                                }
+                                done.put(b);
+                        }
+                        read.put(b);    // Leave end batch for remaining workers
+                } catch (InterruptedException e) {
+                        /* Pipeline shut down */
+                } catch (Throwable e) {
+                        fail((b == null) ? -1 : b.seq, e);
+                } finally {
+                        try {
+                                if (tok != null) tok.close();
+                        } catch (IOException e) {
+                                /* Nothing left to read */
+                        }
+                }
+        }
+
+        /** Writes classified batches in sequence order until the end batch is reached. */
+        private void writeBatches(PredictionWriter w) throws IOException, InterruptedException {
+                HashMap<Integer, Batch> pending = new HashMap<Integer, Batch>();
+                int next = 0, end = -1;
+                Batch b;
+                while (next != end) {
+                        b = done.take();
+                        if (b.error != null) {
+                                throw new IOException("Error classifying batch " + b.seq + " of test data", b.error);
+                        }
+                        if (b.n < 0) {
+                                end = b.seq;
+                                continue;
+                        }
+                        pending.put(b.seq, b);
+                        while ((b = pending.remove(next)) != null) {
+                                w.write(b.lines);
+                                b.lines.clear();
+                                free.offer(b.lines);
+                                inFlight.release();
+                                next++;
+                        }
+                }
+        }
+
+        /** Passes an error in the reader or a worker to the writer, which fails the pipeline. */
+        private void fail(int seq, Throwable e) {
+                Batch b = new Batch(seq, 0, 0, -1);
+                b.error = e;
+                /* The writer is always taking from the done queue, so this only blocks briefly */
+                try {
+                        done.put(b);
+                } catch (InterruptedException ie) {
+                        /* Pipeline shut down */
+                }
+        }
+
+        /** A batch of lines of test data, identified by its position in the test data. */
+        private static class Batch {
+                final int seq;                  // Sequence number of batch
+                final long from;                // Offset of first line of batch in test data
+                final long to;                  // Offset one past the end of the last line of batch
+                final int n;                    // Number of lines in batch, or -1 for the end batch
+                LineBatch lines;                // Classified lines of batch
+                Throwable error;                // Error which occurred reading or classifying this batch
+
+                Batch(int seq, long from, long to, int n) {
+                        this.seq = seq;
+                        this.from = from;
+                        this.to = to;
+                        this.n = n;
+                }
+        }
+}
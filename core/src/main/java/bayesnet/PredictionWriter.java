@@ -0,0 +1,202 @@
+/* ****************************************************************************************************************** *
+ * Name:        PredictionWriter.java
+ * Description: Writes classified lines of test data as bytes through a reusable direct buffer.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stage of classification, which writes the predictions for a {@link LineBatch LineBatch} of test data to a
+ * channel in one of three {@link Format formats}:
+ * <ul>
+ *      <li>{@link Format#ROW ROW}        - each line of test data with the "?" of its unknown variable replaced by the
+ *          prediction, 0 or 1,</li>
+ *      <li>{@link Format#PREDICTION PREDICTION} - the prediction only,</li>
+ *      <li>{@link Format#POSTERIOR POSTERIOR}  - the prediction and the posterior probability of the unknown variable
+ *          being true, to 6 decimal places.</li>
+ * </ul>
+ * <p>
+ * Lines are never decoded into Strings: the bytes of each line are copied from the batch into a direct buffer, with
+ * the byte of the unknown variable, whose position was found when the line was tokenized, patched on the way. The
+ * buffer is written to the channel whenever it fills, so memory use does not depend on the size of the test data.
+ */
+public class PredictionWriter implements Closeable {
+        /** What is written for each line of test data */
+        public enum Format {
+                /** The line, with its unknown variable replaced by the prediction */
+                ROW("row"),
+                /** The prediction only */
+                PREDICTION("prediction"),
+                /** The prediction and the posterior probability of the unknown variable being true */
+                POSTERIOR("posterior");
+
+                /* Private members */
+                private String label;   // Label of format on command line
+
+                /** Constructor */
+                Format(String label) {
+                        this.label = label;
+                }
+
+                /**
+                 * Gets the label of this format on the command line.
+                 *
+                 * @return Label.
+                 */
+                public String getLabel() {
+                        return label;
+                }
+
+                /**
+                 * Gets the format with a label.
+                 *
+                 * @param label Label of format.
+                 * @return Format with label.
+                 * @throws IllegalArgumentException If no format has the label.
+                 */
+                public static Format forLabel(String label) {
+                        for (Format f : values()) if (f.label.equals(label)) return f;
+                        throw new IllegalArgumentException("Unknown output format " + label);
+                }
+        }
+
+        /** Path which {@link #open(String, Format) open} takes to mean standard output */
+        public static final String STDOUT = "-";
+
+        /* Private members */
+        private static final int BUFFER = 1 << 16;      // Size of direct buffer
+        private WritableByteChannel channel;    // Channel written to
+        private boolean closeChannel;           // Whether closing this writer closes the channel
+        private Format format;                  // What is written for each line
+        private ByteBuffer buf;                 // Bytes waiting to be written to the channel
+
+        /**
+         * Constructor.
+         *
+         * @param channel Channel to write to, which is closed when this writer is.
+         * @param format What to write for each line of test data.
+         */
+        public PredictionWriter(WritableByteChannel channel, Format format) {
+                this(channel, format, true);
+        }
+
+        /** Constructor */
+        private PredictionWriter(WritableByteChannel channel, Format format, boolean closeChannel) {
+                this.channel = channel;
+                this.format = format;
+                this.closeChannel = closeChannel;
+                this.buf = ByteBuffer.allocateDirect(BUFFER);
+        }
+
+        /**
+         * Opens a writer to a file, or to standard output.
+         *
+         * @param path Path of file to write, which is replaced if it exists, or {@link #STDOUT STDOUT}.
+         * @param format What to write for each line of test data.
+         * @return Writer, which leaves standard output open when it is closed.
+         */
+        public static PredictionWriter open(String path, Format format) throws IOException {
+                if (path.equals(STDOUT)) {
+                        return new PredictionWriter(new FileOutputStream(FileDescriptor.out).getChannel(), format,
+                                                    false);
+                }
+                return new PredictionWriter(new FileOutputStream(path).getChannel(), format, true);
+        }
+
+        /**
+         * Writes the header line: the header of the test data for {@link Format#ROW ROW}, otherwise the names of the
+         * columns written.
+         *
+         * @param tok Tokenizer which has just read the header line of the test data.
+         */
+        public void writeHeader(CsvTokenizer tok) throws IOException {
+                byte[] header;
+                if (format == Format.ROW) {
+                        header = new byte[tok.lineLength()];
+                        tok.getLine(header);
+                } else {
+                        header = ((format == Format.PREDICTION) ? "prediction" : "prediction,posterior").getBytes();
+                }
+                put(header, 0, header.length);
+                put((byte)'\n');
+        }
+
+        /**
+         * Writes every line of a batch, in order.
+         *
+         * @param b Batch of classified lines.
+         */
+        public void write(LineBatch b) throws IOException {
+                for (int i = 0; i < b.size(); i++) {
+                        double logOdds = b.logOdds[i];
+                        byte prediction = (logOdds >= 0) ? (byte)'1' : (byte)'0';
+                        if (format == Format.ROW) {
+                                int q = b.query[i];
+                                put(b.data, b.start[i], q - b.start[i]);
+                                put(prediction);
+                                put(b.data, q + 1, b.start[i + 1] - q - 1);
+                        } else {
+                                put(prediction);
+                                if (format == Format.POSTERIOR) {
+                                        put((byte)',');
+                                        putProbability(LogTable.posterior(logOdds));
+                                }
+                        }
+                        put((byte)'\n');
+                }
+        }
+
+        /** Writes every buffered byte to the channel. */
+        public void flush() throws IOException {
+                buf.flip();
+                while (buf.hasRemaining()) channel.write(buf);
+                buf.clear();
+        }
+
+        /** Drops every buffered byte without writing it, e.g. the partial output of a failed request. */
+        public void discard() {
+                buf.clear();
+        }
+
+        /** Flushes the writer and closes the channel, unless it is standard output. */
+        public void close() throws IOException {
+                try {
+                        flush();
+                } finally {
+                        if (closeChannel) channel.close();
+                }
+        }
+
+        /** Buffers a byte. */
+        private void put(byte b) throws IOException {
+                if (!buf.hasRemaining()) flush();
+                buf.put(b);
+        }
+
+        /** Buffers a range of bytes, flushing as the buffer fills. */
+        private void put(byte[] src, int off, int len) throws IOException {
+                while (len > 0) {
+                        if (!buf.hasRemaining()) flush();
+                        int n = Math.min(len, buf.remaining());
+                        buf.put(src, off, n);
+                        off += n;
+                        len -= n;
+                }
+        }
+
+        /** Buffers a probability as a decimal with 6 places, without formatting it into a String. */
+        private void putProbability(double p) throws IOException {
+                long micros = Math.round(p * 1000000);
+                put((micros >= 1000000) ? (byte)'1' : (byte)'0');
+                put((byte)'.');
+                if (micros >= 1000000) micros = 0;
+                for (long d = 100000; d > 0; d /= 10) put((byte)('0' + (micros / d) % 10));
+        }
+}
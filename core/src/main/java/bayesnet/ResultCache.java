@@ -0,0 +1,274 @@
+/* ****************************************************************************************************************** *
+ * Name:        ResultCache.java
+ * Description: Bounded concurrent LRU cache of scores keyed by packed bit signatures of evidence.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of scores, such as the log odds of a query variable, keyed by a signature of the evidence which
+ * determines them: an array of longs, e.g. the query's index followed by the values of the variables in its markov
+ * blanket packed one bit each. Lines of test data which agree on those variables have the same score whatever the
+ * rest of the line holds, so a repeated pattern is answered with one lookup.
+ * <p>
+ * Keys are passed as a range of a caller's array and are only copied when inserted, so looking up a key allocates
+ * nothing. The cache is split into segments by the hash of the key, each an independent least recently used cache
+ * of its share of the capacity with its own lock, so threads looking up different keys rarely contend. Each segment
+ * keeps its entries in primitive arrays: a chained hash table and a doubly linked list in order of use, from which the
+ * least recently used entry is evicted when the segment is full.
+ * <p>
+ * Hits, misses and evictions are counted, and hits and misses are also recorded into a {@link Metrics Metrics} if one
+ * is given.
+ *
+ * @see CompiledScorer
+ */
+public class ResultCache {
+        /* Private members */
+        private static final int MAX_SEGMENTS = 16;     // Most segments; fewer for tiny capacities
+        private Segment[] segments;             // Segments, chosen by hash of key
+        private int capacity;                   // Most entries held
+        private Metrics metrics;                // Records hits and misses, or null
+        private LongAdder hits;                 // Lookups which found their key
+        private LongAdder misses;               // Lookups which did not find their key
+        private LongAdder evictions;            // Entries evicted to make room
+
+        /**
+         * Constructor.
+         *
+         * @param capacity Most entries held, at least 1.
+         * @param metrics Metrics to record hits and misses into as well, or null.
+         */
+        public ResultCache(int capacity, Metrics metrics) {
+                if (capacity < 1) throw new IllegalArgumentException("Cache capacity must be at least 1");
+                int n = Math.min(MAX_SEGMENTS, Integer.highestOneBit(capacity));
+                segments = new Segment[n];
+                for (int i = 0; i < n; i++) segments[i] = new Segment(capacity / n + ((i < capacity % n) ? 1 : 0));
+                this.capacity = capacity;
+                this.metrics = metrics;
+                hits = new LongAdder();
+                misses = new LongAdder();
+                evictions = new LongAdder();
+        }
+
+        /**
+         * Looks up the score of a key, marking it as most recently used.
+         *
+         * @param key Array holding key.
+         * @param off Start of key in array.
+         * @param len Length of key.
+         * @param out Array to store score in if it is found.
+         * @param outOff Index in out to store score at.
+         * @return True if the key was found.
+         */
+        public boolean get(long[] key, int off, int len, double[] out, int outOff) {
+                int hash = hash(key, off, len);
+                boolean found = segments[hash & (segments.length - 1)].get(key, off, len, hash, out, outOff);
+                if (found) hits.increment();
+                else misses.increment();
+                if (metrics != null) metrics.cached(found ? 1 : 0, found ? 0 : 1);
+                return found;
+        }
+
+        /**
+         * Stores the score of a key as most recently used, evicting the least recently used entry of its segment if
+         * the segment is full.
+         *
+         * @param key Array holding key.
+         * @param off Start of key in array.
+         * @param len Length of key.
+         * @param score Score of key.
+         */
+        public void put(long[] key, int off, int len, double score) {
+                int hash = hash(key, off, len);
+                if (segments[hash & (segments.length - 1)].put(key, off, len, hash, score)) evictions.increment();
+        }
+
+        /**
+         * Counts lookups which a caller answered itself without looking them up, such as a key repeated within a
+         * block of rows, as hits.
+         *
+         * @param n Number of lookups.
+         */
+        void hits(int n) {
+                hits.add(n);
+                if (metrics != null) metrics.cached(n, 0);
+        }
+
+        /**
+         * Gets the most entries the cache holds.
+         *
+         * @return Capacity.
+         */
+        public int capacity() {
+                return capacity;
+        }
+
+        /**
+         * Gets the number of entries in the cache.
+         *
+         * @return Number of entries.
+         */
+        public int size() {
+                int size = 0;
+                for (Segment s : segments) {
+                        synchronized (s) {
+                                size += s.size;
+                        }
+                }
+                return size;
+        }
+
+        /** @return Number of lookups which found their key. */
+        public long getHits() {
+                return hits.sum();
+        }
+
+        /** @return Number of lookups which did not find their key. */
+        public long getMisses() {
+                return misses.sum();
+        }
+
+        /** @return Number of entries evicted to make room for others. */
+        public long getEvictions() {
+                return evictions.sum();
+        }
+
+        /** @return Fraction of lookups which found their key, or 0 if there have been none. */
+        public double getHitRate() {
+                long h = getHits(), n = h + getMisses();
+                return (n == 0) ? 0 : h / (double)n;
+        }
+
+        /** Returns a summary of the statistics of the cache. */
+        @Override
+        public String toString() {
+                return String.format("ResultCache: %d/%d entries, %d hits, %d misses, %d evictions, hit rate %.4f",
+                                     size(), capacity, getHits(), getMisses(), getEvictions(), getHitRate());
+        }
+
+        /** Hashes a key, mixing the bits so that segments and buckets are both taken from well mixed bits. */
+        static int hash(long[] key, int off, int len) {
+                long h = len;
+                for (int i = off, end = off + len; i < end; i++) h = (h + key[i]) * 0x9E3779B97F4A7C15L;
+                return (int)(h ^ (h >>> 32));
+        }
+
+        /**
+         * An LRU cache of part of the capacity, guarded by its own lock. Entry i has key keys[i], and is linked into
+         * the chain of its bucket by chain[] and into the list in order of use by newer[] and older[].
+         */
+        private static class Segment {
+                final int[] buckets;            // First entry of each bucket's chain, or -1
+                final int[] chain;              // Next entry in the same bucket, or -1
+                final int[] hashes;             // Hash of each entry's key
+                final long[][] keys;            // Key of each entry
+                final double[] scores;          // Score of each entry
+                final int[] newer;              // Entry used next after each entry, or -1 for the newest
+                final int[] older;              // Entry used last before each entry, or -1 for the oldest
+                int newest = -1;                // Most recently used entry
+                int oldest = -1;                // Least recently used entry
+                int size;                       // Number of entries
+
+                Segment(int capacity) {
+                        buckets = new int[Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1)];
+                        Arrays.fill(buckets, -1);
+                        chain = new int[capacity];
+                        hashes = new int[capacity];
+                        keys = new long[capacity][];
+                        scores = new double[capacity];
+                        newer = new int[capacity];
+                        older = new int[capacity];
+                }
+
+                /** Looks up a key, storing its score and marking it used if found. */
+                synchronized boolean get(long[] key, int off, int len, int hash, double[] out, int outOff) {
+                        int e = find(key, off, len, hash);
+                        if (e < 0) return false;
+                        out[outOff] = scores[e];
+                        touch(e);
+                        return true;
+                }
+
+                /** Stores the score of a key, returning true if an entry was evicted to make room. */
+                synchronized boolean put(long[] key, int off, int len, int hash, double score) {
+                        int e = find(key, off, len, hash);
+                        if (e >= 0) {
+                                scores[e] = score;
+                                touch(e);
+                                return false;
+                        }
+                        boolean evicted = (size == chain.length);
+                        if (evicted) {
+                                e = oldest;
+                                unlink(e);
+                                unchain(e);
+                        } else {
+                                e = size++;
+                        }
+                        if (keys[e] == null || keys[e].length != len) keys[e] = new long[len];
+                        System.arraycopy(key, off, keys[e], 0, len);
+                        hashes[e] = hash;
+                        scores[e] = score;
+                        int b = (hash >>> 8) & (buckets.length - 1);
+                        chain[e] = buckets[b];
+                        buckets[b] = e;
+                        older[e] = newest;
+                        newer[e] = -1;
+                        if (newest >= 0) newer[newest] = e;
+                        newest = e;
+                        if (oldest < 0) oldest = e;
+                        return evicted;
+                }
+
+                /** Finds the entry of a key, or returns -1. */
+                private int find(long[] key, int off, int len, int hash) {
+                        for (int e = buckets[(hash >>> 8) & (buckets.length - 1)]; e >= 0; e = chain[e]) {
+                                if (hashes[e] == hash && equal(keys[e], key, off, len)) return e;
+                        }
+                        return -1;
+                }
+
+                /** Moves an entry to the newest end of the list. */
+                private void touch(int e) {
+                        if (e == newest) return;
+                        unlink(e);
+                        older[e] = newest;
+                        newer[e] = -1;
+                        newer[newest] = e;
+                        newest = e;
+                }
+
+                /** Removes an entry from the list in order of use. */
+                private void unlink(int e) {
+                        if (older[e] >= 0) newer[older[e]] = newer[e];
+                        else oldest = newer[e];
+                        if (newer[e] >= 0) older[newer[e]] = older[e];
+                        else newest = older[e];
+                }
+
+                /** Removes an entry from the chain of its bucket. */
+                private void unchain(int e) {
+                        int b = (hashes[e] >>> 8) & (buckets.length - 1);
+                        if (buckets[b] == e) {
+                                buckets[b] = chain[e];
+                                return;
+                        }
+                        int p = buckets[b];
+                        while (chain[p] != e) p = chain[p];
+                        chain[p] = chain[e];
+                }
+
+                /** Compares a stored key to a range of an array. */
+                private static boolean equal(long[] stored, long[] key, int off, int len) {
+                        if (stored.length != len) return false;
+                        for (int i = 0; i < len; i++) if (stored[i] != key[off + i]) return false;
+                        return true;
+                }
+        }
+}
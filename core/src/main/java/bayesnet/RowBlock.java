@@ -0,0 +1,97 @@
+/* ****************************************************************************************************************** *
+ * Name:        RowBlock.java
+ * Description: Columnar block of rows of binary data, with each column packed into a bitset.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.Arrays;
+
+/**
+ * A block of up to {@link #ROWS ROWS} rows of data, stored by column. Each column is a bitset of {@link #WORDS WORDS}
+ * longs in which bit (r % 64) of word (r / 64) is set if the cell of row r is true; false and unknown cells are clear.
+ * <p>
+ * Compared with a boolean or byte per cell, a block uses one bit per cell, keeps each column contiguous, and lets
+ * the values of a column for 64 rows be combined with a single word-wide operation, which is what
+ * {@link CompiledScorer#logOdds(int, RowBlock, double[]) CompiledScorer} uses to score a whole block at once.
+ */
+public class RowBlock {
+        /** Maximum number of rows in a block */
+        public static final int ROWS = 4096;
+
+        /** Number of words in each column */
+        public static final int WORDS = ROWS / 64;
+
+        /* Package Private members */
+        long[] bits;                            // Column c is words [c * WORDS, (c + 1) * WORDS)
+
+        /* Private members */
+        private int columns;                    // Number of columns
+        private int size;                       // Number of rows in block
+
+        /**
+         * Constructor. Creates an empty block.
+         *
+         * @param columns Number of columns in each row.
+         */
+        public RowBlock(int columns) {
+                this.columns = columns;
+                this.bits = new long[columns * WORDS];
+        }
+
+        /**
+         * Appends a row to the block.
+         *
+         * @param row Cells of a row of data, as decoded by {@link CsvTokenizer CsvTokenizer}.
+         * @return Index of the row in the block.
+         */
+        public int add(byte[] row) {
+                if (size == ROWS) throw new IllegalStateException("Block is full");
+                int word = size >>> 6;
+                long bit = 1L << size;
+                for (int c = 0; c < columns; c++) {
+                        if (row[c] == CsvTokenizer.TRUE) bits[c * WORDS + word] |= bit;
+                }
+                return size++;
+        }
+
+        /**
+         * Gets whether the cell of a row in a column is true.
+         *
+         * @param row Index of row in block.
+         * @param column Column of cell.
+         * @return True if the cell is true.
+         */
+        public boolean get(int row, int column) {
+                return (bits[column * WORDS + (row >>> 6)] & (1L << row)) != 0;
+        }
+
+        /** Removes every row from the block. */
+        public void clear() {
+                if (size == 0) return;
+                int words = ((size - 1) >>> 6) + 1;
+                for (int c = 0; c < columns; c++) Arrays.fill(bits, c * WORDS, c * WORDS + words, 0);
+                size = 0;
+        }
+
+        /**
+         * Gets the number of rows in the block.
+         *
+         * @return Number of rows.
+         */
+        public int size() {
+                return size;
+        }
+
+        /**
+         * Gets the number of columns in each row.
+         *
+         * @return Number of columns.
+         */
+        public int columns() {
+                return columns;
+        }
+}
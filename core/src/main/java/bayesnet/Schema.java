@@ -0,0 +1,130 @@
+/* ****************************************************************************************************************** *
+ * Name:        Schema.java
+ * Description: Binding of the header of a CSV file to the nodes of a bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Binds the header of an events or test data file to the nodes of a bayesian network by name, once, so every reader
+ * of the file shares one column mapping instead of building its own.
+ * <p>
+ * The header is validated as it is bound: every node must have exactly one column, and all of the nodes without one
+ * are reported together. Columns which are not nodes of the network are allowed, so wide feature exports can be read
+ * as they are, and are counted by {@link #getExtraColumns() getExtraColumns}.
+ * <p>
+ * A schema {@link #project(CsvTokenizer) projects} the lines of its file: a tokenizer decodes the cell of each node
+ * straight into the node's slot of a row buffer with one entry per node, in network order, skips the other columns
+ * without decoding them, and stops at the last column a node is in. Training and prediction both read rows in this
+ * layout, whatever the order of the columns in the file.
+ *
+ * @see CsvTokenizer#setProjection(int[])
+ */
+public class Schema {
+        /* Private members */
+        private String[] header;                // Name of each column
+        private int[] columnOf;                 // Column of each node in network
+        private int[] projection;               // Node of each column, or -1 if the column is not in network
+        private int extra;                      // Number of columns which are not nodes of network
+
+        /**
+         * Constructor. Binds a header to the nodes of a network.
+         *
+         * @param structure CPTs of network, of which only the names of the nodes are used.
+         * @param header Cells of header line.
+         * @param source Name of the file or request the header is from, for error messages.
+         * @throws IOException If a node has no column, or more than one.
+         */
+        public Schema(CPTable structure, String[] header, String source) throws IOException {
+                HashMap<String, Integer> nodes = new HashMap<String, Integer>();
+                for (int i = 0; i < structure.size(); i++) nodes.put(structure.getName(i), i);
+                this.header = header;
+                columnOf = new int[structure.size()];
+                Arrays.fill(columnOf, -1);
+                projection = new int[header.length];
+                for (int c = 0; c < header.length; c++) {
+                        Integer node = nodes.get(header[c]);
+                        if (node == null) {
+                                projection[c] = -1;
+                                extra++;
+                                continue;
+                        }
+                        if (columnOf[node] >= 0) {
+                                throw new IOException("Node " + header[c] + " has more than one column in " + source);
+                        }
+                        columnOf[node] = c;
+                        projection[c] = node;
+                }
+
+                /* Report every missing node at once */
+                StringBuilder missing = new StringBuilder();
+                for (int i = 0; i < columnOf.length; i++) {
+                        if (columnOf[i] >= 0) continue;
+                        missing.append((missing.length() == 0) ? "" : ", ").append(structure.getName(i));
+                }
+                if (missing.length() > 0) throw new IOException(source + " has no column for node(s) " + missing);
+        }
+
+        /**
+         * Gets the number of columns in the header.
+         *
+         * @return Number of columns.
+         */
+        public int getColumns() {
+                return header.length;
+        }
+
+        /**
+         * Gets the number of nodes in the network, i.e. the length of a projected row.
+         *
+         * @return Number of nodes.
+         */
+        public int getNodes() {
+                return columnOf.length;
+        }
+
+        /**
+         * Gets the column of a node.
+         *
+         * @param node Index of node in network.
+         * @return Column of node.
+         */
+        public int getColumn(int node) {
+                return columnOf[node];
+        }
+
+        /**
+         * Gets the node of a column.
+         *
+         * @param column Column in header.
+         * @return Index of node in network, or -1 if the column is not a node of the network.
+         */
+        public int getNode(int column) {
+                return projection[column];
+        }
+
+        /**
+         * Gets the number of columns which are not nodes of the network, and are skipped when reading.
+         *
+         * @return Number of extra columns.
+         */
+        public int getExtraColumns() {
+                return extra;
+        }
+
+        /**
+         * Makes a tokenizer decode the lines of this schema's file into rows with one cell per node, in network
+         * order.
+         *
+         * @param tok Tokenizer of file, or of part of it.
+         */
+        public void project(CsvTokenizer tok) {
+                tok.setProjection(projection);
+        }
+}
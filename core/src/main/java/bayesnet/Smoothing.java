@@ -0,0 +1,219 @@
+/* ****************************************************************************************************************** *
+ * Name:        Smoothing.java
+ * Description: How the conditional probabilities of a bayesian network are estimated from its counts.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/**
+ * How the probabilities of a bayesian network are estimated from the counts of its CPTs, by adding pseudo counts for
+ * each value of a node to the observed counts of every parent configuration:
+ * <pre>
+ *      P(node = true | configuration) = (true + a) / (observations + a + b)
+ * </pre>
+ * where a and b are the pseudo counts of the node being true and false. The {@link Method methods} are:
+ * <ul>
+ *      <li>{@link Method#FRACTION FRACTION}  - a = 1, b = 0, i.e. counts initialised as the fraction 1/1, as
+ *          {@link Node Node} has always done. This is the default.</li>
+ *      <li>{@link Method#LAPLACE LAPLACE}   - a = b = 1.</li>
+ *      <li>{@link Method#LIDSTONE LIDSTONE}  - a = b = alpha, for a given alpha.</li>
+ *      <li>{@link Method#DIRICHLET DIRICHLET} - a = b = ess / (2 * 2^k) for a node with k parents, i.e. a dirichlet
+ *          prior with a given equivalent sample size (ess) spread evenly over every entry of the CPT.</li>
+ * </ul>
+ * <p>
+ * Sparse and noisy-OR CPTs also estimate single probabilities which are not entries of a CPT: the probability of a
+ * sparse node for configurations which have not been observed, and the leak and parent parameters of a noisy-OR node.
+ * These are {@link #estimate(long, long) estimated} with a = b = 1 for FRACTION and LAPLACE, alpha for LIDSTONE, and
+ * ess / 2 for DIRICHLET.
+ * <p>
+ * Since CPTs keep the raw counts, a trained network can be {@link CPTable#freeze(Smoothing) frozen} under any
+ * smoothing, and again under another, without reading its training data again.
+ *
+ * @see CPTable#freeze(Smoothing)
+ */
+public final class Smoothing {
+        /** Ways of choosing the pseudo counts */
+        public enum Method {
+                /** Counts initialised as 1/1 */
+                FRACTION("fraction"),
+                /** One pseudo count for each value */
+                LAPLACE("laplace"),
+                /** Alpha pseudo counts for each value */
+                LIDSTONE("lidstone"),
+                /** Dirichlet prior with an equivalent sample size spread over the CPT */
+                DIRICHLET("dirichlet");
+
+                /* Private members */
+                private String label;   // Label of method on command line
+
+                /** Constructor */
+                Method(String label) {
+                        this.label = label;
+                }
+
+                /**
+                 * Gets the label of this method on the command line.
+                 *
+                 * @return Label.
+                 */
+                public String getLabel() {
+                        return label;
+                }
+        }
+
+        /** Smoothing of counts initialised as 1/1, used unless another is chosen */
+        public static final Smoothing DEFAULT = new Smoothing(Method.FRACTION, 1);
+
+        /* Private members */
+        private final Method method;            // Way of choosing pseudo counts
+        private final double weight;            // Alpha for LIDSTONE, equivalent sample size for DIRICHLET, else 1
+
+        /** Constructor */
+        private Smoothing(Method method, double weight) {
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                        throw new IllegalArgumentException("Smoothing " + method.getLabel() + " needs a positive " +
+                                                           "weight, not " + weight);
+                }
+                this.method = method;
+                this.weight = weight;
+        }
+
+        /**
+         * Gets Laplace smoothing, which adds one pseudo count for each value of a node.
+         *
+         * @return Laplace smoothing.
+         */
+        public static Smoothing laplace() {
+                return new Smoothing(Method.LAPLACE, 1);
+        }
+
+        /**
+         * Gets Lidstone smoothing, which adds alpha pseudo counts for each value of a node.
+         *
+         * @param alpha Pseudo count of each value, greater than 0.
+         * @return Lidstone smoothing.
+         */
+        public static Smoothing lidstone(double alpha) {
+                return new Smoothing(Method.LIDSTONE, alpha);
+        }
+
+        /**
+         * Gets smoothing by a dirichlet prior with an equivalent sample size, spread evenly over every entry of each
+         * node's CPT.
+         *
+         * @param ess Equivalent sample size, greater than 0.
+         * @return Dirichlet smoothing.
+         */
+        public static Smoothing dirichlet(double ess) {
+                return new Smoothing(Method.DIRICHLET, ess);
+        }
+
+        /**
+         * Parses smoothing from the command line: the label of a method, followed for LIDSTONE and DIRICHLET by a
+         * colon and its weight, e.g. "laplace", "lidstone:0.5" or "dirichlet:10".
+         *
+         * @param s Smoothing as text.
+         * @return Smoothing.
+         * @throws IllegalArgumentException If the text is not a smoothing.
+         */
+        public static Smoothing parse(String s) {
+                int colon = s.indexOf(':');
+                String label = (colon < 0) ? s : s.substring(0, colon);
+                for (Method m : Method.values()) {
+                        if (!m.label.equals(label)) continue;
+                        boolean weighted = (m == Method.LIDSTONE || m == Method.DIRICHLET);
+                        if (weighted != (colon >= 0)) {
+                                throw new IllegalArgumentException("Smoothing " + label + (weighted ? " needs" :
+                                                                   " does not take") + " a weight");
+                        }
+                        return weighted ? new Smoothing(m, Double.parseDouble(s.substring(colon + 1))) :
+                                          ((m == Method.FRACTION) ? DEFAULT : laplace());
+                }
+                throw new IllegalArgumentException("Unknown smoothing " + s);
+        }
+
+        /**
+         * Gets the way this smoothing chooses pseudo counts.
+         *
+         * @return Method.
+         */
+        public Method getMethod() {
+                return method;
+        }
+
+        /**
+         * Gets the weight of this smoothing: alpha for LIDSTONE, the equivalent sample size for DIRICHLET, otherwise 1.
+         *
+         * @return Weight.
+         */
+        public double getWeight() {
+                return weight;
+        }
+
+        /**
+         * Gets the pseudo count of a node being true, for each configuration of its parents.
+         *
+         * @param parents Number of parents of node.
+         * @return Pseudo count.
+         */
+        public double pseudoTrue(int parents) {
+                return (method == Method.DIRICHLET) ? Math.scalb(weight, -parents - 1) : weight;
+        }
+
+        /**
+         * Gets the pseudo count of a node being false, for each configuration of its parents.
+         *
+         * @param parents Number of parents of node.
+         * @return Pseudo count.
+         */
+        public double pseudoFalse(int parents) {
+                return (method == Method.FRACTION) ? 0 : pseudoTrue(parents);
+        }
+
+        /**
+         * Calculates the probability of a node being true for a configuration of its parents.
+         *
+         * @param num Number of observations of the node being true for the configuration.
+         * @param denom Number of observations of the configuration.
+         * @param parents Number of parents of node.
+         * @return P(node = true | configuration).
+         */
+        public double prob(long num, long denom, int parents) {
+                double a = pseudoTrue(parents);
+                return (num + a) / (denom + a + pseudoFalse(parents));
+        }
+
+        /**
+         * Estimates a probability which is not an entry of a CPT, such as the leak of a noisy-OR node, from the
+         * number of times an event occurred in a number of observations.
+         *
+         * @param num Number of observations of event.
+         * @param denom Number of observations.
+         * @return Smoothed probability of event.
+         */
+        public double estimate(long num, long denom) {
+                double a = (method == Method.DIRICHLET) ? weight / 2 : weight;
+                return (num + a) / (denom + 2 * a);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+                if (!(o instanceof Smoothing)) return false;
+                Smoothing s = (Smoothing)o;
+                return s.method == method && s.weight == weight;
+        }
+
+        @Override
+        public int hashCode() {
+                return 31 * method.hashCode() + Double.hashCode(weight);
+        }
+
+        /** Returns the smoothing as {@link #parse(String) parse} reads it. */
+        @Override
+        public String toString() {
+                if (method == Method.LIDSTONE || method == Method.DIRICHLET) return method.label + ":" + weight;
+                return method.label;
+        }
+}
@@ -0,0 +1,277 @@
+/* ****************************************************************************************************************** *
+ * Name:        SparseCPT.java
+ * Description: Conditional probability table storing counts for only the observed parent configurations.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A conditional probability table which stores counts for only the parent configurations which have been observed,
+ * in an open-addressing hash table of primitive arrays keyed by the configuration's key.
+ * <p>
+ * A node with k parents has 2^k configurations, but training data can contain at most one per row, so for nodes
+ * with many parents almost every configuration is never observed. A configuration which has been observed has the
+ * same probability as in a dense table, {@link Smoothing#prob(long, long, int) smoothed} from its counts. A
+ * configuration which has not been observed has the {@link Smoothing#estimate(long, long) smoothed} marginal
+ * probability of the node, (true + 1) / (observations + 2) by default, rather than the prior of an empty dense entry,
+ * so a sparse node predicts something sensible for configurations it has never seen.
+ * <p>
+ * A frozen table keeps the probability of each observed configuration in a slot array alongside its counts.
+ *
+ * @see CPTKind#SPARSE
+ */
+public class SparseCPT implements NodeCPT {
+        /* Private members */
+        private static final long EMPTY = -1;   // Key of an empty slot; keys of at most 63 parents are positive
+        private int parents;                    // Number of parents of node
+        private long[] keys;                    // Key of configuration in each slot, or EMPTY
+        private long[] num;                     // Number of observations of node being true in each slot
+        private long[] denom;                   // Number of observations of configuration in each slot
+        private int count;                      // Number of configurations stored
+        private long totalNum;                  // Number of observations of node being true
+        private long totalDenom;                // Number of observations
+        private Smoothing smoothing;            // Smoothing of probabilities
+        private double[] prob;                  // Frozen probability of configuration in each slot, or null
+        private double defaultProb;             // Frozen probability of configurations not observed
+
+        /**
+         * Constructor. Creates an empty table.
+         *
+         * @param parents Number of parents of node, at most {@link CPTKind#MAX_PARENTS MAX_PARENTS}.
+         */
+        public SparseCPT(int parents) {
+                this(parents, 16);
+        }
+
+        /** Constructor. Creates an empty table with a power of two number of slots. */
+        private SparseCPT(int parents, int slots) {
+                this.parents = parents;
+                this.smoothing = Smoothing.DEFAULT;
+                keys = new long[slots];
+                num = new long[slots];
+                denom = new long[slots];
+                Arrays.fill(keys, EMPTY);
+        }
+
+        @Override
+        public CPTKind kind() {
+                return CPTKind.SPARSE;
+        }
+
+        @Override
+        public void update(long key, boolean value) {
+                add(key, value ? 1 : 0, 1);
+        }
+
+        @Override
+        public double getProb(long key) {
+                int slot = find(key);
+                if (prob != null) return (keys[slot] == EMPTY) ? defaultProb : prob[slot];
+                if (keys[slot] == EMPTY) return getDefaultProb();
+                return smoothing.prob(num[slot], denom[slot], parents);
+        }
+
+        @Override
+        public boolean hasCertainConfiguration() {
+                double p = getDefaultProb();
+                if (p == 0 || p == 1) return true;
+                for (int i = 0; i < keys.length; i++) {
+                        if (keys[i] == EMPTY) continue;
+                        p = getProb(keys[i]);
+                        if (p == 0 || p == 1) return true;
+                }
+                return false;
+        }
+
+        /**
+         * Gets the probability of the node being true for a configuration which has not been observed.
+         *
+         * @return Smoothed marginal probability of node being true.
+         */
+        public double getDefaultProb() {
+                return (prob != null) ? defaultProb : smoothing.estimate(totalNum, totalDenom);
+        }
+
+        /**
+         * Gets the number of parent configurations which have been observed.
+         *
+         * @return Number of configurations stored.
+         */
+        public int size() {
+                return count;
+        }
+
+        @Override
+        public void freeze(Smoothing s) {
+                smoothing = s;
+                prob = null;
+                double[] p = new double[keys.length];
+                for (int i = 0; i < keys.length; i++) if (keys[i] != EMPTY) p[i] = s.prob(num[i], denom[i], parents);
+                defaultProb = s.estimate(totalNum, totalDenom);
+                prob = p;
+        }
+
+        @Override
+        public void add(NodeCPT t) {
+                SparseCPT s = (SparseCPT)t;
+                for (int i = 0; i < s.keys.length; i++) {
+                        if (s.keys[i] != EMPTY) add(s.keys[i], s.num[i], s.denom[i]);
+                }
+        }
+
+        @Override
+        public void subtract(NodeCPT t) {
+                SparseCPT s = (SparseCPT)t;
+                boolean emptied = false;
+                prob = null;
+                for (int i = 0; i < s.keys.length; i++) {
+                        if (s.keys[i] == EMPTY) continue;
+                        int slot = find(s.keys[i]);
+                        num[slot] -= s.num[i];
+                        denom[slot] -= s.denom[i];
+                        if (denom[slot] == 0) emptied = true;
+                }
+                totalNum -= s.totalNum;
+                totalDenom -= s.totalDenom;
+
+                /* Configurations no longer observed fall back to the default, so must be removed */
+                if (emptied) {
+                        SparseCPT kept = new SparseCPT(parents);
+                        for (int i = 0; i < keys.length; i++) {
+                                if (keys[i] != EMPTY && denom[i] != 0) kept.add(keys[i], num[i], denom[i]);
+                        }
+                        keys = kept.keys;
+                        num = kept.num;
+                        denom = kept.denom;
+                        count = kept.count;
+                }
+        }
+
+        @Override
+        public NodeCPT copy() {
+                SparseCPT t = new SparseCPT(parents, keys.length);
+                System.arraycopy(keys, 0, t.keys, 0, keys.length);
+                System.arraycopy(num, 0, t.num, 0, num.length);
+                System.arraycopy(denom, 0, t.denom, 0, denom.length);
+                t.count = count;
+                t.totalNum = totalNum;
+                t.totalDenom = totalDenom;
+                t.smoothing = smoothing;
+                if (prob != null) {
+                        t.prob = prob.clone();
+                        t.defaultProb = defaultProb;
+                }
+                return t;
+        }
+
+        @Override
+        public NodeCPT emptyCopy() {
+                SparseCPT t = new SparseCPT(parents);
+                t.smoothing = smoothing;
+                return t;
+        }
+
+        @Override
+        public void print(StringBuilder sb, String[] parents) {
+                /* Observed configurations, in the order of a dense table */
+                long[] sorted = new long[count];
+                for (int i = 0, n = 0; i < keys.length; i++) if (keys[i] != EMPTY) sorted[n++] = keys[i];
+                Arrays.sort(sorted);
+                for (int i = sorted.length - 1; i >= 0; i--) {
+                        for (int j = 0; j < parents.length; j++) {
+                                sb.append(((sorted[i] >>> (parents.length - j - 1)) & 1) == 0 ? "1" : "0");
+                                sb.append(", ");
+                        }
+                        sb.append(getProb(sorted[i]));
+                        sb.append("\n");
+                }
+
+                /* Every other configuration */
+                for (int j = 0; j < parents.length; j++) sb.append("*, ");
+                sb.append(getDefaultProb());
+                sb.append("\n");
+        }
+
+        @Override
+        public void write(DataOutput out) throws IOException {
+                out.writeInt(count);
+                for (int i = 0; i < keys.length; i++) {
+                        if (keys[i] == EMPTY) continue;
+                        out.writeLong(keys[i]);
+                        out.writeLong(num[i]);
+                        out.writeLong(denom[i]);
+                }
+        }
+
+        /**
+         * Reads a table written by {@link #write(DataOutput) write} from a model file.
+         *
+         * @param buf Model file, positioned at the start of the table.
+         * @param parents Number of parents of node.
+         * @return Table.
+         * @throws IOException If the table is corrupt.
+         */
+        static SparseCPT read(ByteBuffer buf, int parents) throws IOException {
+                int n = buf.getInt();
+                if (n < 0) throw new IOException("Sparse table has " + n + " configurations");
+                SparseCPT t = new SparseCPT(parents);
+                for (int i = 0; i < n; i++) {
+                        long key = buf.getLong(), num = buf.getLong(), denom = buf.getLong();
+                        if (key < 0 || (parents < 63 && key >= (1L << parents)) || num < 0 || num > denom) {
+                                throw new IOException("Sparse table has invalid configuration " + key);
+                        }
+                        t.add(key, num, denom);
+                }
+                return t;
+        }
+
+        /** Adds counts to a configuration, inserting it if necessary, and discards any frozen probabilities. */
+        private void add(long key, long n, long d) {
+                prob = null;
+                int slot = find(key);
+                if (keys[slot] == EMPTY) {
+                        if (2 * (count + 1) > keys.length) {
+                                grow();
+                                slot = find(key);
+                        }
+                        keys[slot] = key;
+                        count++;
+                }
+                num[slot] += n;
+                denom[slot] += d;
+                totalNum += n;
+                totalDenom += d;
+        }
+
+        /** Finds the slot holding a key, or the empty slot where it would be inserted. */
+        private int find(long key) {
+                int mask = keys.length - 1;
+                int slot = (int)((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+                while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+                return slot;
+        }
+
+        /** Doubles the number of slots, keeping the table at most half full. */
+        private void grow() {
+                long[] oldKeys = keys, oldNum = num, oldDenom = denom;
+                keys = new long[oldKeys.length * 2];
+                num = new long[keys.length];
+                denom = new long[keys.length];
+                Arrays.fill(keys, EMPTY);
+                for (int i = 0; i < oldKeys.length; i++) {
+                        if (oldKeys[i] == EMPTY) continue;
+                        int slot = find(oldKeys[i]);
+                        keys[slot] = oldKeys[i];
+                        num[slot] = oldNum[i];
+                        denom[slot] = oldDenom[i];
+                }
+        }
+}
@@ -0,0 +1,381 @@
+/* ****************************************************************************************************************** *
+ * Name:        StructureLearner.java
+ * Description: Learns the structure of a bayesian network from an events file and writes it as a network file.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Learns a tree-structured bayesian network from an events file, so a network file does not have to be written by
+ * hand, and writes it in the format read by {@link BayesNetEstimate BayesNetEstimate}.
+ * <p>
+ * Without a class variable a Chow-Liu tree is learnt: the maximum spanning tree of the variables weighted by the
+ * mutual information of each pair, rooted at the first column. With a class variable a tree-augmented naive bayes
+ * (TAN) network is learnt: the class is a parent of every other variable, and the other variables form the maximum
+ * spanning tree weighted by their mutual information conditional on the class. Every node therefore has at most two
+ * parents.
+ * <p>
+ * Mutual information needs only the number of rows in which each variable is true and in which each pair of variables
+ * are both true, split by the value of the class if there is one. These are counted in one streaming pass over the
+ * events file, visiting only the pairs of true cells in each row, which is cheap for sparse token features. As in
+ * BayesNetEstimate, the file is split into byte ranges on line boundaries which are counted in parallel into
+ * separate counts and then merged, so the data is never held in memory. The counts of every pair take
+ * 8 * n * (n - 1) / 2 bytes per thread for n variables, twice that with a class variable, so at most
+ * {@link #MAX_VARIABLES MAX_VARIABLES} variables can be counted, and fewer threads count the file if half of the heap
+ * cannot hold the counts of one per thread. A file whose counts do not fit in half of the heap even once is rejected.
+ *
+ * @see BayesNetEstimate
+ */
+public class StructureLearner {
+        /* Public members */
+        /** Most variables, other than the class, whose pairs can be counted in arrays */
+        public static final int MAX_VARIABLES = 65536;
+
+        /* Private members */
+        private File eventsFile;                // File with data to learn the structure from
+        private String className;               // Name of class variable, or null to learn a Chow-Liu tree
+        private int threads;                    // Number of threads used to count the events file
+        private Metrics metrics;                // Timing of structure learning
+        private String[] names;                 // Name of each variable, in column order without the class
+        private int[] columns;                  // Column of each variable in the events file
+        private int classColumn;                // Column of class variable in events file, or -1
+        private int width;                      // Number of columns in the events file
+
+        /**
+         * Constructor
+         *
+         * @param eventsFileName Name of file containing data to learn the structure from.
+         * @param className Name of class variable, or null to learn a Chow-Liu tree.
+         * @param threads Number of threads to use to count the data.
+         */
+        public StructureLearner(String eventsFileName, String className, int threads) throws FileNotFoundException {
+                if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                eventsFile = new File(eventsFileName);
+                if (!eventsFile.isFile()) throw new FileNotFoundException(eventsFileName + " (No such file)");
+                this.className = className;
+                this.threads = threads;
+                this.metrics = new Metrics();
+        }
+
+        /**
+         * Gets the metrics recorded while learning the structure.
+         *
+         * @return Metrics.
+         */
+        public Metrics getMetrics() {
+                return metrics;
+        }
+
+        /**
+         * Learns the structure of the network from the events file.
+         *
+         * @return Lines of the network file, parents first, each in the format "[name]: [[parent 1] [parent 2]]".
+         */
+        public List<String> learn() throws IOException {
+                long start = System.nanoTime();
+                Counts c = count();
+                int n = names.length;
+
+                /* Prim's algorithm on the complete graph of variables, rooted at the first */
+                double[] best = new double[n];
+                int[] parent = new int[n];
+                boolean[] added = new boolean[n];
+                Arrays.fill(best, Double.NEGATIVE_INFINITY);
+                Arrays.fill(parent, -1);
+                List<String> lines = new ArrayList<String>(n + 1);
+                if (className != null) lines.add(className + ":");
+                for (int k = 0, u = 0; k < n; k++) {
+                        /* Add the variable joined to the tree by the heaviest edge */
+                        if (k > 0) {
+                                u = -1;
+                                for (int v = 0; v < n; v++) if (!added[v] && (u < 0 || best[v] > best[u])) u = v;
+                        }
+                        added[u] = true;
+                        StringBuilder sb = new StringBuilder(names[u]).append(":");
+                        if (className != null) sb.append(" ").append(className);
+                        if (parent[u] >= 0) sb.append(" ").append(names[parent[u]]);
+                        lines.add(sb.toString());
+
+                        /* Update the heaviest edge joining each other variable to the tree */
+                        for (int v = 0; v < n; v++) {
+                                if (added[v]) continue;
+                                double w = (u < v) ? c.info(u, v) : c.info(v, u);
+                                if (w > best[v]) {
+                                        best[v] = w;
+                                        parent[v] = u;
+                                }
+                        }
+                }
+                metrics.phase(Metrics.LEARN_STRUCTURE, start);
+                return lines;
+        }
+
+        /**
+         * Reads the header of the events file and counts the rest of it, in parallel if there is more than one thread.
+         *
+         * @return Counts of the whole events file.
+         */
+        private Counts count() throws IOException {
+                CsvTokenizer tok = new CsvTokenizer(eventsFile);
+                long start;
+                int workers;
+                try {
+                        String[] vars = tok.readHeader();
+                        if (vars == null) throw new IOException(eventsFile + " is empty");
+                        width = vars.length;
+                        classColumn = -1;
+                        List<Integer> cols = new ArrayList<Integer>();
+                        for (int i = 0; i < vars.length; i++) {
+                                if (vars[i].equals(className)) classColumn = i;
+                                else cols.add(i);
+                        }
+                        if (className != null && classColumn < 0) {
+                                throw new IOException("Class variable " + className + " is not a column of " +
+                                                      eventsFile);
+                        }
+                        if (cols.size() > MAX_VARIABLES) {
+                                throw new IOException(eventsFile + " has " + cols.size() + " variables; at most " +
+                                                      MAX_VARIABLES + " can have every pair counted");
+                        }
+                        names = new String[cols.size()];
+                        columns = new int[cols.size()];
+                        for (int i = 0; i < names.length; i++) {
+                                columns[i] = cols.get(i);
+                                names[i] = vars[columns[i]];
+                        }
+                        workers = workers(Counts.bytes(names.length, classColumn >= 0));
+                        if (workers == 1) {
+                                Counts c = new Counts(names.length, classColumn >= 0);
+                                countLines(tok, c);
+                                return c;
+                        }
+                        start = tok.position();
+                } finally {
+                        tok.close();
+                }
+                return countParallel(start, workers);
+        }
+
+        /**
+         * Gets the number of threads to count with: the number asked for, or fewer if half of the available heap cannot
+         * hold a copy of the counts for each. The other half leaves room for the large arrays to be allocated.
+         *
+         * @param bytes Size of one copy of the counts.
+         * @return Number of threads, at least 1.
+         * @throws IOException If the heap cannot hold even one copy of the counts.
+         */
+        private int workers(long bytes) throws IOException {
+                Runtime rt = Runtime.getRuntime();
+                long available = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+                if (bytes > available / 2) {
+                        throw new IOException("Counting every pair of the " + names.length + " variables of " +
+                                              eventsFile + " needs " + (bytes >> 20) + "MB, more than half of the " +
+                                              (available >> 20) + "MB of heap available");
+                }
+                return (int)Math.min(threads, available / 2 / bytes);
+        }
+
+        /**
+         * Splits the events file into one byte range per thread, counts each range in parallel and sums the results.
+         *
+         * @param start Offset of first line of data.
+         * @param workers Number of threads.
+         * @return Counts of the whole events file.
+         */
+        private Counts countParallel(long start, int workers) throws IOException {
+                long[] bounds = BayesNetEstimate.lineBounds(eventsFile, start, workers);
+                ExecutorService pool = Executors.newFixedThreadPool(workers);
+                List<Future<Counts>> results = new ArrayList<Future<Counts>>();
+                try {
+                        for (int i = 0; i < workers; i++) {
+                                final long from = bounds[i], to = bounds[i + 1];
+                                results.add(pool.submit(new Callable<Counts>() {
+                                        public Counts call() throws IOException {
+                                                Counts c = new Counts(names.length, classColumn >= 0);
+                                                CsvTokenizer tok = new CsvTokenizer(eventsFile, from, to);
+                                                try {
+                                                        countLines(tok, c);
+                                                } finally {
+                                                        tok.close();
+                                                }
+                                                return c;
+                                        }
+                                }));
+                        }
+
+                        /* Merge counts */
+                        Counts c = results.get(0).get();
+                        for (int i = 1; i < results.size(); i++) c.add(results.get(i).get());
+                        return c;
+                } catch (InterruptedException e) {
+                        throw new InterruptedIOException("Interrupted while counting events file");
+                } catch (ExecutionException e) {
+                        if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+                        throw new IOException("Error counting events file", e.getCause());
+                } finally {
+                        pool.shutdownNow();
+                }
+        }
+
+        /**
+         * Counts every remaining line of data read by a tokenizer.
+         *
+         * @param tok Tokenizer positioned at the start of a line of data.
+         * @param c Counts to add to.
+         */
+        private void countLines(CsvTokenizer tok, Counts c) throws IOException {
+                byte[] row = new byte[width];
+                int[] on = new int[names.length];
+                while (tok.next(row)) {
+                        /* Variables which are true, in column order */
+                        int t = 0;
+                        for (int i = 0; i < columns.length; i++) if (row[columns[i]] == CsvTokenizer.TRUE) on[t++] = i;
+
+                        boolean cls = classColumn >= 0 && row[classColumn] == CsvTokenizer.TRUE;
+                        long[] single = cls ? c.classSingle : c.single;
+                        long[] pair = cls ? c.classPair : c.pair;
+                        if (cls) c.classRows++;
+                        else c.rows++;
+                        for (int a = 0; a < t; a++) {
+                                int i = on[a], off = c.pairOff[i];
+                                single[i]++;
+                                for (int b = a + 1; b < t; b++) pair[off + on[b]]++;
+                        }
+                }
+        }
+
+        /**
+         * Counts of the rows in which each variable, and each pair of variables, is true. With a class variable, rows
+         * in which the class is true are counted separately from rows in which it is false; without one, every row is
+         * counted as though the class were false.
+         */
+        private static class Counts {
+                final int[] pairOff;            // Index of pair (i, j) in pair[] is pairOff[i] + j, for i < j
+                final long[] single;            // Rows with each variable true and class false
+                final long[] pair;              // Rows with each pair of variables true and class false
+                final long[] classSingle;       // Rows with each variable true and class true, or null
+                final long[] classPair;         // Rows with each pair of variables true and class true, or null
+                long rows;                      // Rows with class false
+                long classRows;                 // Rows with class true
+
+                Counts(int n, boolean hasClass) {
+                        pairOff = new int[n];
+                        for (int i = 0; i < n; i++) pairOff[i] = (int)((long)i * (2 * n - i - 1) / 2) - i - 1;
+                        single = new long[n];
+                        pair = new long[(int)((long)n * (n - 1) / 2)];
+                        classSingle = hasClass ? new long[n] : null;
+                        classPair = hasClass ? new long[pair.length] : null;
+                }
+
+                /** Gets the size in bytes of the counts of n variables, ignoring object headers. */
+                static long bytes(int n, boolean hasClass) {
+                        long longs = n + (long)n * (n - 1) / 2;
+                        return 4L * n + 8 * (hasClass ? 2 * longs : longs);
+                }
+
+                /** Adds the counts of another range of the events file. */
+                void add(Counts c) {
+                        for (int i = 0; i < single.length; i++) single[i] += c.single[i];
+                        for (int i = 0; i < pair.length; i++) pair[i] += c.pair[i];
+                        if (classSingle != null) {
+                                for (int i = 0; i < classSingle.length; i++) classSingle[i] += c.classSingle[i];
+                                for (int i = 0; i < classPair.length; i++) classPair[i] += c.classPair[i];
+                        }
+                        rows += c.rows;
+                        classRows += c.classRows;
+                }
+
+                /**
+                 * Calculates the mutual information of two variables, conditional on the class if there is one.
+                 *
+                 * @param i Index of first variable.
+                 * @param j Index of second variable, greater than i.
+                 * @return I(Xi; Xj | C) in nats.
+                 */
+                double info(int i, int j) {
+                        long total = rows + classRows;
+                        if (total == 0) return 0;
+                        double info = info(rows, single[i], single[j], pair[pairOff[i] + j]) * rows;
+                        if (classSingle != null) {
+                                info += info(classRows, classSingle[i], classSingle[j],
+                                             classPair[pairOff[i] + j]) * classRows;
+                        }
+                        return info / total;
+                }
+
+                /** Calculates the mutual information of two variables from counts of n rows. */
+                private static double info(long n, long ni, long nj, long nij) {
+                        if (n == 0) return 0;
+                        return term(nij, ni, nj, n) + term(ni - nij, ni, n - nj, n) +
+                               term(nj - nij, n - ni, nj, n) + term(n - ni - nj + nij, n - ni, n - nj, n);
+                }
+
+                /** Calculates p(x, y) log(p(x, y) / (p(x) p(y))) from counts of n rows. */
+                private static double term(long nxy, long nx, long ny, long n) {
+                        if (nxy == 0) return 0;
+                        return (nxy / (double)n) * Math.log((nxy * (double)n) / ((double)nx * ny));
+                }
+        }
+
+        /**
+         * Gets the events file and options from command line args, learns the structure of a network and writes it
+         * to a network file.
+         */
+        public static void main(String[] args) throws FileNotFoundException, IOException {
+                /* Parse options */
+                int threads = 1, arg = 0;
+                String className = null, json = null;
+                try {
+                        while (arg < args.length && args[arg].startsWith("-")) {
+                                if (arg + 1 >= args.length) throw new IllegalArgumentException("Missing value for " +
+                                                                                               args[arg]);
+                                if (args[arg].equals("-t")) threads = Integer.parseInt(args[arg + 1]);
+                                else if (args[arg].equals("-c")) className = args[arg + 1];
+                                else if (args[arg].equals("-j")) json = args[arg + 1];
+                                else throw new IllegalArgumentException("Unknown option " + args[arg]);
+                                arg += 2;
+                        }
+                        if (threads < 1) throw new IllegalArgumentException("Number of threads must be at least 1");
+                } catch (IllegalArgumentException e) {
+                        System.out.println("Error: " + e.getMessage());
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* If wrong arg num print usage and exit */
+                if (args.length - arg != 2) {
+                        System.out.println("Error: Incorrect number of arguments.");
+                        printUsage(System.err);
+                        return;
+                }
+
+                /* Learn structure and write network file */
+                StructureLearner learner = new StructureLearner(args[arg], className, threads);
+                learner.getMetrics().register("StructureLearner");
+                List<String> lines = learner.learn();
+                PrintWriter w = new PrintWriter(new File(args[arg + 1]));
+                for (String line : lines) w.println(line);
+                w.flush();
+                w.close();
+                if (json != null) learner.getMetrics().writeJson(new File(json));
+        }
+
+        /** Print Usage statement to specified PrintStream (i.e. System.out). */
+        private static void printUsage(PrintStream s) {
+                s.println("Usage: StructureLearner [-t threads] [-c class] [-j metrics file] [events file] " +
+                                                                                                "[network file]\n" +
+                          "             threads      - Number of threads used to count the events file (default 1)\n"+
+                          "             class        - The class variable, to learn a TAN network instead of a " +
+                                                      "Chow-Liu tree\n" +
+                          "             metrics file - The file to write a JSON summary of timings to\n" +
+                          "             events file  - The file which contains the data to learn the structure from\n" +
+                          "             network file - The file to write the structure of the bayesian network to");
+        }
+}
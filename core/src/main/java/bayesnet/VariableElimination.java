@@ -0,0 +1,484 @@
+/* ****************************************************************************************************************** *
+ * Name:        VariableElimination.java
+ * Description: Exact inference of a query variable when other variables are also unknown.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the posterior of a query variable given evidence, by variable elimination, when some of the other
+ * variables in the model are unknown.
+ * <p>
+ * Enumerating every assignment of k unknown variables costs 2^k exact event probabilities. Instead, for each pattern of
+ * query and unknown variables VariableElimination builds a {@link Plan Plan} which:
+ * <ul>
+ *      <li>drops unknown variables with no known descendants, as their factors sum to 1 (barren nodes),</li>
+ *      <li>keeps only the factors which depend on the query or a remaining unknown variable, as all other factors
+ *          are constant and cancel when the posterior is normalized, unless they are 0; with exact ties, as in
+ *          {@link LogTable#LogTable(CPTable, MarkovBlanket, boolean) LogTable}, the constant factors of nodes which
+ *          are certain for some configuration of their parents are kept as guards,</li>
+ *      <li>chooses an elimination order for the unknown variables greedily, by fewest neighbours,</li>
+ *      <li>and schedules each elimination: which factors are multiplied, and where the product and the factor it
+ *          sums to are laid out among the tables of the plan.</li>
+ * </ul>
+ * Plans are cached by a signature hashed from the pattern, without building a key, so scoring a row costs filling
+ * the tables of the factors for the row's evidence and running the schedule, which is proportional to the size of
+ * the neighbourhood of the unknown variables. The tables are held in buffers of each thread, so scoring a row builds
+ * no factors. A pattern is rejected if any factor, whether the factor of a node or one created during elimination,
+ * would depend on more than {@link #MAX_FACTOR_VARS MAX_FACTOR_VARS} variables, or if the tables of its plan would
+ * hold more than {@link #MAX_PLAN_ENTRIES MAX_PLAN_ENTRIES} entries in all.
+ * <p>
+ * Given a {@link ResultCache ResultCache}, the log odds are also cached by the evidence of the plan, i.e. the values of
+ * the known variables of its factors and guards, so rows which repeat the evidence around their unknown variables skip
+ * the elimination. The keys start with a negative plan number, so the cache can be shared with a
+ * {@link CompiledScorer CompiledScorer}, whose keys start with the query.
+ * <p>
+ * VariableElimination is safe to use from multiple threads.
+ *
+ * @see CPTable
+ */
+public class VariableElimination {
+        /* Package Private members */
+        static final int MAX_FACTOR_VARS = 16;  // Largest factor which may be created during elimination
+        static final int MAX_PLAN_ENTRIES = 1 << 18;    // Most entries in the tables of a plan
+
+        /* Private members */
+        private CPTable cpt;                    // CPTs of bayesian network
+        private ConcurrentHashMap<Long, Plan> plans;    // Chains of cached plans, by signature of their pattern
+        private AtomicInteger planNumber;       // Number of next plan built
+        private ResultCache cache;              // Log odds by plan and evidence, or null
+        private boolean exactTies;              // Whether a constant factor which is 0 makes the query a tie
+        private ThreadLocal<Scratch> scratch;   // Buffers of each thread scoring rows
+
+        /**
+         * Constructor.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         */
+        public VariableElimination(CPTable cpt) {
+                this(cpt, null);
+        }
+
+        /**
+         * Constructor for an instance which caches log odds by the evidence of each plan.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param cache Cache of log odds, which may be shared with a CompiledScorer of the same network, or null.
+         */
+        public VariableElimination(CPTable cpt, ResultCache cache) {
+                this(cpt, cache, false);
+        }
+
+        /**
+         * Constructor for an instance which caches log odds by the evidence of each plan, and which may keep the exact
+         * tie of a constant factor which is 0.
+         *
+         * @param cpt CPTs of trained bayesian network.
+         * @param cache Cache of log odds, which may be shared with a CompiledScorer of the same network, or null.
+         * @param exactTies If true, a constant factor which is 0 makes the query a tie.
+         */
+        public VariableElimination(CPTable cpt, ResultCache cache, boolean exactTies) {
+                this.cpt = cpt;
+                this.plans = new ConcurrentHashMap<Long, Plan>();
+                this.planNumber = new AtomicInteger();
+                this.cache = cache;
+                this.exactTies = exactTies;
+                this.scratch = ThreadLocal.withInitial(Scratch::new);
+        }
+
+        /**
+         * Calculates log(P(query = true, evidence) / P(query = false, evidence)), summing over every assignment of the
+         * unknown variables.
+         *
+         * @param query Index of query node in network.
+         * @param unknown Indices of the other unknown nodes in network, in ascending order.
+         * @param n Number of entries of unknown[] in use.
+         * @param values The model for the variables, with evidence for the known nodes. Modified during the call,
+         *               but restored before it returns.
+         * @return Log odds of the query being true, or 0 if P(query = true, evidence) and P(query = false, evidence)
+         *         are both 0, as {@link LogTable#resolveTie(double) resolved} by LogTable.
+         */
+        public double logOdds(int query, int[] unknown, int n, boolean[] values) {
+                Plan plan = getPlan(query, unknown, n);
+                Scratch s = scratch.get();
+                if (cache == null) return eliminate(plan, s, values);
+
+                if (s.key.length < plan.keyLength) s.key = new long[plan.keyLength];
+                plan.signature(values, s.key);
+                if (cache.get(s.key, 0, plan.keyLength, s.logOdds, 0)) return s.logOdds[0];
+                double logOdds = eliminate(plan, s, values);
+                cache.put(s.key, 0, plan.keyLength, logOdds);
+                return logOdds;
+        }
+
+        /**
+         * Calculates the log odds of the query of a plan by eliminating its unknown variables.
+         *
+         * @param plan Plan for the pattern of query and unknown variables.
+         * @param s Buffers of the calling thread.
+         * @param values The model for the variables, with evidence for the known nodes. Modified during the call,
+         *               but restored before it returns.
+         * @return Log odds of the query being true.
+         */
+        private double eliminate(Plan plan, Scratch s, boolean[] values) {
+                /* A constant factor which is 0 makes both probabilities 0, which is a tie */
+                for (int g : plan.guards) if (cpt.getProb(g, values) == 0) return 0;
+
+                /* Fill the tables of the factors for this evidence */
+                if (s.tables.length < plan.entries) s.tables = new double[plan.entries];
+                if (s.saved.length < plan.vars.length) s.saved = new boolean[plan.vars.length];
+                double[] t = s.tables;
+                for (int i = 0; i < plan.vars.length; i++) s.saved[i] = values[plan.vars[i]];
+                for (int k = 0; k < plan.factors.length; k++) {
+                        int[] scope = plan.scopes[k];
+                        for (int a = 0, off = plan.tableOff[k]; a < (1 << scope.length); a++) {
+                                for (int j = 0; j < scope.length; j++) {
+                                        values[plan.vars[scope[j]]] = ((a >> j) & 1) != 0;
+                                }
+                                t[off + a] = cpt.getProb(plan.factors[k], values);
+                        }
+                }
+                for (int i = 0; i < plan.vars.length; i++) values[plan.vars[i]] = s.saved[i];
+
+                /* Sum out unknown variables: multiply the factors containing each into the product, at the start of
+                   the tables, then sum the product over both values of the variable into the factor of the step   */
+                for (int step = 0; step < plan.order.length; step++) {
+                        int[] in = plan.stepIn[step];
+                        int[][] maps = plan.stepMaps[step];
+                        int size = 1 << plan.stepVars[step].length;
+                        for (int a = 0; a < size; a++) {
+                                double prod = 1;
+                                for (int i = 0; i < in.length; i++) {
+                                        prod *= t[plan.tableOff[in[i]] + project(a, maps[i])];
+                                }
+                                t[a] = prod;
+                        }
+                        normalize(t, 0, size);
+
+                        int j = plan.stepBit[step], low = (1 << j) - 1;
+                        int out = plan.tableOff[plan.factors.length + step];
+                        for (int a = 0; a < (size >>> 1); a++) {
+                                int full = ((a & ~low) << 1) | (a & low);       // Insert a 0 bit at position j
+                                t[out + a] = t[full] + t[full | (1 << j)];
+                        }
+                        normalize(t, out, size >>> 1);
+                }
+
+                /* Remaining factors depend only on the query, which is var 0, or are constant, with a single entry */
+                double logTrue = 0, logFalse = 0;
+                for (int r : plan.rest) {
+                        int off = plan.tableOff[r];
+                        logFalse += Math.log(t[off]);
+                        logTrue += Math.log(t[off + plan.tableVars[r].length]);
+                }
+                return LogTable.resolveTie(logTrue - logFalse);
+        }
+
+        /**
+         * Gets the cached plan for a pattern of query and unknown variables, building it if necessary.
+         *
+         * @param query Index of query node in network.
+         * @param unknown Indices of the other unknown nodes in network, in ascending order.
+         * @param n Number of entries of unknown[] in use.
+         * @return Plan for pattern.
+         */
+        private Plan getPlan(int query, int[] unknown, int n) {
+                long signature = signature(query, unknown, n);
+                for (Plan p = plans.get(signature); p != null; p = p.next) if (p.matches(query, unknown, n)) return p;
+
+                /* Chain a new plan before any others with the same signature, unless another thread added it first */
+                Plan plan = new Plan(query, Arrays.copyOf(unknown, n));
+                Plan head = plans.merge(signature, plan, (old, p) -> {
+                        for (Plan q = old; q != null; q = q.next) if (q.matches(query, unknown, n)) return old;
+                        p.next = old;
+                        return p;
+                });
+                for (Plan p = head; p != null; p = p.next) if (p.matches(query, unknown, n)) return p;
+                throw new AssertionError("Plan was not cached");
+        }
+
+        /**
+         * Hashes a pattern of query and unknown variables into a signature, which plans are cached by. Patterns with
+         * the same signature are chained.
+         *
+         * @param query Index of query node in network.
+         * @param unknown Indices of the other unknown nodes in network, in ascending order.
+         * @param n Number of entries of unknown[] in use.
+         * @return Signature of pattern.
+         */
+        private static long signature(int query, int[] unknown, int n) {
+                long h = query;
+                for (int i = 0; i < n; i++) h = (h + 1) * 0x9E3779B97F4A7C15L + unknown[i];
+                return h ^ (h >>> 31);
+        }
+
+        /** Number of cached plans. */
+        int planCount() {
+                int count = 0;
+                for (Plan head : plans.values()) for (Plan p = head; p != null; p = p.next) count++;
+                return count;
+        }
+
+        /**
+         * The relevant factors and elimination order for a pattern of query and unknown variables. Variables are
+         * numbered by their position in vars[], where the query is always 0.
+         */
+        private class Plan {
+                final int[] vars;               // Node index of each variable in plan; query first
+                final int[] factors;            // Node index of each factor
+                final int[][] scopes;           // Variables each factor depends on, in ascending order
+                final int[] order;              // Order to eliminate the unknown variables in
+                final int[][] tableVars;        // Variables of each factor, then of the factor each step sums to
+                final int[] tableOff;           // Start of each of those factors' tables, after the product's
+                final int[][] stepIn;           // Factors multiplied by each step, by their index in tableVars
+                final int[][] stepVars;         // Variables of the product of each step, in ascending order
+                final int[][][] stepMaps;       // Bit of each multiplied factor's variables in the product's
+                final int[] stepBit;            // Bit of the variable each step sums out in the product's index
+                final int[] rest;               // Factors left after the last step, by their index in tableVars
+                final int entries;              // Total length of the tables, including the product
+                final int[] guards;             // Node index of each constant factor which may be 0
+                final int[] evidence;           // Known nodes of the factors and guards, in ascending order
+                final int keyLength;            // Length of a result key
+                final int number;               // Number of plan, unique within its VariableElimination
+                final int query;                // Index of query node in network
+                final int[] unknown;            // Indices of the other unknown nodes in network, in ascending order
+                Plan next;                      // Next cached plan with the same signature, set before publication
+
+                Plan(int query, int[] unknown) {
+                        this.query = query;
+                        this.unknown = unknown;
+                        int size = cpt.size();
+                        boolean[] free = new boolean[size];
+                        free[query] = true;
+                        for (int u : unknown) free[u] = true;
+
+                        /* Find nodes which are known, the query, or ancestors of them; the rest are barren. Parents
+                           are declared before children, so visiting nodes in reverse visits children first.        */
+                        boolean[] needed = new boolean[size];
+                        for (int i = size - 1; i >= 0; i--) {
+                                if (!free[i] || i == query) needed[i] = true;
+                                if (!needed[i]) continue;
+                                for (int j = cpt.parentOff[i]; j < cpt.parentOff[i + 1]; j++) {
+                                        needed[cpt.parentIdx[j]] = true;
+                                }
+                        }
+
+                        /* Number the query and the unknown variables which are not barren */
+                        int[] varOf = new int[size];
+                        Arrays.fill(varOf, -1);
+                        List<Integer> varList = new ArrayList<Integer>();
+                        varOf[query] = 0;
+                        varList.add(query);
+                        for (int u : unknown) {
+                                if (u != query && needed[u]) {
+                                        varOf[u] = varList.size();
+                                        varList.add(u);
+                                }
+                        }
+                        vars = toArray(varList);
+
+                        /* Keep the factors which depend on a variable */
+                        List<Integer> factorList = new ArrayList<Integer>();
+                        List<int[]> scopeList = new ArrayList<int[]>();
+                        List<Integer> guardList = new ArrayList<Integer>();
+                        for (int i = 0; i < size; i++) {
+                                if (!needed[i]) continue;
+                                TreeSet<Integer> scope = new TreeSet<Integer>();
+                                if (varOf[i] >= 0) scope.add(varOf[i]);
+                                for (int j = cpt.parentOff[i]; j < cpt.parentOff[i + 1]; j++) {
+                                        if (varOf[cpt.parentIdx[j]] >= 0) scope.add(varOf[cpt.parentIdx[j]]);
+                                }
+                                if (scope.isEmpty()) {
+                                        if (exactTies && cpt.hasCertainConfiguration(i)) guardList.add(i);
+                                        continue;
+                                }
+                                if (scope.size() > MAX_FACTOR_VARS) {
+                                        throw new IllegalArgumentException("Too many unknown variables in the factor " +
+                                                                           "of " + cpt.getName(i) + " to eliminate");
+                                }
+                                factorList.add(i);
+                                scopeList.add(toArray(scope));
+                        }
+                        factors = toArray(factorList);
+                        scopes = scopeList.toArray(new int[scopeList.size()][]);
+                        guards = toArray(guardList);
+
+                        /* Evidence is every known node the factors or guards read */
+                        boolean[] read = new boolean[size];
+                        for (int[] nodes : new int[][] {factors, guards}) {
+                                for (int i : nodes) {
+                                        read[i] = true;
+                                        for (int j = cpt.parentOff[i]; j < cpt.parentOff[i + 1]; j++) {
+                                                read[cpt.parentIdx[j]] = true;
+                                        }
+                                }
+                        }
+                        List<Integer> evidenceList = new ArrayList<Integer>();
+                        for (int i = 0; i < size; i++) if (read[i] && varOf[i] < 0) evidenceList.add(i);
+                        evidence = toArray(evidenceList);
+                        keyLength = 1 + ((evidence.length + 63) >>> 6);
+                        number = planNumber.getAndIncrement();
+
+                        order = eliminationOrder();
+
+                        /* Schedule the steps: each multiplies the factors left which contain its variable */
+                        int k = factors.length;
+                        tableVars = Arrays.copyOf(scopes, k + order.length);
+                        stepIn = new int[order.length][];
+                        stepVars = new int[order.length][];
+                        stepMaps = new int[order.length][][];
+                        stepBit = new int[order.length];
+                        boolean[] used = new boolean[k + order.length];
+                        int product = 1;
+                        for (int step = 0; step < order.length; step++) {
+                                int v = order[step];
+                                List<Integer> in = new ArrayList<Integer>();
+                                TreeSet<Integer> union = new TreeSet<Integer>();
+                                for (int f = 0; f < k + step; f++) {
+                                        if (used[f] || Arrays.binarySearch(tableVars[f], v) < 0) continue;
+                                        used[f] = true;
+                                        in.add(f);
+                                        for (int x : tableVars[f]) union.add(x);
+                                }
+                                stepIn[step] = toArray(in);
+                                stepVars[step] = toArray(union);
+                                stepMaps[step] = new int[in.size()][];
+                                for (int i = 0; i < in.size(); i++) {
+                                        stepMaps[step][i] = bitMap(stepVars[step], tableVars[in.get(i)]);
+                                }
+                                stepBit[step] = Arrays.binarySearch(stepVars[step], v);
+                                union.remove(v);
+                                tableVars[k + step] = toArray(union);
+                                product = Math.max(product, 1 << stepVars[step].length);
+                        }
+                        List<Integer> restList = new ArrayList<Integer>();
+                        for (int f = 0; f < used.length; f++) if (!used[f]) restList.add(f);
+                        rest = toArray(restList);
+
+                        /* Lay out the tables after the product, which every step reuses */
+                        tableOff = new int[tableVars.length];
+                        int end = product;
+                        for (int f = 0; f < tableVars.length; f++) {
+                                tableOff[f] = end;
+                                end += 1 << tableVars[f].length;
+                                if (end > MAX_PLAN_ENTRIES) {
+                                        throw new IllegalArgumentException("Too many unknown variables to eliminate " +
+                                                                           "in tables of " + MAX_PLAN_ENTRIES +
+                                                                           " entries");
+                                }
+                        }
+                        entries = end;
+                }
+
+                /**
+                 * Checks whether this plan is for a pattern of query and unknown variables.
+                 *
+                 * @param query Index of query node in network.
+                 * @param unknown Indices of the other unknown nodes in network, in ascending order.
+                 * @param n Number of entries of unknown[] in use.
+                 * @return True if the pattern is this plan's.
+                 */
+                boolean matches(int query, int[] unknown, int n) {
+                        if (query != this.query || n != this.unknown.length) return false;
+                        for (int i = 0; i < n; i++) if (unknown[i] != this.unknown[i]) return false;
+                        return true;
+                }
+
+                /**
+                 * Builds the result key of a model: the complement of the plan's number, which is negative, then
+                 * whether each node of the evidence is true, packed into longs.
+                 *
+                 * @param values The model for the variables, with evidence for the known nodes.
+                 * @param key Buffer of length at least keyLength for the key.
+                 */
+                void signature(boolean[] values, long[] key) {
+                        Arrays.fill(key, 0, keyLength, 0);
+                        key[0] = ~number;
+                        for (int j = 0; j < evidence.length; j++) {
+                                if (values[evidence[j]]) key[1 + (j >>> 6)] |= 1L << j;
+                        }
+                }
+
+                /** Orders the unknown variables by repeatedly eliminating the one with fewest neighbours. */
+                private int[] eliminationOrder() {
+                        List<Set<Integer>> neighbours = new ArrayList<Set<Integer>>();
+                        for (int v = 0; v < vars.length; v++) neighbours.add(new TreeSet<Integer>());
+                        for (int[] scope : scopes) {
+                                for (int a : scope) for (int b : scope) if (a != b) neighbours.get(a).add(b);
+                        }
+
+                        int[] order = new int[vars.length - 1];
+                        boolean[] done = new boolean[vars.length];
+                        for (int k = 0; k < order.length; k++) {
+                                int best = -1;
+                                for (int v = 1; v < vars.length; v++) {
+                                        if (done[v]) continue;
+                                        if (best < 0 || neighbours.get(v).size() < neighbours.get(best).size()) {
+                                                best = v;
+                                        }
+                                }
+                                if (neighbours.get(best).size() >= MAX_FACTOR_VARS) {
+                                        throw new IllegalArgumentException("Too many interacting unknown variables " +
+                                                                           "to eliminate");
+                                }
+
+                                /* Eliminating best connects all of its neighbours */
+                                Set<Integer> nb = neighbours.get(best);
+                                for (int a : nb) {
+                                        neighbours.get(a).remove(best);
+                                        for (int b : nb) if (a != b) neighbours.get(a).add(b);
+                                }
+                                done[best] = true;
+                                order[k] = best;
+                        }
+                        return order;
+                }
+        }
+
+        /**
+         * Buffers of a thread, grown to fit the largest plan it has scored. A table over a set of variables is laid out
+         * so that entry a is the value for the assignment in which the j-th variable is true if bit j of a is set.
+         */
+        private static class Scratch {
+                double[] tables = new double[0];        // Tables of a plan's factors, after the product's
+                boolean[] saved = new boolean[0];       // Values of a plan's variables in the model being scored
+                long[] key = new long[0];               // Result key of the model being scored
+                double[] logOdds = new double[1];       // Log odds found in the result cache
+        }
+
+        /** Maps each variable of sub to its bit position in the assignment index of vars. */
+        private static int[] bitMap(int[] vars, int[] sub) {
+                int[] map = new int[sub.length];
+                for (int j = 0; j < sub.length; j++) map[j] = Arrays.binarySearch(vars, sub[j]);
+                return map;
+        }
+
+        /** Projects an assignment index onto the variables of a sub-factor. */
+        private static int project(int a, int[] map) {
+                int b = 0;
+                for (int j = 0; j < map.length; j++) b |= ((a >> map[j]) & 1) << j;
+                return b;
+        }
+
+        /** Scales a table so its largest entry is 1, to avoid underflow. Ratios are unchanged. */
+        private static void normalize(double[] t, int off, int len) {
+                double max = 0;
+                for (int i = off; i < off + len; i++) max = Math.max(max, t[i]);
+                if (max > 0) for (int i = off; i < off + len; i++) t[i] /= max;
+        }
+
+        /** Converts a collection of Integers to an int array. */
+        private static int[] toArray(Collection<Integer> c) {
+                int[] a = new int[c.size()];
+                int i = 0;
+                for (int v : c) a[i++] = v;
+                return a;
+        }
+}
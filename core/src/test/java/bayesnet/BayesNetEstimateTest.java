@@ -0,0 +1,100 @@
+/* ****************************************************************************************************************** *
+ * Name:        BayesNetEstimateTest.java
+ * Description: Tests of training a bayesian network on one or more threads.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class BayesNetEstimateTest {
+        @TempDir
+        Path dir;
+
+        /** Writes 500 random events for a, b and c with mixed line ends, blank lines and no final newline. */
+        private File events() throws IOException {
+                Random r = new Random(12);
+                StringBuilder sb = new StringBuilder("a,b,c\r\n");
+                for (int i = 0; i < 500; i++) {
+                        sb.append(r.nextInt(2)).append(',').append(r.nextInt(2)).append(',').append(r.nextInt(2));
+                        if (i == 499) break;
+                        sb.append(r.nextBoolean() ? "\r\n" : "\n");
+                        if (r.nextInt(20) == 0) sb.append("\n");
+                }
+                Path p = dir.resolve("train.csv");
+                Files.write(p, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+                return p.toFile();
+        }
+
+        @Test
+        void shardedCountsMatchSequentialCounts() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b");
+                File events = events();
+                CPTable expected = train(net, events, 1);
+                assertEquals(500, expected.denom[0]);
+                assertEquals(500, expected.denom[1] + expected.denom[2]);
+
+                for (int threads : new int[] {2, 3, 7, 64}) {
+                        CPTable cpt = train(net, events, threads);
+                        assertArrayEquals(expected.num, cpt.num, threads + " threads");
+                        assertArrayEquals(expected.denom, cpt.denom, threads + " threads");
+                }
+        }
+
+        @Test
+        void shardedNetworkHasExactProbabilitiesOfSequential() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b");
+                File events = events();
+                BayesNetEstimate one = new BayesNetEstimate(net.getPath(), events.getPath(), 1);
+                BayesNetEstimate four = new BayesNetEstimate(net.getPath(), events.getPath(), 4);
+                Node[] expected = one.getBayesianNetwork(), actual = four.getBayesianNetwork();
+
+                for (int i = 0; i < 3; i++) {
+                        assertEquals(expected[i].probs.length, actual[i].probs.length);
+                        for (int j = 0; j < expected[i].probs.length; j++) {
+                                assertEquals(expected[i].probs[j].num, actual[i].probs[j].num);
+                                assertEquals(expected[i].probs[j].denom, actual[i].probs[j].denom);
+                        }
+                }
+                boolean[] values = new boolean[3];
+                for (int m = 0; m < 8; m++) {
+                        for (int i = 0; i < 3; i++) values[i] = ((m >>> i) & 1) != 0;
+                        assertEquals(one.getCPTable().calcExactEventProb(values),
+                                     four.getCPTable().calcExactEventProb(values), "model " + m);
+                }
+        }
+
+        @Test
+        void boundsAreLineStarts() throws IOException {
+                File events = events();
+                byte[] bytes = Files.readAllBytes(events.toPath());
+                long start = "a,b,c\r\n".length();
+                for (int chunks = 1; chunks < 40; chunks++) {
+                        long[] bounds = BayesNetEstimate.lineBounds(events, start, chunks);
+                        assertEquals(start, bounds[0]);
+                        assertEquals(bytes.length, bounds[chunks]);
+                        for (int i = 1; i < chunks; i++) {
+                                assertTrue(bounds[i] >= bounds[i - 1], "ordered");
+                                assertTrue(bounds[i] == bytes.length || bytes[(int)bounds[i] - 1] == '\n',
+                                           chunks + " chunks, bound " + i + " at " + bounds[i]);
+                        }
+                }
+        }
+
+        /** Trains a network on a number of threads. */
+        private static CPTable train(File net, File events, int threads) throws IOException {
+                BayesNetEstimate est = new BayesNetEstimate(net.getPath(), events.getPath(), threads);
+                est.getBayesianNetwork();
+                return est.getCPTable();
+        }
+}
@@ -0,0 +1,107 @@
+/* ****************************************************************************************************************** *
+ * Name:        BayesNetServerTest.java
+ * Description: Tests of the scoring server.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.URI;
+import java.net.http.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class BayesNetServerTest {
+        @TempDir
+        Path dir;
+
+        private BayesNetServer server;
+        private HttpClient client;
+
+        @BeforeEach
+        void start() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b");
+                File events = TestFiles.randomEvents(dir, "train.csv", new String[] {"a", "b", "c"}, 200, 1);
+                File model = dir.resolve("model.bin").toFile();
+                ModelFile.write(TestFiles.train(net, events), model);
+                server = new BayesNetServer(model, 0, 1);      // One thread, so every request reuses its buffers
+                server.start(0);
+                client = HttpClient.newHttpClient();
+        }
+
+        @AfterEach
+        void stop() {
+                server.stop();
+        }
+
+        @Test
+        void failedRequestDoesNotLeakIntoNextResponse() throws Exception {
+                HttpResponse<String> first = post("a,b,c\n1,0,?\n");
+                assertEquals(200, first.statusCode());
+
+                /* A good line, then a line with no unknown variable */
+                HttpResponse<String> failed = post("a,b,c\n0,1,?\n1,1,0\n");
+                assertEquals(400, failed.statusCode());
+
+                HttpResponse<String> next = post("a,b,c\n1,0,?\n");
+                assertEquals(200, next.statusCode());
+                assertEquals(first.body(), next.body());
+        }
+
+        @Test
+        void headerWithoutEveryNodeIsRejected() throws Exception {
+                HttpResponse<String> r = post("a,c\n1,?\n");
+                assertEquals(400, r.statusCode());
+                assertTrue(r.body().contains("b"), r.body());
+        }
+
+        @Test
+        void bindingsAreBoundedByRecentUse() throws Exception {
+                String expected = post("a,b,c\n1,0,?\n").body();
+                for (int i = 0; i < BayesNetServer.MAX_BINDINGS + 8; i++) {
+                        HttpResponse<String> r = post("a,b,c,x" + i + "\n1,0,?,0\n");
+                        assertEquals(200, r.statusCode());
+                        assertEquals(expected.trim() + ",0", r.body().trim());
+                        assertTrue(server.getBindingCount() <= BayesNetServer.MAX_BINDINGS);
+                }
+                assertEquals(BayesNetServer.MAX_BINDINGS, server.getBindingCount());
+
+                /* The evicted first header is bound again */
+                assertEquals(expected, post("a,b,c\n1,0,?\n").body());
+                assertEquals(BayesNetServer.MAX_BINDINGS, server.getBindingCount());
+        }
+
+        @Test
+        void longRequestsAreRefused() throws Exception {
+                String body = "a,b,c\n1,0,?\n0,1,?\n";
+                String expected = post(body).body();
+                server.setMaxRequest(body.length());
+                assertEquals(expected, post(body).body());
+
+                /* One byte too long, with a length and chunked without one */
+                String longer = body + "\n";
+                assertEquals(413, post(longer).statusCode());
+                URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/classify");
+                byte[] bytes = longer.getBytes(StandardCharsets.ISO_8859_1);
+                HttpRequest chunked = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofInputStream(
+                                                () -> new ByteArrayInputStream(bytes))).build();
+                assertEquals(413, client.send(chunked, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+                assertEquals(expected, post(body).body());
+                assertThrows(IllegalArgumentException.class, () -> server.setMaxRequest(0));
+        }
+
+        /** Posts a request body to the classify endpoint. */
+        private HttpResponse<String> post(String body) throws Exception {
+                URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/classify");
+                HttpRequest req = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+                return client.send(req, HttpResponse.BodyHandlers.ofString());
+        }
+}
@@ -0,0 +1,45 @@
+/* ****************************************************************************************************************** *
+ * Name:        CPTableTest.java
+ * Description: Tests of the flat table of counts of a bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+class CPTableTest {
+        @Test
+        void storeCopiesCountsPlusOne() {
+                Node[] net = {new Node("a", new int[0]), new Node("b", new int[] {0})};
+                CPTable cpt = new CPTable(net);
+                cpt.num[0] = 3;
+                cpt.denom[0] = 5;
+                cpt.denom[2] = 7;
+
+                cpt.store(net);
+                assertEquals(4, net[0].probs[0].num);
+                assertEquals(6, net[0].probs[0].denom);
+                assertEquals(8, net[1].probs[1].denom);
+                assertEquals(1, net[1].probs[0].denom);
+        }
+
+        @Test
+        void countsTooLargeForFracAreRejected() {
+                Node[] net = {new Node("a", new int[0]), new Node("b", new int[] {0})};
+                CPTable cpt = new CPTable(net);
+                cpt.num[2] = 1;
+                cpt.denom[2] = Integer.MAX_VALUE;
+
+                IllegalStateException e = assertThrows(IllegalStateException.class, () -> cpt.store(net));
+                assertTrue(e.getMessage().contains("Node b"), e.getMessage());
+                assertEquals(1, net[1].probs[1].num, "network left unchanged");
+                cpt.denom[2] = Integer.MAX_VALUE - 1;
+                cpt.store(net);
+                assertEquals(Integer.MAX_VALUE, net[1].probs[1].denom);
+        }
+}
@@ -0,0 +1,165 @@
+/* ****************************************************************************************************************** *
+ * Name:        CompiledScorerTest.java
+ * Description: Tests of the log odds scorers against exact event probabilities.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompiledScorerTest {
+        @TempDir
+        Path dir;
+
+        @Test
+        void logOddsMatchExactOnEveryRow() throws IOException {
+                /* Enough events that every parent configuration is observed, so no entry is certain */
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a", "d: b c", "e: c d");
+                String[] names = {"a", "b", "c", "d", "e"};
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", names, 500, 13));
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                CompiledScorer scorer = new CompiledScorer(cpt, new LogTable(cpt, blanket), blanket,
+                                                           new int[] {0, 1, 2, 3, 4});
+                byte[] row = new byte[names.length];
+                boolean[] values = new boolean[names.length];
+
+                for (int query = 0; query < names.length; query++) {
+                        for (int m = 0; m < (1 << names.length); m++) {
+                                for (int i = 0; i < names.length; i++) {
+                                        values[i] = ((m >>> i) & 1) != 0;
+                                        row[i] = values[i] ? CsvTokenizer.TRUE : CsvTokenizer.FALSE;
+                                }
+                                row[query] = CsvTokenizer.UNKNOWN;
+                                values[query] = true;
+                                double probTrue = cpt.calcExactEventProb(values);
+                                values[query] = false;
+                                double probFalse = cpt.calcExactEventProb(values);
+                                assertEquals(Math.log(probTrue / probFalse), scorer.logOdds(query, row), 1e-9,
+                                             "query " + query + ", model " + m);
+                        }
+                }
+        }
+
+        /**
+         * Trains q: ; c: q ; d: q under the default smoothing, where c is always true and d is always q, so
+         * P(c = true | q) is exactly 1 for both values of q and P(d = true | q = true) is exactly 1.
+         */
+        private CPTable certainNetwork() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "q:", "c: q", "d: q");
+                Random r = new Random(3);
+                String[] lines = new String[101];
+                lines[0] = "q,c,d";
+                for (int i = 1; i < lines.length; i++) {
+                        int q = r.nextInt(2);
+                        lines[i] = q + ",1," + q;
+                }
+                return TestFiles.train(net, TestFiles.write(dir, "train.csv", lines));
+        }
+
+        @Test
+        void certainEntriesFollowExactTieRule() throws IOException {
+                CPTable cpt = certainNetwork();
+                assertEquals(1.0, cpt.getTrueProb(1, 0));       // c given q true
+                assertEquals(1.0, cpt.getTrueProb(1, 1));       // c given q false
+                assertAgreesWithExact(cpt, 0);
+        }
+
+        @Test
+        void zeroFactorOutsideBlanketIsTie() throws IOException {
+                /* d is outside c's blanket, and its factor is 0 when q is true and d false */
+                CPTable cpt = certainNetwork();
+                for (int query = 0; query < cpt.size(); query++) assertAgreesWithExact(cpt, query);
+        }
+
+        @Test
+        void zeroFactorOutsideBlanketIsIgnoredWithoutExactTies() throws IOException {
+                /* c is outside d's blanket, and its factor is 0 when c is false */
+                CPTable cpt = certainNetwork();
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                LogTable logTable = new LogTable(cpt, blanket);
+                CompiledScorer scorer = new CompiledScorer(cpt, logTable, blanket, new int[] {0, 1, 2});
+                assertEquals(0, logTable.guards(2).length);
+
+                /* q false, c false: d's blanket alone gives the log odds */
+                double prob = cpt.getTrueProb(2, 1);
+                byte[] row = {CsvTokenizer.FALSE, CsvTokenizer.FALSE, CsvTokenizer.UNKNOWN};
+                boolean[] values = new boolean[3];
+                assertEquals(Math.log(prob / (1 - prob)), scorer.logOdds(2, row), 1e-12);
+                assertEquals(Math.log(prob / (1 - prob)), logTable.logOdds(2, values), 1e-12);
+                assertTrue(scorer.logOdds(2, row) < 0);
+                assertEquals(0, new LogTable(cpt, blanket, true).logOdds(2, values));
+        }
+
+        /**
+         * Scores every assignment of the variables other than a query with each scorer, with exact ties, and checks the
+         * predictions against comparing the exact event probabilities of the query's values, which predicts true on a
+         * tie.
+         */
+        static void assertAgreesWithExact(CPTable cpt, int query) {
+                int n = cpt.size();
+                int[] identity = new int[n];
+                for (int i = 0; i < n; i++) identity[i] = i;
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                LogTable logTable = new LogTable(cpt, blanket, true);
+                CompiledScorer scorer = new CompiledScorer(cpt, logTable, blanket, identity);
+                VariableElimination elim = new VariableElimination(cpt, null, true);
+                RowBlock block = new RowBlock(n);
+                byte[] row = new byte[n];
+                boolean[] values = new boolean[n];
+
+                int models = 1 << (n - 1);
+                double[] exact = new double[models];
+                for (int m = 0; m < models; m++) {
+                        setModel(m, query, row, values);
+                        values[query] = true;
+                        double probTrue = cpt.calcExactEventProb(values);
+                        values[query] = false;
+                        double probFalse = cpt.calcExactEventProb(values);
+                        boolean expected = probTrue >= probFalse;
+                        exact[m] = (probTrue > 0 && probFalse > 0) ? Math.log(probTrue / probFalse) : Double.NaN;
+                        String model = "query " + query + ", model " + m;
+
+                        double[] scored = {
+                                scorer.logOdds(query, row),
+                                logTable.logOdds(query, values),
+                                elim.logOdds(query, new int[0], 0, values)
+                        };
+                        for (double logOdds : scored) {
+                                assertFalse(Double.isNaN(logOdds), model);
+                                assertFalse(Double.isNaN(LogTable.posterior(logOdds)), model);
+                                assertEquals(expected, logOdds >= 0, model);
+                                if (!Double.isNaN(exact[m])) assertEquals(exact[m], logOdds, 1e-9, model);
+                        }
+                        block.add(row);
+                }
+
+                /* Block path agrees with row path */
+                double[] out = new double[block.size()];
+                scorer.logOdds(query, block, out);
+                for (int m = 0; m < models; m++) {
+                        setModel(m, query, row, values);
+                        assertEquals(scorer.logOdds(query, row), out[m], "query " + query + ", model " + m);
+                }
+        }
+
+        /** Sets the variables other than the query from the bits of a model number, and the query to unknown. */
+        private static void setModel(int m, int query, byte[] row, boolean[] values) {
+                for (int i = 0, bit = 0; i < row.length; i++) {
+                        if (i == query) {
+                                row[i] = CsvTokenizer.UNKNOWN;
+                                continue;
+                        }
+                        values[i] = ((m >>> bit++) & 1) != 0;
+                        row[i] = values[i] ? CsvTokenizer.TRUE : CsvTokenizer.FALSE;
+                }
+        }
+}
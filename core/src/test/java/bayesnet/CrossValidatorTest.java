@@ -0,0 +1,171 @@
+/* ****************************************************************************************************************** *
+ * Name:        CrossValidatorTest.java
+ * Description: Tests of k-fold cross-validation against training on the other folds directly.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class CrossValidatorTest {
+        private static final String[] NAMES = {"a", "b", "c", "spam", "e"};
+        private static final int FOLDS = 5;
+
+        @TempDir
+        Path dir;
+
+        /** Writes a network with a node of every kind, whose class variable spam has a parent and children. */
+        private File network() throws IOException {
+                return TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b [sparse]", "spam: b c",
+                                       "e: spam c [noisy-or]");
+        }
+
+        @Test
+        void foldCountsMatchTrainingOnOtherFolds() throws IOException {
+                File net = network();
+                File events = TestFiles.randomEvents(dir, "train.csv", NAMES, 400, 8);
+                CrossValidator cv = new CrossValidator(net.getPath(), events.getPath(), "spam", FOLDS, 1);
+                Evaluation[] result = cv.evaluate();
+                List<String> lines = new ArrayList<String>();
+                int[] fold = folds(cv, events, lines);
+                CPTable total = TestFiles.train(net, events);
+
+                for (int k = 0; k < FOLDS; k++) {
+                        File held = write("held.csv", lines, fold, k, true);
+                        File others = write("others.csv", lines, fold, k, false);
+                        CPTable cpt = total.copy();
+                        cpt.subtract(TestFiles.train(net, held));
+                        CPTable expected = TestFiles.train(net, others);
+                        assertArrayEquals(expected.num, cpt.num, "fold " + k);
+                        assertArrayEquals(expected.denom, cpt.denom, "fold " + k);
+                        assertSameProbabilities(expected, cpt, "fold " + k);
+
+                        /* The held out fold scores as it does against the network trained on the other folds */
+                        Evaluation e = evaluate(expected, lines, fold, k);
+                        assertSameEvaluation(e, result[k], "fold " + k);
+                }
+        }
+
+        @Test
+        void everyLineIsInExactlyOneFold() throws IOException {
+                File net = network();
+                File events = TestFiles.randomEvents(dir, "train.csv", NAMES, 1000, 9);
+                CrossValidator cv = new CrossValidator(net.getPath(), events.getPath(), "spam", FOLDS, 3);
+                Evaluation[] result = cv.evaluate();
+                int[] fold = folds(cv, events, new ArrayList<String>());
+
+                long[] count = new long[FOLDS];
+                for (int f : fold) {
+                        assertTrue(f >= 0 && f < FOLDS, "fold " + f);
+                        count[f]++;
+                }
+                long rows = 0;
+                for (int k = 0; k < FOLDS; k++) {
+                        assertTrue(count[k] > 0, "fold " + k + " is empty");
+                        assertEquals(count[k], result[k].getRows(), "fold " + k);
+                        rows += result[k].getRows();
+                }
+                assertEquals(1000, rows);
+        }
+
+        @Test
+        void resultsDoNotDependOnThreads() throws IOException {
+                File net = network();
+                File events = TestFiles.randomEvents(dir, "train.csv", NAMES, 2000, 10);
+                Smoothing[] smoothings = {Smoothing.DEFAULT, Smoothing.lidstone(0.5)};
+                Evaluation[][] expected = new CrossValidator(net.getPath(), events.getPath(), "spam", FOLDS, 1)
+                                                  .evaluate(smoothings);
+
+                for (int threads : new int[] {2, 3, 8}) {
+                        Evaluation[][] result = new CrossValidator(net.getPath(), events.getPath(), "spam", FOLDS,
+                                                                   threads).evaluate(smoothings);
+                        for (int i = 0; i < smoothings.length; i++) {
+                                for (int k = 0; k < FOLDS; k++) {
+                                        assertSameEvaluation(expected[i][k], result[i][k], threads + " threads, " +
+                                                             smoothings[i] + ", fold " + k);
+                                }
+                        }
+                }
+        }
+
+        /**
+         * Finds the fold of every line of an events file from its offset, as the cross-validator assigns them.
+         *
+         * @param cv Cross-validator.
+         * @param events Events file, with a header and lines ending in a newline.
+         * @param lines List to add the lines after the header to.
+         * @return Fold of each line.
+         */
+        private static int[] folds(CrossValidator cv, File events, List<String> lines) throws IOException {
+                byte[] bytes = Files.readAllBytes(events.toPath());
+                int start = 0;
+                while (bytes[start++] != '\n') ;
+                List<Integer> fold = new ArrayList<Integer>();
+                for (int end = start; end < bytes.length; start = ++end) {
+                        while (bytes[end] != '\n') end++;
+                        fold.add(cv.foldOf(start));
+                        lines.add(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+                }
+                int[] f = new int[fold.size()];
+                for (int i = 0; i < f.length; i++) f[i] = fold.get(i);
+                return f;
+        }
+
+        /** Writes an events file of the lines in, or not in, a fold. */
+        private File write(String name, List<String> lines, int[] fold, int k, boolean in) throws IOException {
+                List<String> out = new ArrayList<String>();
+                out.add(String.join(",", NAMES));
+                for (int i = 0; i < lines.size(); i++) if ((fold[i] == k) == in) out.add(lines.get(i));
+                return TestFiles.write(dir, name, out.toArray(new String[out.size()]));
+        }
+
+        /** Scores the lines of a fold one at a time with a trained network. */
+        private static Evaluation evaluate(CPTable cpt, List<String> lines, int[] fold, int k) {
+                cpt.freeze(Smoothing.DEFAULT);
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                CompiledScorer scorer = new CompiledScorer(cpt, new LogTable(cpt, blanket), blanket,
+                                                           new int[] {0, 1, 2, 3, 4});
+                Evaluation e = new Evaluation();
+                byte[] row = new byte[NAMES.length];
+                for (int i = 0; i < lines.size(); i++) {
+                        if (fold[i] != k) continue;
+                        String line = lines.get(i);
+                        for (int c = 0; c < row.length; c++) {
+                                row[c] = (line.charAt(2 * c) == '1') ? CsvTokenizer.TRUE : CsvTokenizer.FALSE;
+                        }
+                        e.add(row[3] == CsvTokenizer.TRUE, scorer.logOdds(3, row));
+                }
+                return e;
+        }
+
+        /** Checks that two tables give every model of the network the same exact probability. */
+        private static void assertSameProbabilities(CPTable expected, CPTable actual, String message) {
+                expected.freeze(Smoothing.DEFAULT);
+                actual.freeze(Smoothing.DEFAULT);
+                boolean[] values = new boolean[NAMES.length];
+                for (int m = 0; m < (1 << values.length); m++) {
+                        for (int i = 0; i < values.length; i++) values[i] = ((m >>> i) & 1) != 0;
+                        assertEquals(expected.calcExactEventProb(values), actual.calcExactEventProb(values), 1e-15,
+                                     message + ", model " + m);
+                }
+        }
+
+        /** Checks that two evaluations have the same confusion matrix and log-loss. */
+        private static void assertSameEvaluation(Evaluation expected, Evaluation actual, String message) {
+                assertEquals(expected.getTruePositives(), actual.getTruePositives(), message);
+                assertEquals(expected.getFalsePositives(), actual.getFalsePositives(), message);
+                assertEquals(expected.getTrueNegatives(), actual.getTrueNegatives(), message);
+                assertEquals(expected.getFalseNegatives(), actual.getFalseNegatives(), message);
+                assertEquals(expected.getLogLoss(), actual.getLogLoss(), 1e-12, message);
+        }
+}
@@ -0,0 +1,161 @@
+/* ****************************************************************************************************************** *
+ * Name:        CsvTokenizerTest.java
+ * Description: Tests of tokenizing CSV files across windows, ranges and projections.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class CsvTokenizerTest {
+        private static final int COLUMNS = 4;
+
+        @TempDir
+        Path dir;
+
+        private List<String> lines;             // Non-blank lines of data, in order
+        private File data;                      // Lines with CRLF and LF line ends, blank lines and no final newline
+
+        @BeforeEach
+        void writeData() throws IOException {
+                Random r = new Random(3);
+                lines = new ArrayList<String>();
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 200; i++) {
+                        StringBuilder line = new StringBuilder();
+                        for (int c = 0; c < COLUMNS; c++) {
+                                String[] cells = {"0", "1", "?", "x", "10", ""};
+                                line.append((c == 0) ? "" : ",").append(cells[r.nextInt(cells.length)]);
+                        }
+                        lines.add(line.toString());
+                        sb.append(line).append(r.nextBoolean() ? "\r\n" : "\n");
+                        if (r.nextInt(10) == 0) sb.append("\n");
+                }
+                sb.setLength(sb.length() - 1);
+                if (sb.charAt(sb.length() - 1) == '\r') sb.setLength(sb.length() - 1);
+                Path p = dir.resolve("data.csv");
+                Files.write(p, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+                data = p.toFile();
+        }
+
+        @Test
+        void smallWindowsAreRemappedAtLineStarts() throws IOException {
+                /* The longest line is 4 cells of 2 bytes, 3 commas and a CRLF */
+                for (int window : new int[] {13, 14, 29, 64, CsvTokenizer.WINDOW}) {
+                        try (CsvTokenizer tok = new CsvTokenizer(data, 0, Long.MAX_VALUE, window)) {
+                                assertLines(tok, lines, "window " + window);
+                        }
+                }
+        }
+
+        @Test
+        void lineLongerThanWindowIsRejected() throws IOException {
+                try (CsvTokenizer tok = new CsvTokenizer(data, 0, Long.MAX_VALUE, 4)) {
+                        IOException e = assertThrows(IOException.class, () -> {
+                                while (tok.next(new byte[COLUMNS])) continue;
+                        });
+                        assertTrue(e.getMessage().contains("longer than 4 bytes"), e.getMessage());
+                }
+        }
+
+        @Test
+        void rangesReadEveryLineOnce() throws IOException {
+                /* Split at the line starts nearest to each quarter of the file */
+                byte[] bytes = Files.readAllBytes(data.toPath());
+                long[] cuts = new long[5];
+                cuts[4] = bytes.length;
+                for (int q = 1; q < 4; q++) {
+                        int p = bytes.length * q / 4;
+                        while (bytes[p - 1] != '\n') p++;
+                        cuts[q] = p;
+                }
+
+                List<String> read = new ArrayList<String>();
+                for (int q = 0; q < 4; q++) {
+                        try (CsvTokenizer tok = new CsvTokenizer(data, cuts[q], cuts[q + 1], 16)) {
+                                while (tok.next(new byte[COLUMNS])) read.add(line(tok));
+                                assertEquals(cuts[q + 1], tok.position(), "range " + q);
+                        }
+                }
+                assertEquals(lines, read);
+        }
+
+        @Test
+        void bufferIsReadLikeFile() throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(data.toPath()));
+                assertLines(new CsvTokenizer(buf), lines, "buffer");
+        }
+
+        @Test
+        void projectionDecodesOnlyProjectedColumns() throws IOException {
+                /* Columns 1 and 3 into slots 1 and 0; column 2 is skipped and column 4 is past the projection */
+                String text = "?,1,?,0,?\n1,?,x\n0,0,0,1\n";
+                CsvTokenizer tok = new CsvTokenizer(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+                tok.setProjection(new int[] {-1, 1, -1, 0});
+                byte[] row = new byte[2];
+
+                assertTrue(tok.next(row));
+                assertArrayEquals(new byte[] {CsvTokenizer.FALSE, CsvTokenizer.TRUE}, row);
+                assertEquals(0, tok.unknownCount());
+                assertEquals(-1, tok.lastUnknown());
+
+                IOException e = assertThrows(IOException.class, () -> tok.next(row));
+                assertTrue(e.getMessage().contains("expected 4"), e.getMessage());
+
+                assertTrue(tok.next(row));
+                assertArrayEquals(new byte[] {CsvTokenizer.TRUE, CsvTokenizer.FALSE}, row);
+                assertFalse(tok.next(row));
+        }
+
+        @Test
+        void projectionReportsSlotOfUnknownCell() throws IOException {
+                String text = "a,b,c\n0,1,?\n";
+                CsvTokenizer tok = new CsvTokenizer(ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1)));
+                assertArrayEquals(new String[] {"a", "b", "c"}, tok.readHeader());
+                tok.setProjection(new int[] {2, 0, 1});
+                byte[] row = new byte[3];
+
+                assertTrue(tok.next(row));
+                assertArrayEquals(new byte[] {CsvTokenizer.TRUE, CsvTokenizer.UNKNOWN, CsvTokenizer.FALSE}, row);
+                assertEquals(1, tok.lastUnknown());
+                assertEquals(4, tok.lastUnknownOffset());
+        }
+
+        /** Checks that a tokenizer reads the given lines, decoding each cell as the class documents. */
+        private static void assertLines(CsvTokenizer tok, List<String> expected, String source) throws IOException {
+                byte[] row = new byte[COLUMNS];
+                for (int i = 0; i < expected.size(); i++) {
+                        String message = source + ", line " + i;
+                        assertTrue(tok.next(row), message);
+                        assertEquals(expected.get(i), line(tok), message);
+                        String[] cells = expected.get(i).split(",", -1);
+                        int unknowns = 0;
+                        for (int c = 0; c < COLUMNS; c++) {
+                                byte v = cells[c].equals("1") ? CsvTokenizer.TRUE
+                                         : cells[c].equals("?") ? CsvTokenizer.UNKNOWN : CsvTokenizer.FALSE;
+                                assertEquals(v, row[c], message + ", column " + c);
+                                if (v == CsvTokenizer.UNKNOWN) unknowns++;
+                        }
+                        assertEquals(unknowns, tok.unknownCount(), message);
+                }
+                assertFalse(tok.next(row), source);
+        }
+
+        /** Gets the current line of a tokenizer. */
+        private static String line(CsvTokenizer tok) {
+                byte[] line = new byte[tok.lineLength()];
+                tok.getLine(line);
+                return new String(line, StandardCharsets.ISO_8859_1);
+        }
+}
@@ -0,0 +1,42 @@
+/* ****************************************************************************************************************** *
+ * Name:        MetricsTest.java
+ * Description: Tests of the metrics of training and classification.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+class MetricsTest {
+        @Test
+        void blocksAreNotInLatencyPercentiles() {
+                Metrics m = new Metrics();
+                m.latency(2000, 1);
+                m.latency(4000, 1);
+                m.block(1_000_000, 500);
+
+                assertEquals(3.0, m.getLatencyMeanMicros(), 1e-9);
+                assertTrue(m.getLatencyMaxMicros() <= 4.0, "max " + m.getLatencyMaxMicros());
+                assertEquals(1, m.getBlocks());
+                assertEquals(500, m.getBlockRows());
+                assertEquals(500_000, m.getBlockRowsPerSecond(), 1e-6);
+                assertTrue(m.toJson().contains("\"blockRowsPerSecond\": 500000.0"), m.toJson());
+        }
+
+        @Test
+        void percentilesFallInBucketOfRank() {
+                Metrics m = new Metrics();
+                m.latency(1000, 90);
+                m.latency(100_000, 10);
+
+                /* Buckets are accurate to 12.5% */
+                assertEquals(1.0, m.getLatencyP50Micros(), 0.125);
+                assertEquals(100.0, m.getLatencyP99Micros(), 12.5);
+                assertEquals(100.0, m.getLatencyMaxMicros(), 1e-9);
+        }
+}
@@ -0,0 +1,112 @@
+/* ****************************************************************************************************************** *
+ * Name:        ModelFileTest.java
+ * Description: Tests of writing and reading trained networks as model files.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class ModelFileTest {
+        private static final String[] NAMES = {"a", "b", "c", "d"};
+
+        @TempDir
+        Path dir;
+
+        @Test
+        void everyKindRoundTrips() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a [sparse]", "c: a b [noisy-or]", "d: b c");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 4));
+                File model = dir.resolve("model.bin").toFile();
+                ModelFile.write(cpt, model);
+                CPTable read = ModelFile.read(model);
+
+                assertSameNetwork(cpt, read);
+                assertArrayEquals(cpt.num, read.num);
+                assertArrayEquals(cpt.denom, read.denom);
+        }
+
+        @Test
+        void versionOneIsReadAsDense() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b", "d: b c");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 4));
+
+                /* Version 1 has no kinds */
+                File model = dir.resolve("v1.bin").toFile();
+                try (DataOutputStream out = new DataOutputStream(new FileOutputStream(model))) {
+                        out.writeInt(ModelFile.MAGIC);
+                        out.writeInt(1);
+                        out.writeInt(cpt.size());
+                        for (int i = 0; i < cpt.size(); i++) {
+                                byte[] name = cpt.getName(i).getBytes(StandardCharsets.UTF_8);
+                                out.writeInt(name.length);
+                                out.write(name);
+                                out.writeInt(cpt.getParents(i).length);
+                                for (int p : cpt.getParents(i)) out.writeInt(p);
+                        }
+                        for (long n : cpt.num) out.writeLong(n);
+                        for (long d : cpt.denom) out.writeLong(d);
+                }
+
+                CPTable read = ModelFile.read(model);
+                for (int i = 0; i < read.size(); i++) assertEquals(CPTKind.DENSE, read.getKind(i));
+                assertSameNetwork(cpt, read);
+        }
+
+        @Test
+        void damagedFilesAreRejected() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a [sparse]", "c: a b [noisy-or]", "d: b c");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 50, 4));
+                File model = dir.resolve("model.bin").toFile();
+                ModelFile.write(cpt, model);
+                byte[] bytes = Files.readAllBytes(model.toPath());
+
+                assertRejected(Arrays.copyOf(bytes, bytes.length - 1), "corrupt");
+                assertRejected(Arrays.copyOf(bytes, bytes.length + 1), "after counts");
+                byte[] version = bytes.clone();
+                version[7] = 9;
+                assertRejected(version, "version 9");
+                byte[] magic = bytes.clone();
+                magic[0] = 0;
+                assertRejected(magic, "not a model file");
+        }
+
+        /** Checks that a file with the given bytes is rejected with a message containing the given text. */
+        private void assertRejected(byte[] bytes, String text) throws IOException {
+                File model = dir.resolve("damaged.bin").toFile();
+                Files.write(model.toPath(), bytes);
+                IOException e = assertThrows(IOException.class, () -> ModelFile.read(model));
+                assertTrue(e.getMessage().contains(text), e.getMessage());
+        }
+
+        /**
+         * Checks that two tables have the same structure and the same exact probability of every model of the
+         * network.
+         */
+        private static void assertSameNetwork(CPTable expected, CPTable actual) {
+                assertEquals(expected.size(), actual.size());
+                for (int i = 0; i < expected.size(); i++) {
+                        assertEquals(expected.getName(i), actual.getName(i));
+                        assertArrayEquals(expected.getParents(i), actual.getParents(i));
+                        assertEquals(expected.getKind(i), actual.getKind(i));
+                }
+                expected.freeze(Smoothing.DEFAULT);
+                actual.freeze(Smoothing.DEFAULT);
+                boolean[] values = new boolean[expected.size()];
+                for (int m = 0; m < (1 << values.length); m++) {
+                        for (int i = 0; i < values.length; i++) values[i] = ((m >>> i) & 1) != 0;
+                        assertEquals(expected.calcExactEventProb(values), actual.calcExactEventProb(values),
+                                     "model " + m);
+                }
+        }
+}
@@ -0,0 +1,132 @@
+/* ****************************************************************************************************************** *
+ * Name:        NodeCPTTest.java
+ * Description: Tests of the sparse and noisy-OR conditional probability tables.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class NodeCPTTest {
+        @TempDir
+        Path dir;
+
+        /**
+         * Writes events for a, b and c in which a and b are never both true, and c is mostly a or b, so the
+         * configuration of c's parents with both true is never observed.
+         */
+        private File events() throws IOException {
+                Random r = new Random(6);
+                String[] lines = new String[301];
+                lines[0] = "a,b,c";
+                for (int i = 1; i < lines.length; i++) {
+                        int a = r.nextInt(2), b = (a == 1) ? 0 : r.nextInt(2);
+                        int c = (r.nextInt(8) == 0) ? 1 - (a | b) : (a | b);
+                        lines[i] = a + "," + b + "," + c;
+                }
+                return TestFiles.write(dir, "train.csv", lines);
+        }
+
+        @Test
+        void sparseMatchesDenseForObservedConfigurations() throws IOException {
+                File events = events();
+                CPTable dense = TestFiles.train(TestFiles.write(dir, "dense.txt", "a:", "b: a", "c: a b"), events);
+                CPTable sparse = TestFiles.train(TestFiles.write(dir, "sparse.txt", "a:", "b: a", "c: a b [sparse]"),
+                                                 events);
+                SparseCPT table = (SparseCPT)sparse.tables[2];
+                assertEquals(3, table.size());
+
+                /* Key 0 is both parents true, which is never observed */
+                for (long key = 1; key < 4; key++) assertEquals(dense.getTrueProb(2, key), sparse.getTrueProb(2, key));
+                double marginal = (count(events, 2) + 1.0) / (300 + 2);
+                assertEquals(marginal, table.getDefaultProb(), 1e-12);
+                assertEquals(marginal, sparse.getTrueProb(2, 0), 1e-12);
+        }
+
+        @Test
+        void noisyOrFollowsItsFormula() throws IOException {
+                File events = events();
+                CPTable cpt = TestFiles.train(TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b [noisy-or]"),
+                                              events);
+                NoisyOrCPT table = (NoisyOrCPT)cpt.tables[2];
+
+                /* Counts of the leak and of each parent being true, straight from the events */
+                long[] all = new long[4], cTrue = new long[4];  // By a * 2 + b
+                try (BufferedReader in = new BufferedReader(new FileReader(events))) {
+                        in.readLine();
+                        for (String line; (line = in.readLine()) != null; ) {
+                                int cfg = (line.charAt(0) - '0') * 2 + (line.charAt(2) - '0');
+                                all[cfg]++;
+                                if (line.charAt(4) == '1') cTrue[cfg]++;
+                        }
+                }
+                double leak = (cTrue[0] + 1.0) / (all[0] + 2);
+                double qa = Math.min(1, (all[2] - cTrue[2] + 1.0) / (all[2] + 2) / (1 - leak));
+                double qb = Math.min(1, (all[1] - cTrue[1] + 1.0) / (all[1] + 2) / (1 - leak));
+                assertEquals(leak, table.getLeak(), 1e-12);
+
+                /* A parent which is true has its bit of the key clear */
+                assertEquals(leak, cpt.getTrueProb(2, 3), 1e-12);
+                assertEquals(1 - (1 - leak) * qb, cpt.getTrueProb(2, 2), 1e-12);
+                assertEquals(1 - (1 - leak) * qa, cpt.getTrueProb(2, 1), 1e-12);
+                assertEquals(1 - (1 - leak) * qa * qb, cpt.getTrueProb(2, 0), 1e-12);
+        }
+
+        @Test
+        void scorersAgreeWithExactForEveryKind() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b [sparse]", "d: b c [noisy-or]",
+                                           "e: c d [sparse]");
+                String[] names = {"a", "b", "c", "d", "e"};
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", names, 20, 2));
+                for (int query = 0; query < cpt.size(); query++) CompiledScorerTest.assertAgreesWithExact(cpt, query);
+        }
+
+        @Test
+        void sparseIsDefaultForHighFanIn() throws IOException {
+                int p = CPTKind.MAX_DENSE_PARENTS + 2;
+                String[] names = new String[p + 1];
+                String[] lines = new String[p + 1];
+                StringBuilder parents = new StringBuilder("c:");
+                for (int i = 0; i < p; i++) {
+                        names[i] = "p" + i;
+                        lines[i] = names[i] + ":";
+                        parents.append(' ').append(names[i]);
+                }
+                names[p] = "c";
+                lines[p] = parents.toString();
+                File net = TestFiles.write(dir, "net.txt", lines);
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", names, 50, 5));
+
+                assertEquals(CPTKind.SPARSE, cpt.getKind(p));
+                SparseCPT table = (SparseCPT)cpt.tables[p];
+                assertTrue(table.size() <= 50, "size " + table.size());
+                boolean[] values = new boolean[p + 1];
+                double[] probs = new double[2];
+                for (int v = 0; v < 2; v++) {
+                        values[p] = (v == 1);
+                        probs[v] = cpt.calcExactEventProb(values);
+                }
+                assertEquals(1.0, probs[0] / probs[1] * table.getDefaultProb() / (1 - table.getDefaultProb()), 1e-9);
+        }
+
+        /** Counts the lines of an events file in which a column is true. */
+        private static long count(File events, int column) throws IOException {
+                long n = 0;
+                try (BufferedReader in = new BufferedReader(new FileReader(events))) {
+                        in.readLine();
+                        for (String line; (line = in.readLine()) != null; ) {
+                                if (line.split(",")[column].equals("1")) n++;
+                        }
+                }
+                return n;
+        }
+}
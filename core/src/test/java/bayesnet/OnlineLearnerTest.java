@@ -0,0 +1,133 @@
+/* ****************************************************************************************************************** *
+ * Name:        OnlineLearnerTest.java
+ * Description: Tests of incremental updates of a trained bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class OnlineLearnerTest {
+        private static final String[] NAMES = {"a", "b", "c"};
+
+        @TempDir
+        Path dir;
+
+        private File net;
+
+        @BeforeEach
+        void writeNetwork() throws IOException {
+                net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b");
+        }
+
+        @Test
+        void learningMatchesTrainingOnAllEvents() throws IOException {
+                File first = TestFiles.randomEvents(dir, "first.csv", NAMES, 100, 1);
+                File second = TestFiles.randomEvents(dir, "second.csv", NAMES, 150, 2);
+                File all = TestFiles.write(dir, "all.csv", concat(lines(first), tail(lines(second))));
+
+                OnlineLearner learner = new OnlineLearner(TestFiles.train(net, first), Integer.MAX_VALUE);
+                assertEquals(150, learner.learn(new FileInputStream(second)));
+                assertSameProbabilities(TestFiles.train(net, all), learner.getSnapshot().cpt);
+                assertEquals(150, learner.getSnapshot().rows);
+        }
+
+        @Test
+        void headerIsBoundBySchemaAcrossChunks() throws IOException {
+                File first = TestFiles.randomEvents(dir, "first.csv", NAMES, 100, 1);
+                File second = TestFiles.randomEvents(dir, "second.csv", NAMES, 150, 2);
+                File all = TestFiles.write(dir, "all.csv", concat(lines(first), tail(lines(second))));
+
+                /* Same events with the columns reordered, an extra column and CRLF line ends */
+                StringBuilder sb = new StringBuilder("extra,c,a,b\r\n");
+                for (String line : tail(lines(second))) {
+                        String[] cells = line.split(",");
+                        sb.append("?,").append(cells[2]).append(',').append(cells[0]).append(',').append(cells[1]);
+                        sb.append("\r\n");
+                }
+                byte[] data = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+                OnlineLearner learner = new OnlineLearner(TestFiles.train(net, first), Integer.MAX_VALUE);
+                assertEquals(150, learner.learn(new TrickleStream(data)));
+                assertSameProbabilities(TestFiles.train(net, all), learner.getSnapshot().cpt);
+        }
+
+        @Test
+        void headerWithoutEveryNodeIsRejected() throws IOException {
+                File first = TestFiles.randomEvents(dir, "first.csv", NAMES, 10, 1);
+                OnlineLearner learner = new OnlineLearner(TestFiles.train(net, first), Integer.MAX_VALUE);
+                byte[] data = "a,c\n1,0\n".getBytes(StandardCharsets.ISO_8859_1);
+                IOException e = assertThrows(IOException.class, () -> learner.learn(new ByteArrayInputStream(data)));
+                assertTrue(e.getMessage().contains("b"), e.getMessage());
+        }
+
+        @Test
+        void snapshotsArePublishedEveryInterval() throws IOException {
+                File first = TestFiles.randomEvents(dir, "first.csv", NAMES, 10, 1);
+                OnlineLearner learner = new OnlineLearner(TestFiles.train(net, first), 2);
+                OnlineLearner.Snapshot initial = learner.getSnapshot();
+                learner.update(new boolean[] {true, false, true});
+                assertSame(initial, learner.getSnapshot());
+                learner.update(new boolean[] {true, true, true});
+                assertNotSame(initial, learner.getSnapshot());
+                assertEquals(2, learner.getSnapshot().rows);
+        }
+
+        /** Checks that two tables of the same network have the same probability for every entry. */
+        private static void assertSameProbabilities(CPTable expected, CPTable actual) {
+                for (int i = 0; i < expected.size(); i++) {
+                        for (long key = 0; key < (1L << expected.getParents(i).length); key++) {
+                                assertEquals(expected.getTrueProb(i, key), actual.getTrueProb(i, key),
+                                             "node " + i + ", key " + key);
+                        }
+                }
+        }
+
+        private static List<String> lines(File f) throws IOException {
+                return Files.readAllLines(f.toPath(), StandardCharsets.ISO_8859_1);
+        }
+
+        private static List<String> tail(List<String> lines) {
+                return lines.subList(1, lines.size());
+        }
+
+        private static String[] concat(List<String> a, List<String> b) {
+                List<String> all = new ArrayList<String>(a);
+                all.addAll(b);
+                return all.toArray(new String[all.size()]);
+        }
+
+        /** Stream which returns at most a few bytes from each read, so lines are split between reads. */
+        private static class TrickleStream extends InputStream {
+                private final byte[] data;
+                private int pos;
+
+                TrickleStream(byte[] data) {
+                        this.data = data;
+                }
+
+                @Override
+                public int read() {
+                        return (pos < data.length) ? (data[pos++] & 0xff) : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                        if (pos == data.length) return -1;
+                        int n = Math.min(Math.min(len, 7), data.length - pos);
+                        System.arraycopy(data, pos, b, off, n);
+                        pos += n;
+                        return n;
+                }
+        }
+}
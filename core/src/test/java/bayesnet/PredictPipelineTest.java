@@ -0,0 +1,115 @@
+/* ****************************************************************************************************************** *
+ * Name:        PredictPipelineTest.java
+ * Description: Tests of classifying test data sequentially and with a pipeline of workers.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class PredictPipelineTest {
+        private static final String[] NAMES = {"a", "b", "c", "d", "e"};
+
+        @TempDir
+        Path dir;
+
+        private CPTable cpt;                    // Trained network
+        private File model;                     // Model file of trained network
+        private List<String> lines;             // Lines of test data, without the header
+        private File test;                      // Test data file
+
+        @BeforeEach
+        void writeFiles() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a", "d: b c", "e: d");
+                cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 21));
+                model = dir.resolve("model.bin").toFile();
+                ModelFile.write(cpt, model);
+
+                /* Runs of lines with the same query, so some are scored in blocks, and lines with two unknowns */
+                Random r = new Random(22);
+                lines = new ArrayList<String>();
+                for (int run = 0; lines.size() < 5000; run++) {
+                        int query = r.nextInt(NAMES.length), length = 1 + r.nextInt(300);
+                        for (int i = 0; i < length; i++) {
+                                char[] cells = new char[NAMES.length];
+                                for (int c = 0; c < cells.length; c++) cells[c] = (char)('0' + r.nextInt(2));
+                                cells[query] = '?';
+                                if (r.nextInt(10) == 0) cells[(query + 1 + r.nextInt(4)) % cells.length] = '?';
+                                StringBuilder sb = new StringBuilder();
+                                for (int c = 0; c < cells.length; c++) sb.append((c == 0) ? "" : ",").append(cells[c]);
+                                lines.add(sb.toString());
+                        }
+                }
+                String[] all = new String[lines.size() + 1];
+                all[0] = String.join(",", NAMES);
+                for (int i = 0; i < lines.size(); i++) all[i + 1] = lines.get(i);
+                test = TestFiles.write(dir, "test.csv", all);
+        }
+
+        @Test
+        void sequentialPredictionsAreExact() throws IOException {
+                List<String> out = predict(0, 1, 1);
+                assertEquals(lines.size() + 1, out.size());
+                boolean[] values = new boolean[NAMES.length];
+                for (int i = 0; i < lines.size(); i++) {
+                        String in = lines.get(i);
+                        int at = in.lastIndexOf('?'), query = at / 2;
+                        double[] prob = new double[2];
+                        for (int q = 0; q < 2; q++) {
+                                prob[q] = sum(in, query, q == 1, 0, values);
+                        }
+                        char expected = (prob[1] >= prob[0]) ? '1' : '0';
+                        assertEquals(in.substring(0, at) + expected + in.substring(at + 1), out.get(i + 1),
+                                     "line " + i);
+                }
+        }
+
+        @Test
+        void pipelineOutputMatchesSequential() throws IOException {
+                List<String> expected = predict(0, 1, 1);
+                int[][] configs = {{1, 1, 1}, {3, 7, 2}, {4, 1000, 1}, {8, 4096, 4}, {2, 10000, 3}};
+                for (int[] c : configs) {
+                        assertEquals(expected, predict(c[0], c[1], c[2]), Arrays.toString(c));
+                }
+        }
+
+        /** Classifies the test data with a model file and pipeline configuration, returning the output lines. */
+        private List<String> predict(int workers, int batchSize, int queueDepth) throws IOException {
+                File out = dir.resolve("out-" + workers + "-" + batchSize + ".csv").toFile();
+                BayesNetPredict bNetPred = new BayesNetPredict(model.getPath(), test.getPath());
+                bNetPred.setOutput(out.getPath(), PredictionWriter.Format.ROW);
+                bNetPred.setPipeline(workers, batchSize, queueDepth);
+                bNetPred.predict();
+                return Files.readAllLines(out.toPath(), StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Sums the exact event probabilities of a line with its query set to a value, over every assignment of its
+         * other unknown variables from a given node on.
+         */
+        private double sum(String line, int query, boolean value, int from, boolean[] values) {
+                if (from == values.length) return cpt.calcExactEventProb(values);
+                char cell = line.charAt(2 * from);
+                if (from == query) {
+                        values[from] = value;
+                } else if (cell != '?') {
+                        values[from] = (cell == '1');
+                } else {
+                        values[from] = true;
+                        double p = sum(line, query, value, from + 1, values);
+                        values[from] = false;
+                        return p + sum(line, query, value, from + 1, values);
+                }
+                return sum(line, query, value, from + 1, values);
+        }
+}
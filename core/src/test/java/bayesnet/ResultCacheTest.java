@@ -0,0 +1,111 @@
+/* ****************************************************************************************************************** *
+ * Name:        ResultCacheTest.java
+ * Description: Tests of the result cache and of scoring through it.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultCacheTest {
+        @TempDir
+        Path dir;
+
+        @Test
+        void leastRecentlyUsedEntryIsEvicted() {
+                /* Capacity 3 is two segments, of which the first holds 2; find three keys in it */
+                ResultCache cache = new ResultCache(3, null);
+                long[] keys = new long[3];
+                for (long k = 0, n = 0; n < keys.length; k++) {
+                        if ((ResultCache.hash(new long[] {k}, 0, 1) & 1) == 0) keys[(int)n++] = k;
+                }
+                double[] out = new double[1];
+                cache.put(keys, 0, 1, 0.0);
+                cache.put(keys, 1, 1, 1.0);
+                assertTrue(cache.get(keys, 0, 1, out, 0));      // First key is now most recently used
+                cache.put(keys, 2, 1, 2.0);
+
+                assertEquals(1, cache.getEvictions());
+                assertTrue(cache.get(keys, 0, 1, out, 0));
+                assertEquals(0.0, out[0]);
+                assertFalse(cache.get(keys, 1, 1, out, 0));
+                assertTrue(cache.get(keys, 2, 1, out, 0));
+                assertEquals(2.0, out[0]);
+        }
+
+        @Test
+        void sizeIsBoundedByCapacity() {
+                ResultCache cache = new ResultCache(100, null);
+                long[] key = new long[2];
+                for (int i = 0; i < 1000; i++) {
+                        key[0] = i;
+                        key[1] = -i;
+                        cache.put(key, 0, 2, i);
+                }
+                assertTrue(cache.size() <= 100, "size " + cache.size());
+                assertEquals(1000, cache.size() + cache.getEvictions());
+        }
+
+        @Test
+        void denseKernelHitsOnRepeatedEvidence() throws IOException {
+                CPTable cpt = denseNetwork();
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                LogTable logTable = new LogTable(cpt, blanket);
+                int[] identity = {0, 1, 2};
+                ResultCache cache = new ResultCache(16, null);
+                CompiledScorer cached = new CompiledScorer(cpt, logTable, blanket, identity, cache);
+                CompiledScorer plain = new CompiledScorer(cpt, logTable, blanket, identity);
+                byte[] row = {CsvTokenizer.UNKNOWN, CsvTokenizer.TRUE, CsvTokenizer.FALSE};
+
+                double expected = plain.logOdds(0, row);
+                assertEquals(expected, cached.logOdds(0, row));
+                assertEquals(expected, cached.logOdds(0, row));
+                assertEquals(1, cache.getHits());
+                assertEquals(1, cache.getMisses());
+
+                /* A block of the same row looks it up once more, and answers the rest as repeats */
+                RowBlock block = new RowBlock(3);
+                for (int r = 0; r < 10; r++) block.add(row);
+                double[] out = new double[block.size()];
+                cached.logOdds(0, block, out);
+                for (double logOdds : out) assertEquals(expected, logOdds);
+                assertEquals(1 + 10, cache.getHits());
+                assertEquals(1, cache.getMisses());
+        }
+
+        @Test
+        void eliminationHitsOnRepeatedEvidence() throws IOException {
+                CPTable cpt = denseNetwork();
+                ResultCache cache = new ResultCache(16, null);
+                VariableElimination cached = new VariableElimination(cpt, cache);
+                VariableElimination plain = new VariableElimination(cpt);
+                boolean[] values = {false, false, true};
+                int[] unknown = {1};
+
+                double expected = plain.logOdds(0, unknown, 1, values);
+                assertEquals(expected, cached.logOdds(0, unknown, 1, values));
+                assertEquals(expected, cached.logOdds(0, unknown, 1, values));
+                assertEquals(1, cache.getHits());
+                assertEquals(1, cache.getMisses());
+
+                /* Different evidence misses */
+                values[2] = false;
+                assertEquals(plain.logOdds(0, unknown, 1, values), cached.logOdds(0, unknown, 1, values));
+                assertEquals(2, cache.getMisses());
+        }
+
+        /** Trains a: ; b: a ; c: a b from random events, so every CPT is dense. */
+        private CPTable denseNetwork() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b");
+                File events = TestFiles.randomEvents(dir, "train.csv", new String[] {"a", "b", "c"}, 200, 5);
+                return TestFiles.train(net, events);
+        }
+}
@@ -0,0 +1,94 @@
+/* ****************************************************************************************************************** *
+ * Name:        RowBlockTest.java
+ * Description: Tests of columnar blocks of rows and of scoring them.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class RowBlockTest {
+        private static final String[] NAMES = {"a", "b", "c", "d", "e", "f"};
+
+        @TempDir
+        Path dir;
+
+        @Test
+        void cellsAreTrueOnlyForTrueCells() {
+                RowBlock block = new RowBlock(3);
+                for (int r = 0; r < RowBlock.ROWS; r++) {
+                        assertEquals(r, block.add(new byte[] {CsvTokenizer.TRUE, CsvTokenizer.UNKNOWN,
+                                                              (r % 3 == 0) ? CsvTokenizer.TRUE : CsvTokenizer.FALSE}));
+                }
+                assertThrows(IllegalStateException.class, () -> block.add(new byte[3]));
+                for (int r = 0; r < RowBlock.ROWS; r++) {
+                        assertTrue(block.get(r, 0));
+                        assertFalse(block.get(r, 1));
+                        assertEquals(r % 3 == 0, block.get(r, 2), "row " + r);
+                }
+
+                /* Clearing drops every bit, so refilled rows don't see the old ones */
+                block.clear();
+                assertEquals(0, block.size());
+                block.add(new byte[3]);
+                block.add(new byte[] {CsvTokenizer.FALSE, CsvTokenizer.FALSE, CsvTokenizer.TRUE});
+                assertFalse(block.get(0, 0));
+                assertFalse(block.get(0, 2));
+                assertTrue(block.get(1, 2));
+                assertEquals(3, block.columns());
+        }
+
+        @Test
+        void blockScoresMatchRowScores() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a", "d: b c", "e: d", "f: c e");
+                assertBlockMatchesRows(TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 8)));
+        }
+
+        @Test
+        void sparseRootScoresMatchRowScores() throws IOException {
+                /* A root's factor has no parents, so its index has no bits */
+                File net = TestFiles.write(dir, "net.txt", "a: [sparse]", "b: a", "c: a [sparse]", "d: b c", "e: d",
+                                           "f: c e");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 8));
+                assertEquals(CPTKind.SPARSE, cpt.getKind(0));
+                assertBlockMatchesRows(cpt);
+        }
+
+        /** Checks that scoring a full and then a partial block gives the log odds of scoring each row alone. */
+        private static void assertBlockMatchesRows(CPTable cpt) {
+                MarkovBlanket blanket = new MarkovBlanket(cpt);
+                CompiledScorer scorer = new CompiledScorer(cpt, new LogTable(cpt, blanket), blanket,
+                                                           new int[] {0, 1, 2, 3, 4, 5});
+                Random r = new Random(9);
+                RowBlock block = new RowBlock(NAMES.length);
+                double[] out = new double[RowBlock.ROWS];
+
+                /* A full block, then a partial block reusing the cleared one */
+                for (int rows : new int[] {RowBlock.ROWS, 100}) {
+                        byte[][] cells = new byte[rows][NAMES.length];
+                        block.clear();
+                        for (int i = 0; i < rows; i++) {
+                                for (int c = 0; c < NAMES.length; c++) cells[i][c] = (byte)r.nextInt(2);
+                                block.add(cells[i]);
+                        }
+                        for (int query = 0; query < NAMES.length; query++) {
+                                scorer.logOdds(query, block, out);
+                                for (int i = 0; i < rows; i++) {
+                                        byte[] row = cells[i].clone();
+                                        row[query] = CsvTokenizer.UNKNOWN;
+                                        assertEquals(scorer.logOdds(query, row), out[i], 1e-12,
+                                                     "query " + query + ", row " + i + " of " + rows);
+                                }
+                        }
+                }
+        }
+}
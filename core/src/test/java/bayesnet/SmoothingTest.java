@@ -0,0 +1,106 @@
+/* ****************************************************************************************************************** *
+ * Name:        SmoothingTest.java
+ * Description: Tests of the smoothing methods and of freezing tables under them.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class SmoothingTest {
+        @TempDir
+        Path dir;
+
+        @Test
+        void probabilitiesMatchHandCalculations() {
+                /* 3 true of 10 observations of a configuration */
+                assertEquals(4.0 / 11, Smoothing.DEFAULT.prob(3, 10, 2), 1e-15);
+                assertEquals(4.0 / 12, Smoothing.laplace().prob(3, 10, 2), 1e-15);
+                assertEquals(3.5 / 11, Smoothing.lidstone(0.5).prob(3, 10, 2), 1e-15);
+
+                /* ess 10 spread over the 2 * 2^k entries of a CPT: 2.5 pseudo counts each with 1 parent */
+                assertEquals(5.5 / 15, Smoothing.dirichlet(10).prob(3, 10, 1), 1e-15);
+                assertEquals(4.25 / 12.5, Smoothing.dirichlet(10).prob(3, 10, 2), 1e-15);
+                assertEquals(8.0 / 20, Smoothing.dirichlet(10).prob(3, 10, 0), 1e-15);
+
+                /* An unobserved configuration is certain only under FRACTION */
+                assertEquals(1.0, Smoothing.DEFAULT.prob(0, 0, 3));
+                assertEquals(0.5, Smoothing.laplace().prob(0, 0, 3));
+                assertEquals(0.5, Smoothing.lidstone(0.1).prob(0, 0, 3));
+                assertEquals(0.5, Smoothing.dirichlet(1).prob(0, 0, 3));
+        }
+
+        @Test
+        void estimatesMatchHandCalculations() {
+                assertEquals(4.0 / 12, Smoothing.DEFAULT.estimate(3, 10), 1e-15);
+                assertEquals(4.0 / 12, Smoothing.laplace().estimate(3, 10), 1e-15);
+                assertEquals(3.5 / 11, Smoothing.lidstone(0.5).estimate(3, 10), 1e-15);
+                assertEquals(8.0 / 20, Smoothing.dirichlet(10).estimate(3, 10), 1e-15);
+        }
+
+        @Test
+        void parseRoundTrips() {
+                assertSame(Smoothing.DEFAULT, Smoothing.parse("fraction"));
+                assertEquals(Smoothing.laplace(), Smoothing.parse("laplace"));
+                assertEquals(Smoothing.lidstone(0.5), Smoothing.parse("lidstone:0.5"));
+                assertEquals(Smoothing.dirichlet(10), Smoothing.parse("dirichlet:10"));
+                assertEquals(Smoothing.Method.DIRICHLET, Smoothing.parse("dirichlet:10").getMethod());
+                assertEquals(10, Smoothing.parse("dirichlet:10").getWeight());
+
+                for (Smoothing s : new Smoothing[] {Smoothing.DEFAULT, Smoothing.laplace(), Smoothing.lidstone(0.5),
+                                                    Smoothing.dirichlet(10)}) {
+                        assertEquals(s, Smoothing.parse(s.toString()), s.toString());
+                        assertEquals(s.hashCode(), Smoothing.parse(s.toString()).hashCode(), s.toString());
+                }
+                assertEquals("lidstone:0.5", Smoothing.lidstone(0.5).toString());
+                assertNotEquals(Smoothing.lidstone(0.5), Smoothing.dirichlet(0.5));
+        }
+
+        @Test
+        void badSmoothingsAreRejected() {
+                for (String s : new String[] {"lidstone", "dirichlet", "laplace:1", "fraction:1", "bogus",
+                                              "lidstone:0", "dirichlet:-1", "lidstone:NaN", "lidstone:Infinity",
+                                              "lidstone:x"}) {
+                        assertThrows(IllegalArgumentException.class, () -> Smoothing.parse(s), s);
+                }
+        }
+
+        @Test
+        void freezingChangesScoredProbabilities() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a b [sparse]");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv",
+                                                                          new String[] {"a", "b", "c"}, 40, 17));
+                cpt.freeze(Smoothing.DEFAULT);
+                boolean[] values = {true, false, true};
+                double before = cpt.calcExactEventProb(values);
+
+                Smoothing s = Smoothing.dirichlet(4);
+                cpt.freeze(s);
+                assertSame(s, cpt.getSmoothing());
+                assertTrue(cpt.isFrozen());
+
+                /* a is true: key 0; b is false given a true: key 0 of b; c given a true and b false: key 1 */
+                long aNum = cpt.num[cpt.cptOff[0]], aDenom = cpt.denom[cpt.cptOff[0]];
+                long bNum = cpt.num[cpt.cptOff[1]], bDenom = cpt.denom[cpt.cptOff[1]];
+                double a = (aNum + 2.0) / (aDenom + 4.0), b = (bNum + 1.0) / (bDenom + 2.0);
+                assertEquals(a, cpt.getTrueProb(0, 0), 1e-15);
+                assertEquals(b, cpt.getTrueProb(1, 0), 1e-15);
+                double c = cpt.getTrueProb(2, 1);
+                double after = cpt.calcExactEventProb(values);
+                assertEquals(a * (1 - b) * c, after, 1e-15);
+                assertNotEquals(before, after);
+
+                /* Freezing again under the default restores the first probabilities */
+                cpt.freeze(Smoothing.DEFAULT);
+                assertEquals(before, cpt.calcExactEventProb(values));
+                assertEquals((aNum + 1.0) / (aDenom + 1.0), cpt.getTrueProb(0, 0), 1e-15);
+        }
+}
@@ -0,0 +1,56 @@
+/* ****************************************************************************************************************** *
+ * Name:        StructureLearnerTest.java
+ * Description: Tests of learning the structure of a bayesian network.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class StructureLearnerTest {
+        @TempDir
+        Path dir;
+
+        @Test
+        void chainIsLearntWithAnyNumberOfThreads() throws IOException {
+                /* b copies a and c copies b, each with some noise */
+                Random r = new Random(7);
+                String[] lines = new String[2001];
+                lines[0] = "a,b,c";
+                for (int i = 1; i < lines.length; i++) {
+                        int a = r.nextInt(2);
+                        int b = (r.nextInt(10) == 0) ? 1 - a : a;
+                        int c = (r.nextInt(10) == 0) ? 1 - b : b;
+                        lines[i] = a + "," + b + "," + c;
+                }
+                File events = TestFiles.write(dir, "events.csv", lines);
+
+                List<String> expected = Arrays.asList("a:", "b: a", "c: b");
+                assertEquals(expected, new StructureLearner(events.getPath(), null, 1).learn());
+                assertEquals(expected, new StructureLearner(events.getPath(), null, 3).learn());
+        }
+
+        @Test
+        void tooManyVariablesAreRejected() throws IOException {
+                int n = StructureLearner.MAX_VARIABLES + 1;
+                StringBuilder header = new StringBuilder(), row = new StringBuilder();
+                for (int i = 0; i < n; i++) {
+                        header.append((i == 0) ? "" : ",").append('v').append(i);
+                        row.append((i == 0) ? "" : ",").append('0');
+                }
+                File events = TestFiles.write(dir, "wide.csv", header.toString(), row.toString());
+
+                IOException e = assertThrows(IOException.class,
+                                             () -> new StructureLearner(events.getPath(), null, 1).learn());
+                assertTrue(e.getMessage().contains("at most " + StructureLearner.MAX_VARIABLES), e.getMessage());
+        }
+}
@@ -0,0 +1,74 @@
+/* ****************************************************************************************************************** *
+ * Name:        TestFiles.java
+ * Description: Helpers for writing network, events and test data files in unit tests.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Random;
+
+/**
+ * Writes the small files unit tests train and classify with, and trains networks from them.
+ */
+final class TestFiles {
+        /** Not instantiable */
+        private TestFiles() {
+        }
+
+        /**
+         * Writes lines to a file, each followed by a newline.
+         *
+         * @param dir Directory to write file in.
+         * @param name Name of file.
+         * @param lines Lines of file.
+         * @return File written.
+         */
+        static File write(Path dir, String name, String... lines) throws IOException {
+                StringBuilder sb = new StringBuilder();
+                for (String line : lines) sb.append(line).append('\n');
+                Path p = dir.resolve(name);
+                Files.write(p, sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+                return p.toFile();
+        }
+
+        /**
+         * Writes an events file of random lines for the nodes of a network, each cell true with probability 0.5.
+         *
+         * @param dir Directory to write file in.
+         * @param name Name of file.
+         * @param names Names of columns.
+         * @param lines Number of lines after the header.
+         * @param seed Seed of random cells.
+         * @return File written.
+         */
+        static File randomEvents(Path dir, String name, String[] names, int lines, long seed) throws IOException {
+                Random r = new Random(seed);
+                String[] out = new String[lines + 1];
+                out[0] = String.join(",", names);
+                for (int i = 1; i <= lines; i++) {
+                        StringBuilder sb = new StringBuilder();
+                        for (int c = 0; c < names.length; c++) sb.append((c == 0) ? "" : ",").append(r.nextInt(2));
+                        out[i] = sb.toString();
+                }
+                return write(dir, name, out);
+        }
+
+        /**
+         * Trains a network from a network file and an events file.
+         *
+         * @param net Network structure file.
+         * @param events Events file.
+         * @return Trained CPTs.
+         */
+        static CPTable train(File net, File events) throws IOException {
+                BayesNetEstimate est = new BayesNetEstimate(net.getPath(), events.getPath());
+                est.getBayesianNetwork();
+                return est.getCPTable();
+        }
+}
@@ -0,0 +1,144 @@
+/* ****************************************************************************************************************** *
+ * Name:        VariableEliminationTest.java
+ * Description: Tests of variable elimination against enumeration of the unknown variables.
+ * Author:      agent
+ * Date:        17/10/26
+ * ****************************************************************************************************************** */
+
+package bayesnet;
+
+/* Imports */
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Path;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+class VariableEliminationTest {
+        private static final String[] NAMES = {"a", "b", "c", "d", "e", "f"};
+
+        @TempDir
+        Path dir;
+
+        @Test
+        void agreesWithEnumeration() throws IOException {
+                File net = TestFiles.write(dir, "net.txt", "a:", "b: a", "c: a", "d: b c", "e: d", "f: c e");
+                CPTable cpt = TestFiles.train(net, TestFiles.randomEvents(dir, "train.csv", NAMES, 300, 11));
+                VariableElimination elim = new VariableElimination(cpt);
+                int n = cpt.size();
+                boolean[] values = new boolean[n];
+
+                /* Every query with every set of one or two other unknown variables, under every evidence */
+                for (int query = 0; query < n; query++) {
+                        for (int u = 0; u < n; u++) {
+                                for (int v = u; v < n; v++) {
+                                        if (u == query || v == query) continue;
+                                        int[] unknown = (u == v) ? new int[] {u} : new int[] {u, v};
+                                        for (int m = 0; m < (1 << n); m++) {
+                                                for (int i = 0; i < n; i++) values[i] = ((m >>> i) & 1) != 0;
+                                                double expected = enumerate(cpt, query, unknown, values);
+                                                boolean[] before = values.clone();
+                                                double logOdds = elim.logOdds(query, unknown, unknown.length, values);
+                                                String pattern = "query " + query + ", unknown " + u + " " + v;
+                                                assertEquals(expected, logOdds, 1e-9, pattern + ", model " + m);
+                                                assertArrayEquals(before, values, "model restored");
+                                        }
+                                }
+                        }
+                }
+
+                /* One plan per pattern: 6 queries with 5 single and 10 pairs of unknown variables */
+                assertEquals(6 * (5 + 10), elim.planCount());
+        }
+
+        @Test
+        void tooManyUnknownVariablesInOneFactorAreRejected() {
+                /* c has one more parent than a factor may have variables, all of them unknown but the query */
+                int p = VariableElimination.MAX_FACTOR_VARS + 1;
+                String[] names = new String[p + 1];
+                int[][] parents = new int[p + 1][];
+                for (int i = 0; i < p; i++) {
+                        names[i] = "p" + i;
+                        parents[i] = new int[0];
+                }
+                names[p] = "c";
+                parents[p] = new int[p];
+                for (int i = 0; i < p; i++) parents[p][i] = i;
+                CPTable cpt = new CPTable(names, parents);
+                cpt.freeze(Smoothing.DEFAULT);
+
+                int[] unknown = new int[p - 1];
+                for (int i = 0; i < unknown.length; i++) unknown[i] = i + 1;
+                VariableElimination elim = new VariableElimination(cpt);
+                IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                                () -> elim.logOdds(0, unknown, unknown.length, new boolean[p + 1]));
+                assertTrue(e.getMessage().contains("factor of c"), e.getMessage());
+        }
+
+        @Test
+        void constantFactorOfZeroIsTie() throws IOException {
+                /* c is always true, so P(c = true | u) is exactly 1, and summing u out for c false leaves 0 */
+                File net = TestFiles.write(dir, "net.txt", "q:", "u:", "c: u");
+                String[] lines = new String[101];
+                lines[0] = "q,u,c";
+                for (int i = 1; i < lines.length; i++) lines[i] = (i % 3 == 0 ? 1 : 0) + "," + (i % 2) + ",1";
+                CPTable cpt = TestFiles.train(net, TestFiles.write(dir, "train.csv", lines));
+                VariableElimination elim = new VariableElimination(cpt);
+                int[] unknown = {1};
+
+                boolean[] values = {false, false, false};
+                assertEquals(0, enumerate(cpt, 0, unknown, values));
+                assertEquals(0, elim.logOdds(0, unknown, 1, values));
+                values[2] = true;
+                assertEquals(enumerate(cpt, 0, unknown, values), elim.logOdds(0, unknown, 1, values), 1e-9);
+                assertTrue(elim.logOdds(0, unknown, 1, values) < 0);
+        }
+
+        @Test
+        void plansWithTooManyEntriesAreRejected() {
+                /* Each c has the query and unknown parents, as many variables as a factor may have, in all */
+                int p = VariableElimination.MAX_FACTOR_VARS - 1, children = 5, n = 1 + children * (p + 1);
+                String[] names = new String[n];
+                int[][] parents = new int[n][];
+                names[0] = "q";
+                parents[0] = new int[0];
+                int[] unknown = new int[children * p];
+                for (int c = 0, i = 1, u = 0; c < children; c++) {
+                        int[] cParents = new int[p + 1];
+                        for (int j = 0; j < p; j++, i++) {
+                                names[i] = "p" + i;
+                                parents[i] = new int[0];
+                                cParents[j + 1] = unknown[u++] = i;
+                        }
+                        names[i] = "c" + c;
+                        parents[i++] = cParents;
+                }
+                CPTable cpt = new CPTable(names, parents);
+                cpt.freeze(Smoothing.DEFAULT);
+
+                VariableElimination elim = new VariableElimination(cpt);
+                assertEquals(VariableElimination.MAX_FACTOR_VARS, parents[n - 1].length);
+                IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                                () -> elim.logOdds(0, unknown, unknown.length, new boolean[n]));
+                assertTrue(e.getMessage().contains("entries"), e.getMessage());
+                assertEquals(0, elim.planCount());
+        }
+
+        /**
+         * Calculates log(P(query = true, evidence) / P(query = false, evidence)) by summing the exact event
+         * probability over every assignment of the unknown variables, as a tie if both are 0.
+         */
+        private static double enumerate(CPTable cpt, int query, int[] unknown, boolean[] values) {
+                boolean[] model = values.clone();
+                double[] prob = new double[2];
+                for (int q = 0; q < 2; q++) {
+                        model[query] = (q == 1);
+                        for (int a = 0; a < (1 << unknown.length); a++) {
+                                for (int j = 0; j < unknown.length; j++) model[unknown[j]] = ((a >>> j) & 1) != 0;
+                                prob[q] += cpt.calcExactEventProb(model);
+                        }
+                }
+                return LogTable.resolveTie(Math.log(prob[1] / prob[0]));
+        }
+}